@@ -40,6 +40,18 @@ public abstract class AbstractQueryHandler implements QueryHandlerInterface
 			return;
 		}
 
+		this.storeDocumentElements(document, documentId);
+	}
+
+	/**
+	 * Stores the Paragraphs, Sentences and Tokens of a Document, whose own
+	 * entry was already stored.
+	 *
+	 * @param document   The Document whose elements are stored.
+	 * @param documentId The id returned by #storeJCasDocument.
+	 */
+	protected void storeDocumentElements(JCas document, String documentId)
+	{
 		try
 		{
 			/*
@@ -99,6 +111,52 @@ public abstract class AbstractQueryHandler implements QueryHandlerInterface
 		}
 	}
 
+	/**
+	 * Default implementation without any native bulk support. Stores one
+	 * Document after the other and ignores the options.
+	 *
+	 * @param documents The Documents to insert.
+	 * @param options   Controls how elements are grouped into batches.
+	 */
+	@Override
+	public void storeDocumentHierarchies(
+			Iterable<JCas> documents,
+			BatchOptions options
+	) throws QHException
+	{
+		for (JCas document : documents)
+		{
+			this.storeDocumentHierarchy(document);
+		}
+	}
+
+	/**
+	 * No indexes besides the ones the database creates on its own by default.
+	 */
+	@Override
+	public void createIndexes() throws QHException
+	{
+
+	}
+
+	/**
+	 * Everything is stored immediately by default, so there is nothing to do.
+	 */
+	@Override
+	public void finishIngest() throws QHException
+	{
+
+	}
+
+	/**
+	 * Writes are committed on their own by default.
+	 */
+	@Override
+	public void commitIngest() throws QHException
+	{
+
+	}
+
 	/**
 	 * Stores multiple Documents at once.
 	 * @param documents An iterable object of Documents.
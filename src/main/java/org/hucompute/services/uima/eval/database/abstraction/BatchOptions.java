@@ -0,0 +1,60 @@
+package org.hucompute.services.uima.eval.database.abstraction;
+
+/**
+ * Options for bulk ingestion via
+ * QueryHandlerInterface#storeDocumentHierarchies.
+ * <p>
+ * Implementations are free to ignore options that have no meaning for their
+ * database. The default implementation in AbstractQueryHandler ignores all of
+ * them and stores one document after the other.
+ *
+ * @author Hannes Leutloff <hannes.leutloff@aol.de>
+ */
+public class BatchOptions
+{
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	public static final int DEFAULT_DOCUMENTS_PER_BATCH = 1;
+
+	/**
+	 * Maximum amount of elements (rows, statements, vertices...) that are sent
+	 * to the database in one round trip.
+	 */
+	protected int batchSize;
+
+	/**
+	 * Amount of documents whose elements may be collected before they are
+	 * sent to the database.
+	 */
+	protected int documentsPerBatch;
+
+	public BatchOptions()
+	{
+		this(DEFAULT_BATCH_SIZE, DEFAULT_DOCUMENTS_PER_BATCH);
+	}
+
+	/**
+	 * @param batchSize         Maximum amount of elements per round trip.
+	 * @param documentsPerBatch Amount of documents to collect before sending.
+	 */
+	public BatchOptions(int batchSize, int documentsPerBatch)
+	{
+		if (batchSize < 1 || documentsPerBatch < 1)
+		{
+			throw new IllegalArgumentException(
+					"Batch sizes have to be positive."
+			);
+		}
+		this.batchSize = batchSize;
+		this.documentsPerBatch = documentsPerBatch;
+	}
+
+	public int getBatchSize()
+	{
+		return this.batchSize;
+	}
+
+	public int getDocumentsPerBatch()
+	{
+		return this.documentsPerBatch;
+	}
+}
@@ -0,0 +1,109 @@
+package org.hucompute.services.uima.eval.database.abstraction;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over all Document ids of a database by fetching them in pages via
+ * QueryHandlerInterface#getDocumentIds(String, int).
+ * <p>
+ * A page is only fetched when the previous one is used up, so only one page
+ * of ids is held in memory at a time. Every iterator starts from the first
+ * id again.
+ *
+ * @author Hannes Leutloff <hannes.leutloff@aol.de>
+ */
+public class DocumentIdIterable implements Iterable<String>
+{
+	public static final int DEFAULT_PAGE_SIZE = 1000;
+
+	protected QueryHandlerInterface queryHandler;
+	protected int pageSize;
+
+	/**
+	 * Uses the page size from the environment variable DOCUMENT_ID_PAGE_SIZE.
+	 *
+	 * @param queryHandler The handler to fetch the pages from.
+	 */
+	public DocumentIdIterable(QueryHandlerInterface queryHandler)
+	{
+		this(queryHandler, getDefaultPageSize());
+	}
+
+	/**
+	 * @param queryHandler The handler to fetch the pages from.
+	 * @param pageSize     Maximum amount of ids per page.
+	 */
+	public DocumentIdIterable(QueryHandlerInterface queryHandler, int pageSize)
+	{
+		if (pageSize < 1)
+		{
+			throw new IllegalArgumentException(
+					"The page size has to be positive."
+			);
+		}
+		this.queryHandler = queryHandler;
+		this.pageSize = pageSize;
+	}
+
+	protected static int getDefaultPageSize()
+	{
+		String pageSize = System.getenv("DOCUMENT_ID_PAGE_SIZE");
+		return (pageSize == null || pageSize.isEmpty())
+				? DEFAULT_PAGE_SIZE : Integer.parseInt(pageSize);
+	}
+
+	public int getPageSize()
+	{
+		return this.pageSize;
+	}
+
+	@Override
+	public Iterator<String> iterator()
+	{
+		return new Iterator<String>()
+		{
+			protected Iterator<String> page = null;
+			protected String lastId = null;
+			protected boolean lastPage = false;
+
+			@Override
+			public boolean hasNext()
+			{
+				while (this.page == null || !this.page.hasNext())
+				{
+					if (this.lastPage)
+					{
+						return false;
+					}
+					this.fetchPage();
+				}
+				return true;
+			}
+
+			@Override
+			public String next()
+			{
+				if (!this.hasNext())
+				{
+					throw new NoSuchElementException();
+				}
+				this.lastId = this.page.next();
+				return this.lastId;
+			}
+
+			/**
+			 * Fetches the ids after the last returned one. A page with less
+			 * than pageSize ids is the last one.
+			 */
+			protected void fetchPage()
+			{
+				List<String> ids = queryHandler
+						.getDocumentIds(this.lastId, pageSize);
+				this.lastPage = ids.size() < pageSize;
+				this.page = ids.iterator();
+			}
+		};
+	}
+}
@@ -17,6 +17,7 @@ import org.hucompute.services.uima.eval.database.connection.implementation.*;
 import javax.naming.OperationNotSupportedException;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -133,6 +134,17 @@ public interface QueryHandlerInterface
 	 */
 	void clearDatabase() throws IOException;
 
+	/**
+	 * Creates the indexes and constraints that the queries rely on and waits
+	 * until they are usable. Has to be called after #setUpDatabase. It is a
+	 * separate step, so that its duration can be measured on its own.
+	 * Does nothing for databases without user defined indexes.
+	 *
+	 * @throws QHException If anything goes wrong. Encapsulates underlying
+	 *                     Exceptions.
+	 */
+	void createIndexes() throws QHException;
+
 	//--------------------------------------------------------------------------
 	// Raw Querying
 	//
@@ -151,6 +163,45 @@ public interface QueryHandlerInterface
 	 */
 	void storeDocumentHierarchy(JCas document) throws QHException;
 
+	/**
+	 * Stores the full Document hierarchy of multiple Documents.
+	 * Results in the same data as calling #storeDocumentHierarchy for each
+	 * Document, but allows implementations to use the database's native bulk
+	 * mechanisms instead of one round trip per element.
+	 *
+	 * @param documents The Documents to insert.
+	 * @param options   Controls how elements are grouped into batches.
+	 * @throws QHException If anything goes wrong. Encapsulates underlying
+	 *                     Exceptions.
+	 */
+	void storeDocumentHierarchies(
+			Iterable<JCas> documents,
+			BatchOptions options
+	) throws QHException;
+
+	/**
+	 * Completes an ingest. Writes anything that was buffered by an ingest mode
+	 * that doesn't store Documents immediately and runs steps that are de-
+	 * ferred until all Documents are stored.
+	 * Has to be called once after the last Document was stored. Does nothing
+	 * for handlers that store everything immediately.
+	 *
+	 * @throws QHException If anything goes wrong. Encapsulates underlying
+	 *                     Exceptions.
+	 */
+	void finishIngest() throws QHException;
+
+	/**
+	 * Makes all stored Documents durable and visible to queries. Has to be
+	 * called after #finishIngest. It is a separate step, so that its duration
+	 * can be measured on its own.
+	 * Does nothing for databases that commit every write on their own.
+	 *
+	 * @throws QHException If anything goes wrong. Encapsulates underlying
+	 *                     Exceptions.
+	 */
+	void commitIngest() throws QHException;
+
 	/**
 	 * Stores a JCas Document in an appropriate way.
 	 *
@@ -274,10 +325,30 @@ public interface QueryHandlerInterface
 
 	/**
 	 * Return the ids of all documents currently stored.
+	 * The ids are fetched lazily in pages via #getDocumentIds(String, int), so
+	 * the whole collection is never held in memory. Use
+	 * #countElementsOfType(ElementType) with ElementType.Document to get their
+	 * amount.
 	 *
 	 * @return The ids of all Documents stored in the database.
 	 */
-	Iterable<String> getDocumentIds();
+	default Iterable<String> getDocumentIds()
+	{
+		return new DocumentIdIterable(this);
+	}
+
+	/**
+	 * Return one page of document ids for keyset pagination.
+	 * The ids are returned in an order defined by the database, which has to
+	 * be the same for every call. Passing the last id of a page as afterId
+	 * returns the next page.
+	 *
+	 * @param afterId The id after which the page starts or null for the first
+	 *                page.
+	 * @param limit   Maximum amount of ids in the page.
+	 * @return The ids, fewer than limit only on the last page.
+	 */
+	List<String> getDocumentIds(String afterId, int limit);
 
 	/**
 	 * A set of all lemmata in the specified document.
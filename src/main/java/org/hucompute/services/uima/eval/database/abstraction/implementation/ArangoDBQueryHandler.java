@@ -6,7 +6,10 @@ import com.arangodb.ArangoDatabase;
 import com.arangodb.ArangoGraph;
 import com.arangodb.entity.BaseDocument;
 import com.arangodb.entity.BaseEdgeDocument;
+import com.arangodb.entity.DocumentImportEntity;
 import com.arangodb.entity.EdgeDefinition;
+import com.arangodb.model.AqlQueryOptions;
+import com.arangodb.model.DocumentImportOptions;
 import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS;
 import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Lemma;
@@ -15,8 +18,10 @@ import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.CASException;
+import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.hucompute.services.uima.eval.database.abstraction.AbstractQueryHandler;
+import org.hucompute.services.uima.eval.database.abstraction.BatchOptions;
 import org.hucompute.services.uima.eval.database.abstraction.ElementType;
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.DocumentNotFoundException;
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.QHException;
@@ -25,6 +30,7 @@ import org.hucompute.services.uima.eval.database.abstraction.exceptions.TypeNotC
 import org.hucompute.services.uima.eval.database.connection.Connections;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
@@ -44,14 +50,24 @@ public class ArangoDBQueryHandler extends AbstractQueryHandler
 
 	protected final static String dbName = System.getenv("ARANGODB_DB");
 	protected final static String graphName = "uimadatabase";
+	protected static final int DEFAULT_CURSOR_BATCH_SIZE = 1000;
 
 	protected ArangoDB arangodb;
 	protected ArangoDatabase db;
 	protected ArangoGraph graph;
+	/**
+	 * Amount of results the server sends per round trip when a cursor is
+	 * read.
+	 */
+	protected int cursorBatchSize;
 
 	public ArangoDBQueryHandler(ArangoDB arangodb)
 	{
 		this.arangodb = arangodb;
+
+		String cursorBatchSize = System.getenv("ARANGODB_CURSOR_BATCH_SIZE");
+		this.cursorBatchSize = (cursorBatchSize == null || cursorBatchSize.isEmpty())
+				? DEFAULT_CURSOR_BATCH_SIZE : Integer.parseInt(cursorBatchSize);
 	}
 
 	@Override
@@ -208,6 +224,312 @@ public class ArangoDBQueryHandler extends AbstractQueryHandler
 		return documentId;
 	}
 
+	/**
+	 * Stores the whole Document with one bulk import per collection.
+	 *
+	 * @param document The Document to insert.
+	 * @throws QHException If anything goes wrong. Encapsulates underlying
+	 *                     Exceptions.
+	 * @see #storeDocumentHierarchies
+	 */
+	@Override
+	public void storeDocumentHierarchy(JCas document) throws QHException
+	{
+		this.storeDocumentHierarchies(
+				Collections.singletonList(document), new BatchOptions()
+		);
+	}
+
+	/**
+	 * Stores the elements of <i>documentsPerBatch</i> Documents with one bulk
+	 * import per collection.
+	 * <p>
+	 * All vertices get deterministic keys: Paragraphs, Sentences and Tokens
+	 * are numbered per Document, Lemmata and POS are keyed by a hash of their
+	 * value. That way edges can be built without looking anything up, and
+	 * Lemmata and POS that already exist are skipped by the import.
+	 * Document-Lemma edges are deduplicated in memory.
+	 *
+	 * @param documents The Documents to insert.
+	 * @param options   Controls how many Documents share the imports.
+	 * @throws QHException If anything goes wrong. Encapsulates underlying
+	 *                     Exceptions. Documents collected before the failing
+	 *                     one are stored nevertheless.
+	 */
+	@Override
+	public void storeDocumentHierarchies(
+			Iterable<JCas> documents,
+			BatchOptions options
+	) throws QHException
+	{
+		Map<String, List<Object>> imports = this.createImports();
+		int pendingDocuments = 0;
+		try
+		{
+			for (JCas document : documents)
+			{
+				this.createHierarchyImports(document).forEach(
+						(collection, elements) -> imports.get(collection)
+								.addAll(elements)
+				);
+				pendingDocuments++;
+				if (pendingDocuments >= options.getDocumentsPerBatch())
+				{
+					this.importHierarchies(imports);
+					pendingDocuments = 0;
+				}
+			}
+		} catch (RuntimeException e)
+		{
+			this.importHierarchies(imports);
+			throw e instanceof QHException
+					? (QHException) e
+					: new QHException(e);
+		}
+		this.importHierarchies(imports);
+	}
+
+	/**
+	 * @return An empty list of elements per collection, in the order in
+	 * which the collections are imported.
+	 */
+	protected Map<String, List<Object>> createImports()
+	{
+		Map<String, List<Object>> imports = new LinkedHashMap<>();
+		for (ElementType type : ElementType.values())
+		{
+			imports.put(type.toString(), new ArrayList<>());
+		}
+		for (Relationship relationship : Relationship.values())
+		{
+			imports.put(relationship.toString(), new ArrayList<>());
+		}
+		return imports;
+	}
+
+	/**
+	 * Inserts the Document itself and collects the vertices and edges for
+	 * all of its elements.
+	 *
+	 * @param document The Document to insert.
+	 * @return The elements to import per collection.
+	 * @throws QHException If the Document can't be inserted or converted.
+	 */
+	protected Map<String, List<Object>> createHierarchyImports(JCas document)
+			throws QHException
+	{
+		final String documentId = DocumentMetaData.get(document)
+				.getDocumentId();
+		final String documentVertexId = ElementType.Document + "/" + documentId;
+
+		Map<String, List<Object>> imports = this.createImports();
+		Set<String> documentLemmaKeys = new HashSet<>();
+		Set<String> posKeys = new HashSet<>();
+
+		try
+		{
+			this.storeJCasDocument(document);
+
+			int paragraphNumber = 0;
+			int sentenceNumber = 0;
+			int tokenNumber = 0;
+			String previousParagraphId = null;
+			for (Paragraph paragraph
+					: JCasUtil.select(document, Paragraph.class))
+			{
+				BaseDocument paragraphObject = new BaseDocument(
+						documentId + "-p" + paragraphNumber++
+				);
+				paragraphObject.addAttribute("documentId", documentId);
+				paragraphObject.addAttribute("begin", paragraph.getBegin());
+				paragraphObject.addAttribute("end", paragraph.getEnd());
+				String paragraphId = this.addVertex(
+						imports, ElementType.Paragraph, paragraphObject
+				);
+				this.addEdge(imports, Relationship.DocumentHasParagraph,
+						documentVertexId, paragraphId);
+				if (previousParagraphId != null)
+				{
+					this.addEdge(imports, Relationship.NextParagraph,
+							previousParagraphId, paragraphId);
+				}
+				previousParagraphId = paragraphId;
+
+				String previousSentenceId = null;
+				for (Sentence sentence : JCasUtil.selectCovered(
+						document, Sentence.class, paragraph
+				))
+				{
+					BaseDocument sentenceObject = new BaseDocument(
+							documentId + "-s" + sentenceNumber++
+					);
+					sentenceObject.addAttribute("documentId", documentId);
+					sentenceObject.addAttribute("begin", sentence.getBegin());
+					sentenceObject.addAttribute("end", sentence.getEnd());
+					String sentenceId = this.addVertex(
+							imports, ElementType.Sentence, sentenceObject
+					);
+					this.addEdge(imports, Relationship.DocumentHasSentence,
+							documentVertexId, sentenceId);
+					this.addEdge(imports, Relationship.SentenceInParagraph,
+							sentenceId, paragraphId);
+					if (previousSentenceId != null)
+					{
+						this.addEdge(imports, Relationship.NextSentence,
+								previousSentenceId, sentenceId);
+					}
+					previousSentenceId = sentenceId;
+
+					String previousTokenId = null;
+					for (Token token : JCasUtil.selectCovered(
+							document, Token.class, sentence
+					))
+					{
+						BaseDocument tokenObject = new BaseDocument(
+								documentId + "-t" + tokenNumber++
+						);
+						tokenObject.addAttribute("documentId", documentId);
+						tokenObject.addAttribute("begin", token.getBegin());
+						tokenObject.addAttribute("end", token.getEnd());
+						tokenObject.addAttribute("value", token.getCoveredText());
+						String tokenId = this.addVertex(
+								imports, ElementType.Token, tokenObject
+						);
+						this.addEdge(imports, Relationship.DocumentHasToken,
+								documentVertexId, tokenId);
+						this.addEdge(imports, Relationship.TokenInParagraph,
+								tokenId, paragraphId);
+						this.addEdge(imports, Relationship.TokenInSentence,
+								tokenId, sentenceId);
+
+						String lemmaValue = token.getLemma().getValue();
+						String lemmaKey = this.createValueKey(lemmaValue);
+						String lemmaId = ElementType.Lemma + "/" + lemmaKey;
+						if (documentLemmaKeys.add(lemmaKey))
+						{
+							BaseDocument lemmaObject = new BaseDocument(lemmaKey);
+							lemmaObject.addAttribute("value", lemmaValue);
+							this.addVertex(
+									imports, ElementType.Lemma, lemmaObject
+							);
+							this.addEdge(imports, Relationship.DocumentHasLemma,
+									documentVertexId, lemmaId);
+						}
+						this.addEdge(imports, Relationship.TokenHasLemma,
+								tokenId, lemmaId);
+
+						String posValue = token.getPos().getPosValue();
+						String posKey = this.createValueKey(posValue);
+						if (posKeys.add(posKey))
+						{
+							BaseDocument posObject = new BaseDocument(posKey);
+							posObject.addAttribute("value", posValue);
+							this.addVertex(imports, ElementType.Pos, posObject);
+						}
+						this.addEdge(imports, Relationship.TokenAtPos,
+								tokenId, ElementType.Pos + "/" + posKey);
+
+						if (previousTokenId != null)
+						{
+							this.addEdge(imports, Relationship.NextToken,
+									previousTokenId, tokenId);
+						}
+						previousTokenId = tokenId;
+					}
+				}
+			}
+		} catch (RuntimeException e)
+		{
+			logger.severe("There was an error when trying to insert "
+					+ documentId + ".");
+			throw new QHException(e);
+		}
+		return imports;
+	}
+
+	/**
+	 * Imports the collected elements with one bulk import per collection.
+	 *
+	 * @param imports The elements per collection. Are empty afterwards.
+	 * @throws QHException If any element could not be imported.
+	 */
+	protected void importHierarchies(Map<String, List<Object>> imports)
+			throws QHException
+	{
+		try
+		{
+			DocumentImportOptions options = new DocumentImportOptions()
+					.onDuplicate(DocumentImportOptions.OnDuplicate.ignore);
+			for (Map.Entry<String, List<Object>> collection
+					: imports.entrySet())
+			{
+				if (collection.getValue().isEmpty())
+				{
+					continue;
+				}
+				DocumentImportEntity result = this.db
+						.collection(collection.getKey())
+						.importDocuments(collection.getValue(), options);
+				if (result.getErrors() > 0)
+				{
+					throw new QHException(new Exception(
+							result.getErrors() + " documents could not be "
+									+ "imported into " + collection.getKey()
+									+ ": " + result.getDetails()
+					));
+				}
+			}
+		} catch (RuntimeException e)
+		{
+			throw e instanceof QHException
+					? (QHException) e
+					: new QHException(e);
+		} finally
+		{
+			imports.values().forEach(List::clear);
+		}
+	}
+
+	/**
+	 * Adds a vertex with a preset key to the imports of its collection.
+	 *
+	 * @return The vertex's id.
+	 */
+	protected String addVertex(
+			Map<String, List<Object>> imports,
+			ElementType type,
+			BaseDocument vertex
+	)
+	{
+		imports.get(type.toString()).add(vertex);
+		return type + "/" + vertex.getKey();
+	}
+
+	protected void addEdge(
+			Map<String, List<Object>> imports,
+			Relationship relationship,
+			String from,
+			String to
+	)
+	{
+		imports.get(relationship.toString()).add(
+				new BaseEdgeDocument(from, to)
+		);
+	}
+
+	/**
+	 * Creates a key from a Lemma or POS value. Values can contain characters
+	 * that are not allowed in keys, so a name based UUID is used.
+	 *
+	 * @param value The value.
+	 * @return The same key for the same value.
+	 */
+	protected String createValueKey(String value)
+	{
+		return UUID.nameUUIDFromBytes(value.getBytes(StandardCharsets.UTF_8))
+				.toString();
+	}
+
 	@Override
 	public String storeParagraph(
 			Paragraph paragraph, String documentId, String previousParagraphId
@@ -370,14 +692,21 @@ public class ArangoDBQueryHandler extends AbstractQueryHandler
 					.insertEdge(documentHasLemmaEdge);
 		}
 
-		// Create POS object and insert into collection
-		BaseDocument posObject = new BaseDocument();
-		posObject.addAttribute("value", token.getPos().getPosValue());
-		this.graph.vertexCollection(ElementType.Pos.toString())
-				.insertVertex(posObject);
+		// Create POS object and insert into collection, if it doesn't exist
+		// yet.
+		String posValue = token.getPos().getPosValue();
+		String posKey = this.createValueKey(posValue);
+		if (!this.db.collection(ElementType.Pos.toString())
+				.documentExists(posKey))
+		{
+			BaseDocument posObject = new BaseDocument(posKey);
+			posObject.addAttribute("value", posValue);
+			this.graph.vertexCollection(ElementType.Pos.toString())
+					.insertVertex(posObject);
+		}
 		// Create edge from Token to POS and insert into graph
 		BaseEdgeDocument tokenAtPosEdge = new BaseEdgeDocument(
-				tokenObject.getId(), posObject.getId()
+				tokenObject.getId(), ElementType.Pos + "/" + posKey
 		);
 		this.graph.edgeCollection(Relationship.TokenAtPos.toString())
 				.insertEdge(tokenAtPosEdge);
@@ -408,29 +737,19 @@ public class ArangoDBQueryHandler extends AbstractQueryHandler
 	 */
 	protected String getLemmaId(String value)
 	{
-		// Check if a Lemma with given value already exists since Lemmata
-		// should be reused.
-		String lemmaQuery = "FOR l in " + ElementType.Lemma + " FILTER l.value == @lemmaValue RETURN l";
-		Map<String, Object> lemmaParams = new HashMap<>();
-		lemmaParams.put("lemmaValue", value);
-		ArangoCursor<BaseDocument> lemmaResult = this.db.query(
-				lemmaQuery, lemmaParams, null, BaseDocument.class
-		);
-		BaseDocument lemmaObject;
-		if (lemmaResult.hasNext())
-		{
-			// If a Lemma was found, reuse it.
-			lemmaObject = lemmaResult.next();
-		} else
+		// Lemmata are keyed by their value, so an existing one can be found
+		// by key.
+		String lemmaKey = this.createValueKey(value);
+		if (!this.db.collection(ElementType.Lemma.toString())
+				.documentExists(lemmaKey))
 		{
-			// If not, create a new Lemma object and insert into collection.
-			lemmaObject = new BaseDocument();
+			BaseDocument lemmaObject = new BaseDocument(lemmaKey);
 			lemmaObject.addAttribute("value", value);
 			this.graph.vertexCollection(ElementType.Lemma.toString())
 					.insertVertex(lemmaObject);
 		}
 
-		return lemmaObject.getId();
+		return ElementType.Lemma + "/" + lemmaKey;
 	}
 
 	@Override
@@ -444,17 +763,32 @@ public class ArangoDBQueryHandler extends AbstractQueryHandler
 		}
 	}
 
+	/**
+	 * Pages over the primary index of the Document collection.
+	 */
 	@Override
-	public Iterable<String> getDocumentIds()
+	public List<String> getDocumentIds(String afterId, int limit)
 	{
-		String query = "FOR d IN " + ElementType.Document + " RETURN d";
-		ArangoCursor<BaseDocument> result = this.db.query(
-				query, null, null, BaseDocument.class
+		String query = "FOR d IN " + ElementType.Document + " " +
+				(afterId == null ? "" : "FILTER d._key > @afterId ") +
+				"SORT d._key " +
+				"LIMIT @limit " +
+				"RETURN d._key";
+		Map<String, Object> bindParams = new HashMap<>();
+		if (afterId != null)
+		{
+			bindParams.put("afterId", afterId);
+		}
+		bindParams.put("limit", limit);
+		ArangoCursor<String> result = this.db.query(
+				query,
+				bindParams,
+				new AqlQueryOptions().batchSize(this.cursorBatchSize),
+				String.class
 		);
 
 		return StreamSupport
 				.stream(result.spliterator(), false)
-				.map(BaseDocument::getKey)
 				.collect(Collectors.toCollection(ArrayList::new));
 	}
 
@@ -500,70 +834,55 @@ public class ArangoDBQueryHandler extends AbstractQueryHandler
 			aCAS.setDocumentText(documentObject.getAttribute("text")
 					.toString());
 
-			// query all Tokens in the Document
-			String tokenQuery = "WITH " + ElementType.Document + ", " + Relationship.DocumentHasToken + ", " + ElementType.Token + " " +
+			// query all Tokens in the Document together with their Lemma and
+			// POS (probably only one each), so that the whole Document is read
+			// with one cursor.
+			String tokenQuery = "WITH " + ElementType.Document + ", " + Relationship.DocumentHasToken + ", " + ElementType.Token + ", "
+					+ Relationship.TokenHasLemma + ", " + ElementType.Lemma + ", " + Relationship.TokenAtPos + ", " + ElementType.Pos + " " +
 					"FOR token IN OUTBOUND @documentId " + Relationship.DocumentHasToken + " " +
-					"RETURN DISTINCT token";
+					"SORT token.begin, token.end " +
+					"RETURN {" +
+					"begin: token.begin, " +
+					"end: token.end, " +
+					"lemma: FIRST(FOR lemma IN OUTBOUND token " + Relationship.TokenHasLemma + " RETURN lemma.value), " +
+					"pos: FIRST(FOR pos IN OUTBOUND token " + Relationship.TokenAtPos + " RETURN pos.value)" +
+					"}";
 			Map<String, Object> bindParams = new HashMap<>();
 			bindParams.put(
 					"documentId",
 					ElementType.Document.toString() + "/" + documentId
 			);
 			ArangoCursor<BaseDocument> result = this.db.query(
-					tokenQuery, bindParams, null, BaseDocument.class
+					tokenQuery,
+					bindParams,
+					new AqlQueryOptions().batchSize(this.cursorBatchSize),
+					BaseDocument.class
 			);
 
-			// iterate over Tokens
+			// iterate over Tokens while the cursor fetches the next batches
+			JCas jCas = aCAS.getJCas();
 			while (result.hasNext())
 			{
 				BaseDocument tokenObject = result.next();
+				int begin = Integer.parseInt(tokenObject.getAttribute("begin").toString());
+				int end = Integer.parseInt(tokenObject.getAttribute("end").toString());
 
-				Token xmiToken = new Token(
-						aCAS.getJCas(),
-						Integer.parseInt(tokenObject.getAttribute("begin").toString()),
-						Integer.parseInt(tokenObject.getAttribute("end").toString())
-				);
+				Token xmiToken = new Token(jCas, begin, end);
 
-				// query Lemmata connected to Token (probably only one)
-				String lemmaQuery = "WITH " + ElementType.Token + ", " + Relationship.TokenHasLemma + ", " + ElementType.Lemma + " " +
-						"FOR lemma IN OUTBOUND @tokenId " + Relationship.TokenHasLemma + " " +
-						"RETURN DISTINCT lemma";
-				Map<String, Object> lemmaParams = new HashMap<>();
-				lemmaParams.put("tokenId", tokenObject.getId());
-				ArangoCursor<BaseDocument> lemmaResult = this.db.query(
-						lemmaQuery, lemmaParams, null, BaseDocument.class
-				);
-				while (lemmaResult.hasNext())
+				Object lemmaValue = tokenObject.getAttribute("lemma");
+				if (lemmaValue != null)
 				{
-					BaseDocument lemmaObject = lemmaResult.next();
-					Lemma lemma = new Lemma(
-							aCAS.getJCas(),
-							xmiToken.getBegin(),
-							xmiToken.getEnd()
-					);
-					lemma.setValue(lemmaObject.getAttribute("value").toString());
+					Lemma lemma = new Lemma(jCas, begin, end);
+					lemma.setValue(lemmaValue.toString());
 					lemma.addToIndexes();
 					xmiToken.setLemma(lemma);
 				}
 
-				// query POS connected to Token (probably only one)
-				String posQuery = "WITH " + ElementType.Token + ", " + Relationship.TokenAtPos + ", " + ElementType.Pos + " " +
-						"FOR pos IN OUTBOUND @tokenId " + Relationship.TokenAtPos + " " +
-						"RETURN DISTINCT pos";
-				Map<String, Object> posParams = new HashMap<>();
-				posParams.put("tokenId", tokenObject.getId());
-				ArangoCursor<BaseDocument> posResult = this.db.query(
-						posQuery, posParams, null, BaseDocument.class
-				);
-				while (posResult.hasNext())
+				Object posValue = tokenObject.getAttribute("pos");
+				if (posValue != null)
 				{
-					BaseDocument posObject = posResult.next();
-					POS pos = new POS(
-							aCAS.getJCas(),
-							xmiToken.getBegin(),
-							xmiToken.getEnd()
-					);
-					pos.setPosValue(posObject.getAttribute("value").toString());
+					POS pos = new POS(jCas, begin, end);
+					pos.setPosValue(posValue.toString());
 					pos.addToIndexes();
 					xmiToken.setPos(pos);
 				}
@@ -1,7 +1,6 @@
 package org.hucompute.services.uima.eval.database.abstraction.implementation;
 
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
 import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Paragraph;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
@@ -14,8 +13,11 @@ import org.basex.api.client.ClientQuery;
 import org.basex.api.client.ClientSession;
 import org.basex.core.cmd.CreateDB;
 import org.basex.core.cmd.Delete;
+import org.basex.core.cmd.Flush;
 import org.basex.core.cmd.Open;
+import org.basex.core.cmd.Optimize;
 import org.hucompute.services.uima.eval.database.abstraction.AbstractQueryHandler;
+import org.hucompute.services.uima.eval.database.abstraction.BatchOptions;
 import org.hucompute.services.uima.eval.database.abstraction.ElementType;
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.DocumentNotFoundException;
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.QHException;
@@ -23,25 +25,55 @@ import org.hucompute.services.uima.eval.database.abstraction.exceptions.TypeHasN
 import org.hucompute.services.uima.eval.database.connection.Connections;
 import org.xml.sax.SAXException;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * In BaseX, only full files can be added to the database.
  * Thus the only implemented storage method is storeJCasDocument.
  * All the other storage methods will throw UnsupportedOperationExceptions.
+ *
+ * Documents are serialized into a pipe, while the session reads from the
+ * other end and sends them to the server. So a document is never held in
+ * memory as a whole.
+ * If BASEX_BATCH_DOCUMENTS is greater than 1, AUTOFLUSH is turned off and
+ * the database is only flushed and optimized after that many documents, so
+ * that the indexes are rebuilt once per batch instead of once per document.
+ * Otherwise storeDocumentHierarchies turns AUTOFLUSH off while it adds its
+ * documents, so that they are written to disk once per call.
  */
 public class BaseXQueryHandler extends AbstractQueryHandler
 {
+	protected static final int DEFAULT_BATCH_DOCUMENTS = 1;
+	protected static final int PIPE_SIZE = 64 * 1024;
+
 	protected ClientSession clientSession;
 	protected final String dbName = System.getenv("BASEX_DBNAME");
 
+	protected int batchDocuments;
+	protected int pendingDocuments;
+	/**
+	 * Runs the XmiCasSerializer for the document that is currently sent.
+	 */
+	protected ExecutorService serializer;
+
 	public BaseXQueryHandler(ClientSession clientSession)
 	{
 		this.clientSession = clientSession;
+
+		String batchDocuments = System.getenv("BASEX_BATCH_DOCUMENTS");
+		this.batchDocuments = (batchDocuments == null || batchDocuments.isEmpty())
+				? DEFAULT_BATCH_DOCUMENTS : Integer.parseInt(batchDocuments);
+		this.pendingDocuments = 0;
+		this.serializer = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "BaseX XMI serializer");
+			thread.setDaemon(true);
+			return thread;
+		});
 	}
 
 	protected String getDocumentIdFromUri(String uri)
@@ -61,11 +93,16 @@ public class BaseXQueryHandler extends AbstractQueryHandler
 	}
 
 	/**
-	 * Creates an empty database.
+	 * Creates an empty database with an attribute index on the attributes
+	 * that the queries filter and join on.
 	 */
 	@Override
 	public void setUpDatabase() throws IOException
 	{
+		this.clientSession.execute("SET ATTRINDEX true");
+		this.clientSession.execute(
+				"SET ATTRINCLUDE value,lemma,Q{http://www.omg.org/XMI}id"
+		);
 		this.clientSession.execute(new CreateDB(this.dbName));
 	}
 
@@ -73,6 +110,10 @@ public class BaseXQueryHandler extends AbstractQueryHandler
 	public void openDatabase() throws IOException
 	{
 		this.clientSession.execute(new Open(this.dbName));
+		if (this.batchDocuments > 1)
+		{
+			this.clientSession.execute("SET AUTOFLUSH false");
+		}
 	}
 
 	@Override
@@ -86,21 +127,153 @@ public class BaseXQueryHandler extends AbstractQueryHandler
 	{
 		final String documentId = DocumentMetaData.get(document)
 				.getDocumentId();
-		try
+		try (PipedInputStream input = new PipedInputStream(PIPE_SIZE))
 		{
-			ByteArrayOutputStream output = new ByteArrayOutputStream();
-			XmiCasSerializer.serialize(document.getCas(), output);
-			ByteArrayInputStream input = new ByteArrayInputStream(output.toByteArray());
+			PipedOutputStream output = new PipedOutputStream(input);
+			Future<Void> serialization = this.serializer.submit(() -> {
+				try (OutputStream pipe = output)
+				{
+					XmiCasSerializer.serialize(document.getCas(), pipe);
+				}
+				return null;
+			});
 
-			this.clientSession.add(documentId, input);
-		} catch (SAXException | IOException e)
+			try
+			{
+				this.clientSession.add(documentId, input);
+			} catch (IOException e)
+			{
+				// Closing the reading end makes the serializer fail instead of
+				// blocking on a full pipe. Its result is still read, since
+				// the serializer may have failed first, e.g. with a
+				// SAXException, and caused the failure of the session.
+				input.close();
+				try
+				{
+					serialization.get();
+				} catch (ExecutionException serializationException)
+				{
+					e.addSuppressed(serializationException.getCause());
+				} catch (InterruptedException interruptedException)
+				{
+					Thread.currentThread().interrupt();
+					e.addSuppressed(interruptedException);
+				}
+				throw e;
+			}
+			serialization.get();
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new QHException(e);
+		} catch (IOException | ExecutionException e)
 		{
 			throw new QHException(e);
 		}
 
+		this.pendingDocuments++;
+		if (this.batchDocuments > 1
+				&& this.pendingDocuments >= this.batchDocuments)
+		{
+			this.flushBatch();
+		}
+
 		return documentId;
 	}
 
+	/**
+	 * Adds the Documents one after the other, since BaseX only stores full
+	 * files. Unless BASEX_BATCH_DOCUMENTS already controls the flushes, they
+	 * are flushed to disk once, after the last one was added.
+	 *
+	 * @param documents The Documents to insert.
+	 * @param options   Only the amount of Documents per batch is used.
+	 */
+	@Override
+	public void storeDocumentHierarchies(
+			Iterable<JCas> documents,
+			BatchOptions options
+	) throws QHException
+	{
+		if (this.batchDocuments > 1 || options.getDocumentsPerBatch() <= 1)
+		{
+			for (JCas document : documents)
+			{
+				this.storeJCasDocument(document);
+			}
+			return;
+		}
+
+		RuntimeException failure = null;
+		try
+		{
+			this.clientSession.execute("SET AUTOFLUSH false");
+			for (JCas document : documents)
+			{
+				this.storeJCasDocument(document);
+			}
+		} catch (IOException e)
+		{
+			failure = new QHException(e);
+		} catch (RuntimeException e)
+		{
+			failure = e;
+		}
+
+		// The Documents added before a failure are flushed as well.
+		try
+		{
+			this.clientSession.execute(new Flush());
+			this.clientSession.execute("SET AUTOFLUSH true");
+		} catch (IOException e)
+		{
+			if (failure == null)
+			{
+				failure = new QHException(e);
+			} else
+			{
+				failure.addSuppressed(e);
+			}
+		}
+		if (failure != null)
+		{
+			throw failure;
+		}
+	}
+
+	/**
+	 * Writes the remaining Documents of the current batch. Without batches
+	 * the indexes are only rebuilt here, once for all Documents.
+	 */
+	@Override
+	public void finishIngest() throws QHException
+	{
+		if (this.pendingDocuments > 0)
+		{
+			this.flushBatch();
+		}
+	}
+
+	/**
+	 * Flushes the Documents added since the last batch to disk and rebuilds
+	 * the indexes once for all of them.
+	 */
+	protected void flushBatch() throws QHException
+	{
+		try
+		{
+			this.clientSession.execute(new Flush());
+			this.clientSession.execute(new Optimize());
+		} catch (IOException e)
+		{
+			e.printStackTrace();
+			throw new QHException(e);
+		} finally
+		{
+			this.pendingDocuments = 0;
+		}
+	}
+
 	@Override
 	public String storeParagraph(
 			Paragraph paragraph, String documentId, String paragraphId
@@ -179,16 +352,48 @@ public class BaseXQueryHandler extends AbstractQueryHandler
 		}
 	}
 
+	/**
+	 * Pages over the Documents in document order and returns their paths,
+	 * which are the Document ids.
+	 * The Document nodes of the database are a sequence ordered by their pre
+	 * value, which BaseX keeps in memory. The position after afterId is found
+	 * by a binary search over the pre values, so a page only touches
+	 * log(N) + limit Documents instead of listing and sorting all of them.
+	 * Document contents are never read.
+	 */
 	@Override
-	public Iterable<String> getDocumentIds()
+	public List<String> getDocumentIds(String afterId, int limit)
 	{
-		String queryString = "for $doc in fn:collection() return fn:document-uri($doc)";
+		String queryString = "declare variable $db as xs:string external; " +
+				"declare variable $after as xs:string external; " +
+				"declare variable $limit as xs:integer external; " +
+				"declare function local:start(" +
+				"  $docs as node()*, $pre as xs:integer, " +
+				"  $low as xs:integer, $high as xs:integer" +
+				") as xs:integer { " +
+				"  if ($low gt $high) then $low " +
+				"  else " +
+				"    let $mid := ($low + $high) idiv 2 " +
+				"    return if (db:node-pre($docs[$mid]) le $pre) " +
+				"      then local:start($docs, $pre, $mid + 1, $high) " +
+				"      else local:start($docs, $pre, $low, $mid - 1) " +
+				"}; " +
+				"let $docs := db:open($db) " +
+				"let $start := if ($after eq '') then 1 else local:start(" +
+				"  $docs, " +
+				"  db:node-pre(db:open($db, $after)[db:path(.) eq $after]), " +
+				"  1, fn:count($docs)" +
+				") " +
+				"return fn:subsequence($docs, $start, $limit) ! db:path(.)";
 		ArrayList<String> documentIds = new ArrayList<>();
 		try (ClientQuery query = this.clientSession.query(queryString))
 		{
+			query.bind("$db", this.dbName);
+			query.bind("$after", afterId == null ? "" : afterId);
+			query.bind("$limit", limit, "xs:integer");
 			while (query.more())
 			{
-				documentIds.add(this.getDocumentIdFromUri(query.next()));
+				documentIds.add(query.next());
 			}
 			return documentIds;
 		} catch (IOException e)
@@ -447,33 +652,36 @@ public class BaseXQueryHandler extends AbstractQueryHandler
 		}
 	}
 
+	/**
+	 * Counts the Tokens per Lemma value in a single pass over the collection.
+	 * Lemma ids are only unique inside of their document, so each Token is
+	 * joined with the Lemmata of its own document before grouping.
+	 */
 	@Override
 	public Map<String, Integer> countOccurencesForEachLemmaInAllDocuments()
 	{
 		Map<String, Integer> occurenceMap = new TreeMap<>();
-		String valueQueryString = "declare namespace type4 = 'http:///de/tudarmstadt/ukp/dkpro/core/api/segmentation/type.ecore'; " +
-				"fn:distinct-values(//type4:Lemma/@value)";
-		try (ClientQuery valueQuery =
-				     this.clientSession.query(valueQueryString))
+		String queryString = "declare namespace xmi = 'http://www.omg.org/XMI'; " +
+				"declare namespace type4 = 'http:///de/tudarmstadt/ukp/dkpro/core/api/segmentation/type.ecore'; " +
+				"for $doc in fn:collection() " +
+				"    let $values := map:merge( " +
+				"        for $lemma in $doc//type4:Lemma " +
+				"            return map:entry(string($lemma/@xmi:id), string($lemma/@value)) " +
+				"    ) " +
+				"    for $token in $doc//type4:Token[@lemma] " +
+				"        let $value := $values(string($token/@lemma)) " +
+				"        where fn:exists($value) " +
+				"        group by $value " +
+				"        return ($value, fn:count($token))";
+
+		try (ClientQuery query = this.clientSession.query(queryString))
 		{
-			while (valueQuery.more())
+			// query returns alternatingly lemma values and their frequency
+			while (query.more())
 			{
-				String value = valueQuery.next();
-				String occurenceQueryString = "declare namespace xmi = 'http://www.omg.org/XMI'; " +
-						"declare namespace type4 = 'http:///de/tudarmstadt/ukp/dkpro/core/api/segmentation/type.ecore'; " +
-						"declare variable $value as xs:string external; " +
-						"fn:count( " +
-						"    for $lemmaId in //type4:Lemma[@value = $value]/@xmi:id " +
-						"        return //type4:Token[@lemma = string($lemmaId)]" +
-						")";
-				try (ClientQuery occurenceQuery =
-						     this.clientSession.query(occurenceQueryString))
-				{
-					occurenceQuery.bind("$value", value);
-					occurenceMap.put(
-							value, Integer.parseInt(occurenceQuery.execute())
-					);
-				}
+				occurenceMap.put(
+						query.next(), Integer.parseInt(query.next())
+				);
 			}
 			return occurenceMap;
 		} catch (IOException e)
@@ -485,27 +693,64 @@ public class BaseXQueryHandler extends AbstractQueryHandler
 	@Override
 	public Map<String, Double> calculateTTRForAllDocuments()
 	{
-		return this.calculateTTRForCollectionOfDocuments(
-				Lists.newArrayList(this.getDocumentIds())
-		);
+		String queryString = "declare namespace type4 = 'http:///de/tudarmstadt/ukp/dkpro/core/api/segmentation/type.ecore'; " +
+				"for $doc in fn:collection() " +
+				"    return ($doc/fn:document-uri(.), " + this.ttrExpression("$doc") + ")";
+
+		try (ClientQuery query = this.clientSession.query(queryString))
+		{
+			return this.putResultsIntoTTRMap(query);
+		} catch (IOException e)
+		{
+			e.printStackTrace();
+			throw new QHException(e);
+		}
 	}
 
-	@Override
-	public Double calculateTTRForDocument(String documentId)
-			throws DocumentNotFoundException
+	/**
+	 * @param doc The variable holding the document.
+	 * @return An XQuery expression calculating the type token ratio of the
+	 * document.
+	 */
+	protected String ttrExpression(String doc)
 	{
-		this.checkIfDocumentExists(documentId);
-		String queryString = "declare namespace xmi = 'http://www.omg.org/XMI'; " +
-				"declare namespace type4 = 'http:///de/tudarmstadt/ukp/dkpro/core/api/segmentation/type.ecore'; " +
-				"declare variable $docId as xs:string external; " +
-				"let $lemmaCount := fn:count(fn:distinct-values(fn:doc($docId)//type4:Lemma/@value)) " +
-				"let $tokenCount := fn:count(fn:doc($docId)//type4:Token) " +
+		return "let $lemmaCount := fn:count(fn:distinct-values(" + doc + "//type4:Lemma/@value)) " +
+				"let $tokenCount := fn:count(" + doc + "//type4:Token) " +
 				"return (" +
 				"    if ($tokenCount > 0) then " +
 				"        ($lemmaCount div $tokenCount) " +
 				"    else " +
 				"        0 " +
 				")";
+	}
+
+	/**
+	 * @param query A query that results alternatingly in document uris and
+	 *              their type token ratio.
+	 */
+	protected Map<String, Double> putResultsIntoTTRMap(ClientQuery query)
+			throws IOException
+	{
+		Map<String, Double> ttrMap = new HashMap<>();
+		while (query.more())
+		{
+			ttrMap.put(
+					this.getDocumentIdFromUri(query.next()),
+					Double.parseDouble(query.next())
+			);
+		}
+		return ttrMap;
+	}
+
+	@Override
+	public Double calculateTTRForDocument(String documentId)
+			throws DocumentNotFoundException
+	{
+		this.checkIfDocumentExists(documentId);
+		String queryString = "declare namespace type4 = 'http:///de/tudarmstadt/ukp/dkpro/core/api/segmentation/type.ecore'; " +
+				"declare variable $docId as xs:string external; " +
+				"let $doc := fn:doc($docId) " +
+				this.ttrExpression("$doc");
 
 		try (ClientQuery query = this.clientSession.query(queryString))
 		{
@@ -524,20 +769,36 @@ public class BaseXQueryHandler extends AbstractQueryHandler
 			Collection<String> documentIds
 	)
 	{
-		Map<String, Double> ttrMap = new HashMap<>();
+		if (documentIds.isEmpty())
+		{
+			return new HashMap<>();
+		}
+
+		// Document ids can't contain line breaks, since they are used as
+		// file names.
+		StringJoiner uris = new StringJoiner("\n");
 		for (String documentId : documentIds)
 		{
-			try
-			{
-				ttrMap.put(
-						documentId, this.calculateTTRForDocument(documentId)
-				);
-			} catch (DocumentNotFoundException e)
-			{
-				// missing documents in collections are ignored
-			}
+			uris.add(this.getUriFromDocumentId(documentId));
+		}
+
+		// missing documents in collections are ignored
+		String queryString = "declare namespace type4 = 'http:///de/tudarmstadt/ukp/dkpro/core/api/segmentation/type.ecore'; " +
+				"declare variable $uris as xs:string external; " +
+				"for $uri in fn:distinct-values(fn:tokenize($uris, '\n')) " +
+				"    where fn:doc-available($uri) " +
+				"    let $doc := fn:doc($uri) " +
+				"    return ($uri, " + this.ttrExpression("$doc") + ")";
+
+		try (ClientQuery query = this.clientSession.query(queryString))
+		{
+			query.bind("$uris", uris.toString());
+			return this.putResultsIntoTTRMap(query);
+		} catch (IOException e)
+		{
+			e.printStackTrace();
+			throw new QHException(e);
 		}
-		return ttrMap;
 	}
 
 	@Override
@@ -5,6 +5,7 @@ import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.jcas.JCas;
+import org.hucompute.services.uima.eval.database.abstraction.BatchOptions;
 import org.hucompute.services.uima.eval.database.abstraction.ElementType;
 import org.hucompute.services.uima.eval.database.abstraction.QueryHandlerInterface;
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.DocumentNotFoundException;
@@ -59,6 +60,15 @@ public class BenchmarkQueryHandler implements QueryHandlerInterface
 			this.callCount = 0;
 			this.callTimes = new ArrayList<>();
 		}
+
+		/**
+		 * Adds the calls of another benchmark to this one.
+		 */
+		public void merge(MethodBenchmark other)
+		{
+			this.callCount += other.getCallCount();
+			this.callTimes.addAll(other.getCallTimes());
+		}
 	}
 
 	protected QueryHandlerInterface subjectQueryHandler;
@@ -87,6 +97,19 @@ public class BenchmarkQueryHandler implements QueryHandlerInterface
 		return this.methodBenchmarks;
 	}
 
+	/**
+	 * Adds the benchmarks of another handler to the ones of this handler, e.g.
+	 * to combine the timings of multiple handlers that ran concurrently.
+	 */
+	public void mergeMethodBenchmarks(BenchmarkQueryHandler other)
+	{
+		for (Map.Entry<String, MethodBenchmark> entry
+				: other.getMethodBenchmarks().entrySet())
+		{
+			this.methodBenchmarks.get(entry.getKey()).merge(entry.getValue());
+		}
+	}
+
 	@Override
 	public Connections.DBName forConnection()
 	{
@@ -105,6 +128,17 @@ public class BenchmarkQueryHandler implements QueryHandlerInterface
 		mb.addCallTime(end - start);
 	}
 
+	@Override
+	public void createIndexes() throws QHException
+	{
+		long start = System.currentTimeMillis();
+		this.subjectQueryHandler.createIndexes();
+		long end = System.currentTimeMillis();
+		MethodBenchmark mb = this.methodBenchmarks.get("createIndexes");
+		mb.increaseCallCount();
+		mb.addCallTime(end - start);
+	}
+
 	@Override
 	public void openDatabase() throws IOException
 	{
@@ -134,6 +168,43 @@ public class BenchmarkQueryHandler implements QueryHandlerInterface
 		mb.addCallTime(end - start);
 	}
 
+	@Override
+	public void storeDocumentHierarchies(
+			Iterable<JCas> documents,
+			BatchOptions options
+	) throws QHException
+	{
+		long start = System.currentTimeMillis();
+		this.subjectQueryHandler.storeDocumentHierarchies(documents, options);
+		long end = System.currentTimeMillis();
+		MethodBenchmark mb = this.methodBenchmarks
+				.get("storeDocumentHierarchies");
+		mb.increaseCallCount();
+		mb.addCallTime(end - start);
+	}
+
+	@Override
+	public void finishIngest() throws QHException
+	{
+		long start = System.currentTimeMillis();
+		this.subjectQueryHandler.finishIngest();
+		long end = System.currentTimeMillis();
+		MethodBenchmark mb = this.methodBenchmarks.get("finishIngest");
+		mb.increaseCallCount();
+		mb.addCallTime(end - start);
+	}
+
+	@Override
+	public void commitIngest() throws QHException
+	{
+		long start = System.currentTimeMillis();
+		this.subjectQueryHandler.commitIngest();
+		long end = System.currentTimeMillis();
+		MethodBenchmark mb = this.methodBenchmarks.get("commitIngest");
+		mb.increaseCallCount();
+		mb.addCallTime(end - start);
+	}
+
 	@Override
 	public String storeJCasDocument(JCas document) throws QHException
 	{
@@ -294,11 +365,17 @@ public class BenchmarkQueryHandler implements QueryHandlerInterface
 		mb.addCallTime(end - start);
 	}
 
+	/**
+	 * #getDocumentIds() is not overridden, so that the pages fetched by the
+	 * default implementation are benchmarked one by one.
+	 */
 	@Override
-	public Iterable<String> getDocumentIds()
+	public List<String> getDocumentIds(String afterId, int limit)
 	{
 		long start = System.currentTimeMillis();
-		Iterable<String> result = this.subjectQueryHandler.getDocumentIds();
+		List<String> result = this.subjectQueryHandler.getDocumentIds(
+				afterId, limit
+		);
 		long end = System.currentTimeMillis();
 		MethodBenchmark mb = this.methodBenchmarks.get("getDocumentIds");
 		mb.increaseCallCount();
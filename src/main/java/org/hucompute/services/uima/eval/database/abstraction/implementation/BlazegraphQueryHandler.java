@@ -9,10 +9,13 @@ import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import org.apache.commons.lang3.text.StrSubstitutor;
 import org.apache.http.client.HttpResponseException;
-import org.apache.http.client.fluent.Request;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.CASException;
+import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.eclipse.jetty.util.ConcurrentHashSet;
 import org.hucompute.services.uima.eval.database.abstraction.AbstractQueryHandler;
@@ -22,13 +25,14 @@ import org.hucompute.services.uima.eval.database.abstraction.exceptions.QHExcept
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.TypeHasNoValueException;
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.TypeNotCountableException;
 import org.hucompute.services.uima.eval.database.connection.Connections;
+import org.hucompute.services.uima.eval.database.connection.HttpTransport;
+import org.hucompute.services.uima.eval.database.connection.RequestBuffer;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.neo4j.driver.internal.util.Iterables;
 
-import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.*;
@@ -38,8 +42,32 @@ import java.util.stream.StreamSupport;
 
 public class BlazegraphQueryHandler extends AbstractQueryHandler
 {
+	public static final int DEFAULT_BATCH_DOCUMENTS = 1;
+	protected static final String XSD_INTEGER =
+			"<http://www.w3.org/2001/XMLSchema#integer>";
+
 	protected String rootEndpoint;
 
+	/**
+	 * Documents serialized as N-Triples, waiting to be sent in one request.
+	 * The buffer is reused for every request.
+	 */
+	protected RequestBuffer tripleBuffer;
+	protected Writer tripleWriter;
+	protected int batchDocuments;
+	protected int pendingDocuments;
+
+	/**
+	 * Amount of page positions #getDocumentIds remembers, so that a few
+	 * iterations can run at the same time.
+	 */
+	protected static final int PAGE_POSITIONS = 16;
+	/**
+	 * The position in the native statement order after the last id of every
+	 * recently returned page, keyed by that id. Least recently used first.
+	 */
+	protected Map<String, Long> pagePositions;
+
 	protected enum Model
 	{
 		Document(
@@ -477,6 +505,26 @@ public class BlazegraphQueryHandler extends AbstractQueryHandler
 	public BlazegraphQueryHandler(String rootEndpoint)
 	{
 		this.rootEndpoint = rootEndpoint;
+
+		this.tripleBuffer = new RequestBuffer();
+		this.tripleWriter = new BufferedWriter(new OutputStreamWriter(
+				this.tripleBuffer, StandardCharsets.UTF_8
+		));
+		String batchDocuments = System.getenv("BLAZEGRAPH_BATCH_DOCUMENTS");
+		this.batchDocuments =
+				(batchDocuments == null || batchDocuments.isEmpty())
+						? DEFAULT_BATCH_DOCUMENTS
+						: Integer.parseInt(batchDocuments);
+		this.pagePositions = new LinkedHashMap<String, Long>(
+				16, 0.75f, true
+		)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+			{
+				return this.size() > PAGE_POSITIONS;
+			}
+		};
 	}
 
 	/**
@@ -493,13 +541,10 @@ public class BlazegraphQueryHandler extends AbstractQueryHandler
 					+ "?query=" + encodedQuery
 					+ "&format=json";
 
-			return new JSONObject(
-					Request.Get(url)
-							.addHeader("Accept", "application/sparql-results+json")
-							.execute()
-							.returnContent()
-							.asString()
-			);
+			HttpGet request = new HttpGet(url);
+			request.addHeader("Accept", "application/sparql-results+json");
+
+			return HttpTransport.getInstance().executeForJSON(request);
 		} catch (Exception e)
 		{
 			e.printStackTrace();
@@ -521,12 +566,13 @@ public class BlazegraphQueryHandler extends AbstractQueryHandler
 
 		try
 		{
-			return Request.Post(url)
-					.bodyString(body, ContentType.create("application/sparql-update", "UTF-8"))
-					.addHeader("Accept", "application/sparql-results+json")
-					.execute()
-					.returnContent()
-					.asString();
+			HttpPost request = new HttpPost(url);
+			request.setEntity(new StringEntity(
+					body, ContentType.create("application/sparql-update", "UTF-8")
+			));
+			request.addHeader("Accept", "application/sparql-results+json");
+
+			return HttpTransport.getInstance().executeForString(request);
 		} catch (HttpResponseException e)
 		{
 			e.printStackTrace();
@@ -600,12 +646,15 @@ public class BlazegraphQueryHandler extends AbstractQueryHandler
 		final String documentId = DocumentMetaData.get(document)
 				.getDocumentId();
 
+		// Documents without a language get no language triple.
 		final String queryTemplate = "${DocumentPrefix}\n"
 				+ "${TextPrefix}\n"
 				+ "${LanguagePrefix}\n"
 				+ "INSERT DATA {\n"
-				+ "${Document}:${DocumentId} ${Text}:     \"\"\"${DocumentText}\"\"\" ;\n"
-				+ "                          ${Language}: \"${DocumentLanguage}\" .\n"
+				+ "${Document}:${DocumentId} ${Text}:     \"\"\"${DocumentText}\"\"\""
+				+ (document.getDocumentLanguage() == null ? "" : " ;\n"
+				+ "                          ${Language}: \"${DocumentLanguage}\"")
+				+ " .\n"
 				+ "}";
 		final Map<String, String> valueMap = Maps.newHashMap(staticValueMap);
 		valueMap.put("DocumentId", encodeId(documentId));
@@ -618,6 +667,282 @@ public class BlazegraphQueryHandler extends AbstractQueryHandler
 		return documentId;
 	}
 
+	/**
+	 * Serializes the whole Document as N-Triples into a reusable buffer, which
+	 * is sent as a single request every BLAZEGRAPH_BATCH_DOCUMENTS Documents
+	 * and in #finishIngest. Creates the same triples as the single store
+	 * methods. If the Document fails partway, its triples are removed from
+	 * the buffer again, so that the batch only contains complete Documents.
+	 *
+	 * @param document The Document to insert.
+	 * @throws QHException If anything goes wrong. Encapsulates underlying
+	 *                     Exceptions.
+	 */
+	@Override
+	public void storeDocumentHierarchy(JCas document) throws QHException
+	{
+		final String documentId = DocumentMetaData.get(document)
+				.getDocumentId();
+		final String documentIri = iri(Model.Document, documentId);
+
+		int documentStart = -1;
+		try
+		{
+			this.tripleWriter.flush();
+			documentStart = this.tripleBuffer.size();
+
+			this.writeLiteral(documentIri, Property.Text.url(),
+					document.getDocumentText());
+			this.writeLiteral(documentIri, Property.Language.url(),
+					document.getDocumentLanguage());
+
+			Set<String> documentLemmata = new HashSet<>();
+			String previousParagraphIri = null;
+			for (Paragraph paragraph
+					: JCasUtil.select(document, Paragraph.class))
+			{
+				String paragraphIri = iri(
+						Model.Paragraph, UUID.randomUUID().toString()
+				);
+				this.writeTriple(paragraphIri, Property.Begin.url(),
+						integer(paragraph.getBegin()));
+				this.writeTriple(paragraphIri, Property.End.url(),
+						integer(paragraph.getEnd()));
+				this.writeTriple(documentIri,
+						Relationship.DocumentHasParagraph.url(), paragraphIri);
+				if (previousParagraphIri != null)
+				{
+					this.writeTriple(previousParagraphIri,
+							Relationship.NextParagraph.url(), paragraphIri);
+				}
+				previousParagraphIri = paragraphIri;
+
+				String previousSentenceIri = null;
+				for (Sentence sentence : JCasUtil.selectCovered(
+						document, Sentence.class, paragraph
+				))
+				{
+					String sentenceIri = iri(
+							Model.Sentence, UUID.randomUUID().toString()
+					);
+					this.writeTriple(sentenceIri, Property.Begin.url(),
+							integer(sentence.getBegin()));
+					this.writeTriple(sentenceIri, Property.End.url(),
+							integer(sentence.getEnd()));
+					this.writeTriple(documentIri,
+							Relationship.DocumentHasSentence.url(), sentenceIri);
+					this.writeTriple(sentenceIri,
+							Relationship.SentenceInParagraph.url(), paragraphIri);
+					if (previousSentenceIri != null)
+					{
+						this.writeTriple(previousSentenceIri,
+								Relationship.NextSentence.url(), sentenceIri);
+					}
+					previousSentenceIri = sentenceIri;
+
+					String previousTokenIri = null;
+					for (Token token : JCasUtil.selectCovered(
+							document, Token.class, sentence
+					))
+					{
+						String tokenIri = iri(
+								Model.Token, UUID.randomUUID().toString()
+						);
+						String lemmaValue = token.getLemma().getValue();
+						String posValue = token.getPos().getPosValue();
+						String lemmaIri = iri(Model.Lemma, lemmaValue);
+
+						this.writeTriple(tokenIri, Property.Begin.url(),
+								integer(token.getBegin()));
+						this.writeTriple(tokenIri, Property.End.url(),
+								integer(token.getEnd()));
+						this.writeTriple(tokenIri, Property.Value.url(),
+								literal(lemmaValue));
+						this.writeTriple(tokenIri, Property.PosValue.url(),
+								literal(posValue));
+						this.writeTriple(tokenIri,
+								Relationship.TokenHasLemma.url(), lemmaIri);
+						this.writeTriple(tokenIri,
+								Relationship.TokenAtPos.url(),
+								iri(Model.Pos, posValue));
+						this.writeTriple(tokenIri,
+								Relationship.TokenInParagraph.url(),
+								paragraphIri);
+						this.writeTriple(tokenIri,
+								Relationship.TokenInSentence.url(),
+								sentenceIri);
+						if (previousTokenIri != null)
+						{
+							this.writeTriple(previousTokenIri,
+									Relationship.NextToken.url(), tokenIri);
+						}
+						this.writeTriple(documentIri,
+								Relationship.DocumentHasToken.url(), tokenIri);
+						if (documentLemmata.add(lemmaValue))
+						{
+							this.writeTriple(documentIri,
+									Relationship.DocumentHasLemma.url(),
+									lemmaIri);
+						}
+						previousTokenIri = tokenIri;
+					}
+				}
+			}
+		} catch (IOException e)
+		{
+			e.printStackTrace();
+			this.discardTriplesAfter(documentStart);
+			throw new QHException(e);
+		} catch (RuntimeException e)
+		{
+			this.discardTriplesAfter(documentStart);
+			throw e;
+		}
+
+		this.pendingDocuments++;
+		if (this.pendingDocuments >= this.batchDocuments)
+		{
+			this.flushTriples();
+		}
+	}
+
+	/**
+	 * Sends the Documents that are still buffered.
+	 */
+	@Override
+	public void finishIngest() throws QHException
+	{
+		this.flushTriples();
+	}
+
+	/**
+	 * Sends all buffered triples as one N-Triples request and clears the
+	 * buffer, even if the request fails.
+	 */
+	protected void flushTriples()
+	{
+		try
+		{
+			this.tripleWriter.flush();
+			if (this.tripleBuffer.size() > 0)
+			{
+				HttpPost request = new HttpPost(
+						this.rootEndpoint + "/bigdata/sparql"
+				);
+				request.setEntity(this.tripleBuffer.toEntity(
+						ContentType.create("text/plain", "UTF-8")
+				));
+
+				HttpTransport.getInstance().executeForString(request);
+			}
+		} catch (IOException e)
+		{
+			e.printStackTrace();
+			throw new QHException(e);
+		} finally
+		{
+			this.tripleBuffer.reset();
+			this.pendingDocuments = 0;
+		}
+	}
+
+	/**
+	 * Removes the triples of a Document, that failed while it was written,
+	 * from the buffer.
+	 *
+	 * @param documentStart The size of the buffer before the Document or -1,
+	 *                      if nothing was written yet.
+	 */
+	protected void discardTriplesAfter(int documentStart)
+	{
+		if (documentStart < 0)
+		{
+			return;
+		}
+		try
+		{
+			this.tripleWriter.flush();
+			this.tripleBuffer.truncate(documentStart);
+		} catch (IOException e)
+		{
+			// The buffer can't be trusted anymore, so the whole batch is
+			// discarded.
+			e.printStackTrace();
+			this.tripleBuffer.reset();
+			this.pendingDocuments = 0;
+		}
+	}
+
+	protected void writeTriple(String subject, String predicate, String object)
+			throws IOException
+	{
+		this.tripleWriter.write(subject);
+		this.tripleWriter.write(" <");
+		this.tripleWriter.write(predicate);
+		this.tripleWriter.write("> ");
+		this.tripleWriter.write(object);
+		this.tripleWriter.write(" .\n");
+	}
+
+	/**
+	 * Writes a triple with a string literal as object. Nothing is written if
+	 * the value is null, like an unset Document language.
+	 */
+	protected void writeLiteral(String subject, String predicate, String value)
+			throws IOException
+	{
+		if (value == null)
+		{
+			return;
+		}
+		this.writeTriple(subject, predicate, literal(value));
+	}
+
+	/**
+	 * @return The full IRI of the element, equal to the prefixed name used in
+	 * the SPARQL queries.
+	 */
+	protected static String iri(Model model, String id)
+	{
+		return "<" + model.url() + encodeId(id, false) + ">";
+	}
+
+	protected static String integer(int value)
+	{
+		return "\"" + value + "\"^^" + XSD_INTEGER;
+	}
+
+	/**
+	 * @return The value as N-Triples string literal.
+	 */
+	protected static String literal(String value)
+	{
+		StringBuilder literal = new StringBuilder(value.length() + 2);
+		literal.append('"');
+		for (int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			switch (c)
+			{
+				case '\\':
+					literal.append("\\\\");
+					break;
+				case '"':
+					literal.append("\\\"");
+					break;
+				case '\n':
+					literal.append("\\n");
+					break;
+				case '\r':
+					literal.append("\\r");
+					break;
+				default:
+					literal.append(c);
+			}
+		}
+		return literal.append('"').toString();
+	}
+
 	@Override
 	public String storeParagraph(Paragraph paragraph, String documentId, String previousParagraphId)
 	{
@@ -772,18 +1097,45 @@ public class BlazegraphQueryHandler extends AbstractQueryHandler
 		}
 	}
 
+	/**
+	 * Pages over the Document IRIs, which all have a Text, without binding
+	 * the Text itself.
+	 * <p>
+	 * Pages are returned in Blazegraph's native statement order, which needs
+	 * no sorting. The position after the last id of a page is remembered, so
+	 * the next page continues from there via OFFSET. If afterId is not the
+	 * end of a remembered page, the page falls back to comparing the IRIs as
+	 * strings, which sorts all Documents for every page. Pages are only
+	 * consistent as long as no Documents are stored in the meantime.
+	 */
 	@Override
-	public Iterable<String> getDocumentIds()
+	public List<String> getDocumentIds(String afterId, int limit)
 	{
 		List<String> documentIds = new ArrayList<>();
 
-		final String queryTemplate = "${DocumentPrefix}" +
-				"SELECT distinct ?doc\n" +
+		Long position = afterId == null ? Long.valueOf(0)
+				: this.pagePositions.remove(afterId);
+		final String queryTemplate = "${TextPrefix}\n" +
+				"SELECT ?doc\n" +
 				"WHERE {\n" +
-				"  ?doc ?y ?z\n" +
-				"  FILTER (strstarts(str(?doc), str(${Document}:)))\n" +
-				"}";
-		StrSubstitutor sub = new StrSubstitutor(staticValueMap);
+				"  ?doc ${Text}: []\n" +
+				(position != null
+						? "}\n" +
+						"OFFSET ${Offset}\n"
+						: "  FILTER (str(?doc) > str(${AfterDocument}))\n" +
+						"}\n" +
+						"ORDER BY str(?doc)\n") +
+				"LIMIT ${Limit}";
+		final Map<String, String> valueMap = Maps.newHashMap(staticValueMap);
+		if (position != null)
+		{
+			valueMap.put("Offset", String.valueOf(position));
+		} else
+		{
+			valueMap.put("AfterDocument", iri(Model.Document, afterId));
+		}
+		valueMap.put("Limit", String.valueOf(limit));
+		StrSubstitutor sub = new StrSubstitutor(valueMap);
 		final String query = sub.replace(queryTemplate);
 
 		JSONArray results = this.extractResults(
@@ -793,10 +1145,18 @@ public class BlazegraphQueryHandler extends AbstractQueryHandler
 		for (int i = 0; i < results.length(); i++)
 		{
 			JSONObject current = results.getJSONObject(i);
-			documentIds.add(
+			documentIds.add(decodeId(
 					getIdFromUrl(
 							current.getJSONObject("doc").getString("value")
 					)
+			));
+		}
+
+		if (position != null && !documentIds.isEmpty())
+		{
+			this.pagePositions.put(
+					documentIds.get(documentIds.size() - 1),
+					position + documentIds.size()
 			);
 		}
 
@@ -971,7 +1331,12 @@ public class BlazegraphQueryHandler extends AbstractQueryHandler
 		switch (type)
 		{
 			case Document:
-				return Iterables.count(this.getDocumentIds());
+				queryTemplate = "${TextPrefix}\n"
+						+ "SELECT (count(?doc) as ?count)\n"
+						+ "WHERE {\n"
+						+ "  ?doc ${Text}: ?text\n"
+						+ "}";
+				break;
 			case Paragraph:
 				queryTemplate = "${ParagraphPrefix}\n"
 						+ "${DocumentHasParagraphPrefix}\n"
@@ -1038,7 +1403,8 @@ public class BlazegraphQueryHandler extends AbstractQueryHandler
 		switch (type)
 		{
 			case Document:
-				return Iterables.count(this.getDocumentIds());
+				// There is obviously always one Document in a Document.
+				return 1;
 			case Paragraph:
 				queryTemplate = "${DocumentPrefix}\n"
 						+ "${ParagraphPrefix}\n"
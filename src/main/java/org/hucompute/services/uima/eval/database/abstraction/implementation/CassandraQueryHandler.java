@@ -2,6 +2,7 @@ package org.hucompute.services.uima.eval.database.abstraction.implementation;
 
 import com.datastax.driver.core.*;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS;
 import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Lemma;
@@ -13,6 +14,7 @@ import org.apache.uima.cas.CASException;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.hucompute.services.uima.eval.database.abstraction.AbstractQueryHandler;
+import org.hucompute.services.uima.eval.database.abstraction.BatchOptions;
 import org.hucompute.services.uima.eval.database.abstraction.ElementType;
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.DocumentNotFoundException;
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.QHException;
@@ -21,6 +23,7 @@ import org.hucompute.services.uima.eval.database.connection.Connections;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Semaphore;
 
 /**
  * Most of the queries here use the same concept as in the MySQLQueryHandler.
@@ -28,15 +31,55 @@ import java.util.*;
  */
 public class CassandraQueryHandler extends AbstractQueryHandler
 {
+	/**
+	 * Determines how #storeDocumentHierarchy writes to the database.
+	 * <p>
+	 * Synchronous: Every statement is executed and awaited on its own.
+	 * Pipelined: All statements of a Document are executed asynchronously
+	 * with at most CASSANDRA_MAX_IN_FLIGHT requests in flight at once. The
+	 * Document is only complete when all of its requests are.
+	 */
+	public enum WriteMode
+	{
+		Synchronous, Pipelined
+	}
+
+	public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
 	protected Session session;
 	protected boolean statementsPrepared = false;
 	protected Map<String, PreparedStatement> preparedStatementMap;
 
+	protected WriteMode writeMode;
+
+	/**
+	 * Lemma and POS values that are already registered in the elementCount
+	 * table, so that they don't have to be checked again.
+	 */
+	protected Set<String> knownLemmata;
+	protected Set<String> knownPOSs;
+	/**
+	 * One permit per request that may be in flight in Pipelined WriteMode.
+	 */
+	protected Semaphore inFlightPermits;
+
 	public CassandraQueryHandler(Session session)
 	{
 		this.session = session;
 
 		this.preparedStatementMap = new HashMap<>();
+		this.knownLemmata = new HashSet<>();
+		this.knownPOSs = new HashSet<>();
+
+		this.writeMode = "pipelined".equalsIgnoreCase(
+				System.getenv("CASSANDRA_WRITE_MODE")
+		) ? WriteMode.Pipelined : WriteMode.Synchronous;
+		String maxInFlight = System.getenv("CASSANDRA_MAX_IN_FLIGHT");
+		this.inFlightPermits = new Semaphore(
+				(maxInFlight == null || maxInFlight.isEmpty())
+						? DEFAULT_MAX_IN_FLIGHT
+						: Integer.parseInt(maxInFlight)
+		);
 	}
 
 	/**
@@ -140,6 +183,44 @@ public class CassandraQueryHandler extends AbstractQueryHandler
 								"WHERE \"documentId\" = ? AND \"posValue\" = ?;"
 				)
 		);
+		this.preparedStatementMap.put(
+				"incrementElementCount",
+				this.session.prepare(
+						"UPDATE \"elementCount\" " +
+								"SET \"count\" = \"count\" + ? " +
+								"WHERE \"type\" = ?;"
+				)
+		);
+		this.preparedStatementMap.put(
+				"incrementDocumentFrequency",
+				this.session.prepare(
+						"UPDATE \"documentFrequency\" " +
+								"SET \"count\" = \"count\" + 1 " +
+								"WHERE \"value\" = ?;"
+				)
+		);
+		this.preparedStatementMap.put(
+				"insertLemmaType",
+				this.session.prepare(
+						"INSERT INTO \"lemmaType\" (\"value\") " +
+								"VALUES (?) IF NOT EXISTS;"
+				)
+		);
+		this.preparedStatementMap.put(
+				"insertPosType",
+				this.session.prepare(
+						"INSERT INTO \"posType\" (\"value\") " +
+								"VALUES (?) IF NOT EXISTS;"
+				)
+		);
+		this.preparedStatementMap.put(
+				"insertDocumentTTR",
+				this.session.prepare(
+						"INSERT INTO \"documentTTR\" " +
+								"(\"bucket\", \"documentId\", \"ttr\") " +
+								"VALUES (0, ?, ?);"
+				)
+		);
 		this.preparedStatementMap.put(
 				"getTokenValue",
 				this.session.prepare(
@@ -183,10 +264,19 @@ public class CassandraQueryHandler extends AbstractQueryHandler
 								"WHERE \"uid\" = ?;"
 				)
 		);
+		// Documents are distributed by their id, so they can only be paged
+		// in the order of the partition tokens.
 		this.preparedStatementMap.put(
 				"getDocumentIds",
 				this.session.prepare(
-						"SELECT \"uid\" FROM \"document\";"
+						"SELECT \"uid\" FROM \"document\" LIMIT ?;"
+				)
+		);
+		this.preparedStatementMap.put(
+				"getDocumentIdsAfter",
+				this.session.prepare(
+						"SELECT \"uid\" FROM \"document\" " +
+								"WHERE token(\"uid\") > token(?) LIMIT ?;"
 				)
 		);
 		this.preparedStatementMap.put(
@@ -208,45 +298,16 @@ public class CassandraQueryHandler extends AbstractQueryHandler
 		this.preparedStatementMap.put(
 				"countDocumentsContainingLemma",
 				this.session.prepare(
-						"SELECT COUNT(*) " +
-								"FROM \"documentByLemma\" " +
+						"SELECT \"count\" " +
+								"FROM \"documentFrequency\" " +
 								"WHERE \"value\" = ?;"
 				)
 		);
 		this.preparedStatementMap.put(
-				"countDocuments",
+				"countElements",
 				this.session.prepare(
-						"SELECT COUNT(*) FROM \"document\";"
-				)
-		);
-		this.preparedStatementMap.put(
-				"countParagraphs",
-				this.session.prepare(
-						"SELECT COUNT(*) FROM \"paragraph\";"
-				)
-		);
-		this.preparedStatementMap.put(
-				"countSentences",
-				this.session.prepare(
-						"SELECT COUNT(*) FROM \"sentence\";"
-				)
-		);
-		this.preparedStatementMap.put(
-				"countTokens",
-				this.session.prepare(
-						"SELECT COUNT(*) FROM \"token\";"
-				)
-		);
-		this.preparedStatementMap.put(
-				"countLemmata",
-				this.session.prepare(
-						"SELECT COUNT(*) FROM \"lemma\";"
-				)
-		);
-		this.preparedStatementMap.put(
-				"countPOSs",
-				this.session.prepare(
-						"SELECT COUNT(*) FROM \"pos\";"
+						"SELECT \"count\" FROM \"elementCount\" " +
+								"WHERE \"type\" = ?;"
 				)
 		);
 		this.preparedStatementMap.put(
@@ -263,9 +324,9 @@ public class CassandraQueryHandler extends AbstractQueryHandler
 		this.preparedStatementMap.put(
 				"countTokensWithValue",
 				this.session.prepare(
-						"SELECT COUNT(*) " +
-								"FROM \"tokenByValue\" " +
-								"WHERE \"lemmaValue\" = ?;"
+						"SELECT \"count\" " +
+								"FROM \"lemma\" " +
+								"WHERE \"value\" = ?;"
 				)
 		);
 		this.preparedStatementMap.put(
@@ -287,9 +348,9 @@ public class CassandraQueryHandler extends AbstractQueryHandler
 		this.preparedStatementMap.put(
 				"countTokensWithValueInDocument",
 				this.session.prepare(
-						"SELECT COUNT(*) " +
-								"FROM \"tokenByValue\" " +
-								"WHERE \"lemmaValue\" = ? " +
+						"SELECT \"count\" " +
+								"FROM \"lemmaByDocument\" " +
+								"WHERE \"value\" = ? " +
 								"AND \"documentId\" = ?;"
 				)
 		);
@@ -319,24 +380,20 @@ public class CassandraQueryHandler extends AbstractQueryHandler
 				)
 		);
 		this.preparedStatementMap.put(
-				"getDocuments",
+				"getTTRs",
 				this.session.prepare(
-						"SELECT \"uid\", \"text\", \"language\", " +
-								"\"paragraphCount\", \"sentenceCount\", " +
-								"\"tokenCount\", \"lemmaCount\", " +
-								"\"posCount\" " +
-								"FROM \"document\";"
+						"SELECT \"documentId\", \"ttr\" " +
+								"FROM \"documentTTR\" " +
+								"WHERE \"bucket\" = 0;"
 				)
 		);
 		this.preparedStatementMap.put(
-				"getDocumentsIn",
+				"getTTRsIn",
 				this.session.prepare(
-						"SELECT \"uid\", \"text\", \"language\", " +
-								"\"paragraphCount\", \"sentenceCount\", " +
-								"\"tokenCount\", \"lemmaCount\", " +
-								"\"posCount\" " +
-								"FROM \"document\" " +
-								"WHERE \"uid\" IN ?;"
+						"SELECT \"documentId\", \"ttr\" " +
+								"FROM \"documentTTR\" " +
+								"WHERE \"bucket\" = 0 " +
+								"AND \"documentId\" IN ?;"
 				)
 		);
 		this.preparedStatementMap.put(
@@ -431,6 +488,16 @@ public class CassandraQueryHandler extends AbstractQueryHandler
 		return Connections.DBName.Cassandra;
 	}
 
+	public WriteMode getWriteMode()
+	{
+		return this.writeMode;
+	}
+
+	public void setWriteMode(WriteMode writeMode)
+	{
+		this.writeMode = writeMode;
+	}
+
 	/**
 	 * Primary keys are automatically indexed with a primary index.
 	 * Secondary indexes are created manually for all fields that are queried at
@@ -460,6 +527,13 @@ public class CassandraQueryHandler extends AbstractQueryHandler
 		session.execute("DROP TABLE IF EXISTS \"posByDocument\"");
 		session.execute("DROP TABLE IF EXISTS \"bigram\"");
 		session.execute("DROP TABLE IF EXISTS \"trigram\"");
+		session.execute("DROP TABLE IF EXISTS \"elementCount\"");
+		session.execute("DROP TABLE IF EXISTS \"documentFrequency\"");
+		session.execute("DROP TABLE IF EXISTS \"lemmaType\"");
+		session.execute("DROP TABLE IF EXISTS \"posType\"");
+		session.execute("DROP TABLE IF EXISTS \"documentTTR\"");
+		this.knownLemmata.clear();
+		this.knownPOSs.clear();
 
 		session.execute("CREATE TABLE \"document\" ( " +
 				"  \"uid\" VARCHAR primary key, " + // documentId
@@ -563,6 +637,35 @@ public class CassandraQueryHandler extends AbstractQueryHandler
 				"  PRIMARY KEY (\"documentId\", \"firstValue\", \"secondValue\", \"thirdValue\") " +
 				")");
 
+		/*
+		 * Aggregates maintained during ingest, so that counts can be read from
+		 * a single partition instead of counting whole tables.
+		 * elementCount holds one counter per ElementType. lemmaType and
+		 * posType register each distinct value once, so that Lemmata and POS
+		 * are only counted the first time they occur. documentTTR keeps all
+		 * TTRs in one partition.
+		 */
+		session.execute("CREATE TABLE \"elementCount\" ( " +
+				"  \"type\" VARCHAR primary key, " +
+				"  \"count\" counter " +
+				")");
+		session.execute("CREATE TABLE \"documentFrequency\" ( " +
+				"  \"value\" VARCHAR primary key, " +
+				"  \"count\" counter " + // amount of documents containing lemma
+				")");
+		session.execute("CREATE TABLE \"lemmaType\" ( " +
+				"  \"value\" VARCHAR primary key " +
+				")");
+		session.execute("CREATE TABLE \"posType\" ( " +
+				"  \"value\" VARCHAR primary key " +
+				")");
+		session.execute("CREATE TABLE \"documentTTR\" ( " +
+				"  \"bucket\" INT, " +
+				"  \"documentId\" VARCHAR, " +
+				"  \"ttr\" DOUBLE, " +
+				"  PRIMARY KEY (\"bucket\", \"documentId\") " +
+				")");
+
 		this.prepareStatements();
 	}
 
@@ -579,89 +682,489 @@ public class CassandraQueryHandler extends AbstractQueryHandler
 		this.setUpDatabase();
 	}
 
+	/**
+	 * Stores the Document's own entry and updates the aggregates for it.
+	 * When the whole hierarchy is stored, #storeDocumentHierarchy updates
+	 * the aggregates only after all elements were written instead.
+	 */
 	@Override
 	public String storeJCasDocument(JCas document)
+	{
+		DocumentCounts counts = new DocumentCounts(document);
+		final String documentId = this.insertDocument(document, counts);
+		this.updateAggregates(documentId, counts);
+		return documentId;
+	}
+
+	/**
+	 * Inserts the Document's own entry without touching any aggregates.
+	 *
+	 * @param document The Document to insert.
+	 * @param counts   The Document's element counts.
+	 * @return The Document's id.
+	 */
+	protected String insertDocument(JCas document, DocumentCounts counts)
 	{
 		final String documentId = DocumentMetaData.get(document)
 				.getDocumentId();
 
-		Set<String> posValues = new HashSet<>();
-		Set<String> lemmaValues = new HashSet<>();
+		BoundStatement aStatement = this
+				.preparedStatementMap.get("insertDocument").bind()
+				.setString(0, documentId)
+				.setString(1, document.getDocumentText())
+				.setString(2, document.getDocumentLanguage())
+				.setInt(3, counts.paragraphCount)
+				.setInt(4, counts.sentenceCount)
+				.setInt(5, counts.tokenCount)
+				.setInt(6, counts.lemmaValues.size())
+				.setInt(7, counts.posValues.size());
+
+		this.session.execute(aStatement);
+
+		return documentId;
+	}
 
-		// Count all the elements in the document
-		int paragraphCount = 0;
-		int sentenceCount = 0;
-		int tokenCount = 0;
-		for (Paragraph paragraph
-				: JCasUtil.select(document, Paragraph.class))
+	/**
+	 * The amounts of elements and the distinct values of a Document, that
+	 * are stored with it and added to the aggregates.
+	 */
+	protected static class DocumentCounts
+	{
+		protected int paragraphCount = 0;
+		protected int sentenceCount = 0;
+		protected int tokenCount = 0;
+		protected Set<String> lemmaValues = new HashSet<>();
+		protected Set<String> posValues = new HashSet<>();
+
+		/**
+		 * Counts all the elements in the document.
+		 *
+		 * @param document The Document to count.
+		 */
+		protected DocumentCounts(JCas document)
 		{
-			paragraphCount++;
-			for (Sentence sentence : JCasUtil.selectCovered(
-					document,
-					Sentence.class, paragraph
-			))
+			for (Paragraph paragraph
+					: JCasUtil.select(document, Paragraph.class))
 			{
-				sentenceCount++;
-				for (Token token : JCasUtil.selectCovered(
-						document, Token.class, sentence
+				this.paragraphCount++;
+				for (Sentence sentence : JCasUtil.selectCovered(
+						document,
+						Sentence.class, paragraph
 				))
 				{
-					tokenCount++;
-					lemmaValues.add(token.getLemma().getValue());
-					posValues.add(token.getPos().getPosValue());
+					this.sentenceCount++;
+					for (Token token : JCasUtil.selectCovered(
+							document, Token.class, sentence
+					))
+					{
+						this.tokenCount++;
+						this.lemmaValues.add(token.getLemma().getValue());
+						this.posValues.add(token.getPos().getPosValue());
+					}
 				}
 			}
 		}
+	}
 
-		BoundStatement aStatement = this
-				.preparedStatementMap.get("insertDocument").bind()
+	/**
+	 * Updates the element counters, the document frequencies and the TTR for
+	 * a new Document. Must only be called once the Document was stored
+	 * completely, since the counters can't be rolled back.
+	 *
+	 * @param documentId The Document's id.
+	 * @param counts     The Document's element counts.
+	 */
+	protected void updateAggregates(String documentId, DocumentCounts counts)
+	{
+		this.incrementElementCount(ElementType.Document, 1);
+		this.incrementElementCount(
+				ElementType.Paragraph, counts.paragraphCount
+		);
+		this.incrementElementCount(ElementType.Sentence, counts.sentenceCount);
+		this.incrementElementCount(ElementType.Token, counts.tokenCount);
+
+		int newLemmata = 0;
+		for (String lemmaValue : counts.lemmaValues)
+		{
+			this.session.execute(this
+					.preparedStatementMap.get("incrementDocumentFrequency")
+					.bind()
+					.setString(0, lemmaValue));
+			if (this.registerValue(
+					lemmaValue, this.knownLemmata, "insertLemmaType"
+			))
+			{
+				newLemmata++;
+			}
+		}
+		this.incrementElementCount(ElementType.Lemma, newLemmata);
+
+		int newPOSs = 0;
+		for (String posValue : counts.posValues)
+		{
+			if (this.registerValue(posValue, this.knownPOSs, "insertPosType"))
+			{
+				newPOSs++;
+			}
+		}
+		this.incrementElementCount(ElementType.Pos, newPOSs);
+
+		this.session.execute(this
+				.preparedStatementMap.get("insertDocumentTTR").bind()
 				.setString(0, documentId)
-				.setString(1, document.getDocumentText())
-				.setString(2, document.getDocumentLanguage())
-				.setInt(3, paragraphCount)
-				.setInt(4, sentenceCount)
-				.setInt(5, tokenCount)
-				.setInt(6, lemmaValues.size())
-				.setInt(7, posValues.size());
+				.setDouble(1, (double) counts.tokenCount
+						/ (double) counts.lemmaValues.size()));
+	}
 
-		this.session.execute(aStatement);
+	protected void incrementElementCount(ElementType type, long amount)
+	{
+		if (amount == 0)
+		{
+			return;
+		}
+		this.session.execute(this
+				.preparedStatementMap.get("incrementElementCount").bind()
+				.setLong(0, amount)
+				.setString(1, type.toString()));
+	}
 
-		return documentId;
+	/**
+	 * Registers a Lemma or POS value in its type table.
+	 *
+	 * @param value     The value.
+	 * @param known     Values that were registered before.
+	 * @param statement Name of the conditional insert for the type table.
+	 * @return Whether the value was not registered before.
+	 */
+	protected boolean registerValue(
+			String value,
+			Set<String> known,
+			String statement
+	)
+	{
+		if (!known.add(value))
+		{
+			return false;
+		}
+		return this.session.execute(this
+				.preparedStatementMap.get(statement).bind()
+				.setString(0, value)).wasApplied();
+	}
+
+	/**
+	 * The counters, document frequencies and TTR are only updated once all
+	 * elements of the Document were written, so that a failed Document is
+	 * not counted.
+	 * <p>
+	 * In Pipelined WriteMode all statements for the Document are sent without
+	 * waiting for each other. Returns once every one of them has completed.
+	 * Failed requests are collected and reported together.
+	 *
+	 * @param document The Document to insert.
+	 * @throws QHException If any request for the Document failed. In
+	 *                     Pipelined WriteMode, this encapsulates the first
+	 *                     failure, the others are attached as suppressed.
+	 */
+	@Override
+	public void storeDocumentHierarchy(JCas document) throws QHException
+	{
+		if (this.writeMode != WriteMode.Pipelined)
+		{
+			DocumentCounts counts = new DocumentCounts(document);
+			final String documentId = this.insertDocument(document, counts);
+			this.storeDocumentElements(document, documentId);
+			this.updateAggregates(documentId, counts);
+			return;
+		}
+
+		this.completePipelined(this.sendPipelined(document));
 	}
 
+	/**
+	 * In Pipelined WriteMode the statements of all Documents are sent before
+	 * waiting for any of them, so that the requests of one Document overlap
+	 * with those of the next. At most CASSANDRA_MAX_IN_FLIGHT requests are
+	 * in flight at once, thus the BatchOptions are ignored. Each Document
+	 * still only updates the aggregates once all of its requests completed.
+	 *
+	 * @param documents The Documents to insert.
+	 * @param options   Ignored, see above.
+	 * @throws QHException If any request failed. Encapsulates the failure of
+	 *                     the first failed Document, the failures of the
+	 *                     others are attached as suppressed.
+	 */
 	@Override
-	public String storeParagraph(
+	public void storeDocumentHierarchies(
+			Iterable<JCas> documents,
+			BatchOptions options
+	) throws QHException
+	{
+		if (this.writeMode != WriteMode.Pipelined)
+		{
+			super.storeDocumentHierarchies(documents, options);
+			return;
+		}
+
+		// The Documents sent before a failure are still awaited, so that
+		// their aggregates are updated.
+		List<PipelinedDocument> pipelined = new ArrayList<>();
+		QHException failure = null;
+		for (JCas document : documents)
+		{
+			try
+			{
+				pipelined.add(this.sendPipelined(document));
+			} catch (RuntimeException e)
+			{
+				failure = addFailure(failure, new QHException(e));
+			}
+		}
+
+		for (PipelinedDocument document : pipelined)
+		{
+			try
+			{
+				this.completePipelined(document);
+			} catch (QHException e)
+			{
+				failure = addFailure(failure, e);
+			}
+		}
+		if (failure != null)
+		{
+			throw failure;
+		}
+	}
+
+	/**
+	 * @param failure The first failure so far or null.
+	 * @param e       Another failure.
+	 * @return The first failure, with the others attached as suppressed.
+	 */
+	protected static QHException addFailure(QHException failure, QHException e)
+	{
+		if (failure == null)
+		{
+			return e;
+		}
+		failure.addSuppressed(e);
+		return failure;
+	}
+
+	/**
+	 * A Document whose statements were sent in Pipelined WriteMode, together
+	 * with the requests that are still in flight.
+	 */
+	protected static class PipelinedDocument
+	{
+		protected final String documentId;
+		protected final DocumentCounts counts;
+		protected final List<ResultSetFuture> futures = new ArrayList<>();
+		protected final List<Throwable> errors = new ArrayList<>();
+
+		protected PipelinedDocument(JCas document)
+		{
+			this.documentId = DocumentMetaData.get(document).getDocumentId();
+			this.counts = new DocumentCounts(document);
+		}
+	}
+
+	/**
+	 * Sends all statements of a Document without waiting for them. Failures
+	 * while sending are collected in the returned PipelinedDocument.
+	 *
+	 * @param document The Document to insert.
+	 * @return The Document's requests in flight.
+	 */
+	protected PipelinedDocument sendPipelined(JCas document)
+	{
+		PipelinedDocument pipelined = new PipelinedDocument(document);
+		final String documentId = pipelined.documentId;
+		final DocumentCounts counts = pipelined.counts;
+		List<ResultSetFuture> futures = pipelined.futures;
+		List<Throwable> errors = pipelined.errors;
+
+		try
+		{
+			this.insertDocument(document, counts);
+
+			String previousParagraphId = null;
+			for (Paragraph paragraph
+					: JCasUtil.select(document, Paragraph.class))
+			{
+				String paragraphId = UUID.randomUUID().toString();
+				futures.add(this.executePipelined(
+						this.bindParagraph(
+								paragraph, paragraphId,
+								documentId, previousParagraphId
+						)
+				));
+				previousParagraphId = paragraphId;
+
+				String previousSentenceId = null;
+				for (Sentence sentence : JCasUtil.selectCovered(
+						document, Sentence.class, paragraph
+				))
+				{
+					String sentenceId = UUID.randomUUID().toString();
+					futures.add(this.executePipelined(
+							this.bindSentence(
+									sentence, sentenceId, documentId,
+									paragraphId, previousSentenceId
+							)
+					));
+					previousSentenceId = sentenceId;
+
+					// The n-grams are built from the values in memory, since
+					// the previous Tokens may not have been written yet.
+					String previousTokenId = null;
+					String previousValue = null;
+					String prevPreviousValue = null;
+					for (Token token : JCasUtil.selectCovered(
+							document, Token.class, sentence
+					))
+					{
+						String tokenId = UUID.randomUUID().toString();
+						String lemmaValue = token.getLemma().getValue();
+						List<Statement> statements = this.bindToken(
+								token, tokenId, documentId, paragraphId,
+								sentenceId, previousTokenId
+						);
+						if (previousValue != null)
+						{
+							statements.add(this
+									.preparedStatementMap.get("insertBiGram")
+									.bind()
+									.setString(0, documentId)
+									.setString(1, previousValue)
+									.setString(2, lemmaValue));
+						}
+						if (prevPreviousValue != null)
+						{
+							statements.add(this
+									.preparedStatementMap.get("insertTriGram")
+									.bind()
+									.setString(0, documentId)
+									.setString(1, prevPreviousValue)
+									.setString(2, previousValue)
+									.setString(3, lemmaValue));
+						}
+						for (Statement statement : statements)
+						{
+							futures.add(this.executePipelined(statement));
+						}
+
+						previousTokenId = tokenId;
+						prevPreviousValue = previousValue;
+						previousValue = lemmaValue;
+					}
+				}
+			}
+		} catch (RuntimeException e)
+		{
+			errors.add(e);
+		}
+
+		return pipelined;
+	}
+
+	/**
+	 * Waits for all requests of a Document, successful or not, and only
+	 * updates the aggregates if none of them failed.
+	 *
+	 * @param pipelined The Document, whose requests were sent.
+	 * @throws QHException If any request for the Document failed. Encapsulates
+	 *                     the first failure, the others are attached as
+	 *                     suppressed.
+	 */
+	protected void completePipelined(PipelinedDocument pipelined)
+			throws QHException
+	{
+		for (ResultSetFuture future : pipelined.futures)
+		{
+			try
+			{
+				future.getUninterruptibly();
+			} catch (RuntimeException e)
+			{
+				pipelined.errors.add(e);
+			}
+		}
+
+		List<Throwable> errors = pipelined.errors;
+		if (!errors.isEmpty())
+		{
+			logger.severe(errors.size() + " requests failed when trying to "
+					+ "insert " + pipelined.documentId + ".");
+			Throwable first = errors.get(0);
+			QHException exception = new QHException(
+					first instanceof Exception
+							? (Exception) first
+							: new Exception(first)
+			);
+			for (Throwable error : errors.subList(1, errors.size()))
+			{
+				exception.addSuppressed(error);
+			}
+			throw exception;
+		}
+
+		this.updateAggregates(pipelined.documentId, pipelined.counts);
+	}
+
+	/**
+	 * Sends a statement asynchronously once a permit for another request in
+	 * flight is available. The permit is released when the request completes.
+	 * Failures are not collected here, but by whoever waits for the future,
+	 * since the waiting thread may be released before any listener has run.
+	 *
+	 * @param statement The statement to execute.
+	 * @return The request's future.
+	 */
+	protected ResultSetFuture executePipelined(Statement statement)
+	{
+		this.inFlightPermits.acquireUninterruptibly();
+		ResultSetFuture future;
+		try
+		{
+			future = this.session.executeAsync(statement);
+		} catch (RuntimeException e)
+		{
+			this.inFlightPermits.release();
+			throw e;
+		}
+		future.addListener(
+				this.inFlightPermits::release,
+				MoreExecutors.directExecutor()
+		);
+		return future;
+	}
+
+	protected BoundStatement bindParagraph(
 			Paragraph paragraph,
+			String paragraphId,
 			String documentId,
 			String previousParagraphId
 	)
 	{
-		String paragraphId = UUID.randomUUID().toString();
-
-		BoundStatement aStatement = this
+		return this
 				.preparedStatementMap.get("insertParagraph").bind()
 				.setString(0, paragraphId)
 				.setString(1, documentId)
 				.setInt(2, paragraph.getBegin())
 				.setInt(3, paragraph.getEnd())
 				.setString(4, previousParagraphId);
-
-		this.session.execute(aStatement);
-
-		return paragraphId;
 	}
 
-	@Override
-	public String storeSentence(
+	protected BoundStatement bindSentence(
 			Sentence sentence,
+			String sentenceId,
 			String documentId,
 			String paragraphId,
 			String previousSentenceId
 	)
 	{
-		String sentenceId = UUID.randomUUID().toString();
-
-		BoundStatement aStatement = this
+		return this
 				.preparedStatementMap.get("insertSentence").bind()
 				.setString(0, sentenceId)
 				.setString(1, documentId)
@@ -669,28 +1172,30 @@ public class CassandraQueryHandler extends AbstractQueryHandler
 				.setInt(3, sentence.getEnd())
 				.setString(4, previousSentenceId)
 				.setString(5, paragraphId);
-
-		this.session.execute(aStatement);
-
-		return sentenceId;
 	}
 
-	@Override
-	public String storeToken(
+	/**
+	 * Binds the Token itself and all the counters and references that have
+	 * to be updated with it. N-grams are not included, since they depend on
+	 * the previous Tokens.
+	 *
+	 * @return The statements in no particular order.
+	 */
+	protected List<Statement> bindToken(
 			Token token,
+			String tokenId,
 			String documentId,
 			String paragraphId,
 			String sentenceId,
 			String previousTokenId
 	)
 	{
-		String tokenId = UUID.randomUUID().toString();
-
 		String lemmaValue = token.getLemma().getValue();
 		String posValue = token.getPos().getPosValue();
+		List<Statement> statements = new ArrayList<>();
 
 		// Insert Token.
-		BoundStatement aStatement = this
+		statements.add(this
 				.preparedStatementMap.get("insertToken").bind()
 				.setString(0, documentId)
 				.setString(1, tokenId)
@@ -700,56 +1205,107 @@ public class CassandraQueryHandler extends AbstractQueryHandler
 				.setString(5, posValue)
 				.setString(6, previousTokenId)
 				.setString(7, paragraphId)
-				.setString(8, sentenceId);
-		this.session.execute(aStatement);
+				.setString(8, sentenceId));
 
 		// Increment occurence counter for Lemma. (Inserts it, if it doesn't
 		// exist yet.)
-		aStatement = this
+		statements.add(this
 				.preparedStatementMap.get("incrementLemmaCounter").bind()
-				.setString(0, lemmaValue);
-		this.session.execute(aStatement);
+				.setString(0, lemmaValue));
 
 		// Increment occurence counter for POS. (Inserts it, if it doesn't exist
 		// yet.)
-		aStatement = this
+		statements.add(this
 				.preparedStatementMap.get("incrementPosCounter").bind()
-				.setString(0, posValue);
-		this.session.execute(aStatement);
+				.setString(0, posValue));
 
 		// Increment occurence counter for Lemma in current Document. (Inserts
 		// it, if it doesn't exist yet.)
-		aStatement = this
+		statements.add(this
 				.preparedStatementMap.get("incrementLemmaByDocumentCounter")
 				.bind()
 				.setString(0, documentId)
-				.setString(1, lemmaValue);
-		this.session.execute(aStatement);
+				.setString(1, lemmaValue));
 
 		// Insert DocumentByLemma reference.
-		aStatement = this
+		statements.add(this
 				.preparedStatementMap.get("insertDocumentByLemma").bind()
 				.setString(0, lemmaValue)
-				.setString(1, documentId);
-		this.session.execute(aStatement);
+				.setString(1, documentId));
 
 		// Insert TokenByValue reference.
-		aStatement = this
+		statements.add(this
 				.preparedStatementMap.get("insertTokenByValue").bind()
 				.setString(0, lemmaValue)
 				.setString(1, tokenId)
-				.setString(2, documentId);
-		this.session.execute(aStatement);
+				.setString(2, documentId));
 
 		// Increment PosByDocument counter. (Inserts it, if it doesn't exist
 		// yet.)
-		aStatement = this
+		statements.add(this
 				.preparedStatementMap.get("incrementPosByDocumentcounter")
 				.bind()
 				.setString(0, documentId)
-				.setString(1, posValue);
-		this.session.execute(aStatement);
+				.setString(1, posValue));
 
+		return statements;
+	}
+
+	@Override
+	public String storeParagraph(
+			Paragraph paragraph,
+			String documentId,
+			String previousParagraphId
+	)
+	{
+		String paragraphId = UUID.randomUUID().toString();
+
+		this.session.execute(this.bindParagraph(
+				paragraph, paragraphId, documentId, previousParagraphId
+		));
+
+		return paragraphId;
+	}
+
+	@Override
+	public String storeSentence(
+			Sentence sentence,
+			String documentId,
+			String paragraphId,
+			String previousSentenceId
+	)
+	{
+		String sentenceId = UUID.randomUUID().toString();
+
+		this.session.execute(this.bindSentence(
+				sentence, sentenceId, documentId,
+				paragraphId, previousSentenceId
+		));
+
+		return sentenceId;
+	}
+
+	@Override
+	public String storeToken(
+			Token token,
+			String documentId,
+			String paragraphId,
+			String sentenceId,
+			String previousTokenId
+	)
+	{
+		String tokenId = UUID.randomUUID().toString();
+		String lemmaValue = token.getLemma().getValue();
+
+		for (Statement statement : this.bindToken(
+				token, tokenId, documentId, paragraphId,
+				sentenceId, previousTokenId
+		))
+		{
+			this.session.execute(statement);
+		}
+
+		BoundStatement aStatement;
 		if (previousTokenId != null)
 		{
 			// Get value of previous Token for insertion into bigram.
@@ -805,13 +1361,18 @@ public class CassandraQueryHandler extends AbstractQueryHandler
 		}
 	}
 
+	/**
+	 * Pages in the order of the partition tokens of the Document ids.
+	 */
 	@Override
-	public Iterable<String> getDocumentIds()
+	public List<String> getDocumentIds(String afterId, int limit)
 	{
 		List<String> documentIds = new ArrayList<>();
 
-		BoundStatement aStatement = this
-				.preparedStatementMap.get("getDocumentIds").bind();
+		BoundStatement aStatement = (afterId == null)
+				? this.preparedStatementMap.get("getDocumentIds").bind(limit)
+				: this.preparedStatementMap.get("getDocumentIdsAfter")
+				.bind(afterId, limit);
 		ResultSet result = this.session.execute(aStatement);
 
 		for (Row row : result)
@@ -918,50 +1479,39 @@ public class CassandraQueryHandler extends AbstractQueryHandler
 				.bind()
 				.setString(0, lemma);
 
-		ResultSet result = this.session.execute(aStatement);
-		Row row = result.one();
-
-		// Count operations on cassandra returns longs.
-		return (int) row.getLong(0);
+		return this.readCounter(aStatement);
 	}
 
+	/**
+	 * Reads the counter maintained for the given type during ingest.
+	 */
 	@Override
 	public int countElementsOfType(ElementType type)
 	{
-		BoundStatement aStatement;
-
-		switch (type)
+		if (type == null)
 		{
-			case Document:
-				aStatement = this
-						.preparedStatementMap.get("countDocuments").bind();
-				break;
-			case Paragraph:
-				aStatement = this
-						.preparedStatementMap.get("countParagraphs").bind();
-				break;
-			case Sentence:
-				aStatement = this
-						.preparedStatementMap.get("countSentences").bind();
-				break;
-			case Token:
-				aStatement = this
-						.preparedStatementMap.get("countTokens").bind();
-				break;
-			case Lemma:
-				aStatement = this
-						.preparedStatementMap.get("countLemmata").bind();
-				break;
-			case Pos:
-				aStatement = this
-						.preparedStatementMap.get("countPOSs").bind();
-				break;
-			default:
-				throw new IllegalArgumentException();
+			throw new IllegalArgumentException();
 		}
 
-		ResultSet result = this.session.execute(aStatement);
-		return (int) result.one().getLong(0);
+		BoundStatement aStatement = this
+				.preparedStatementMap.get("countElements").bind()
+				.setString(0, type.toString());
+
+		return this.readCounter(aStatement);
+	}
+
+	/**
+	 * Executes a query for a single counter.
+	 *
+	 * @param aStatement The query. Has to select one counter column.
+	 * @return The counter's value or 0, if it doesn't exist.
+	 */
+	protected int readCounter(BoundStatement aStatement)
+	{
+		Row row = this.session.execute(aStatement).one();
+
+		// Counters on cassandra are longs.
+		return row == null ? 0 : (int) row.getLong(0);
 	}
 
 	@Override
@@ -1010,10 +1560,10 @@ public class CassandraQueryHandler extends AbstractQueryHandler
 		switch (type)
 		{
 			case Token:
-				aStatement = this
+				// The Lemma's occurence counter counts the Tokens.
+				return this.readCounter(this
 						.preparedStatementMap.get("countTokensWithValue").bind()
-						.setString(0, value);
-				break;
+						.setString(0, value));
 			case Lemma:
 				// Will return 0 or 1, since Lemmata values are unique.
 				aStatement = this
@@ -1048,13 +1598,12 @@ public class CassandraQueryHandler extends AbstractQueryHandler
 		switch (type)
 		{
 			case Token:
-				aStatement = this
+				return this.readCounter(this
 						.preparedStatementMap
 						.get("countTokensWithValueInDocument")
 						.bind()
 						.setString(0, value)
-						.setString(1, documentId);
-				break;
+						.setString(1, documentId));
 			case Lemma:
 				aStatement = this
 						.preparedStatementMap
@@ -1105,15 +1654,12 @@ public class CassandraQueryHandler extends AbstractQueryHandler
 		Map<String, Double> ttrMap = new HashMap<>();
 
 		BoundStatement aStatement = this
-				.preparedStatementMap.get("getDocuments").bind();
+				.preparedStatementMap.get("getTTRs").bind();
 		ResultSet results = this.session.execute(aStatement);
 
 		for (Row row : results)
 		{
-			ttrMap.put(
-					row.getString(0),
-					(double) row.getInt(5) / (double) row.getInt(6)
-			);
+			ttrMap.put(row.getString(0), row.getDouble(1));
 		}
 
 		return ttrMap;
@@ -1138,17 +1684,14 @@ public class CassandraQueryHandler extends AbstractQueryHandler
 		Map<String, Double> ttrMap = new HashMap<>();
 
 		BoundStatement aStatement = this
-				.preparedStatementMap.get("getDocumentsIn").bind()
+				.preparedStatementMap.get("getTTRsIn").bind()
 				.setList(0, Lists.newArrayList(documentIds));
 
 		ResultSet results = this.session.execute(aStatement);
 
 		for (Row row : results)
 		{
-			ttrMap.put(
-					row.getString(0),
-					(double) row.getInt(5) / (double) row.getInt(6)
-			);
+			ttrMap.put(row.getString(0), row.getDouble(1));
 		}
 
 		return ttrMap;
@@ -1185,19 +1728,11 @@ public class CassandraQueryHandler extends AbstractQueryHandler
 		this.checkIfDocumentExists(documentId);
 
 		BoundStatement aStatement = this
-				.preparedStatementMap.get("getLemmataCountsInDocument").bind()
-				.setString(0, documentId);
-
-		ResultSet result = this.session.execute(aStatement);
-		Row row = result.one();
+				.preparedStatementMap.get("getLemmaCountInDocument").bind()
+				.setString(0, documentId)
+				.setString(1, lemma);
 
-		if (row == null)
-		{
-			return 0;
-		} else
-		{
-			return (int) row.getLong(1);
-		}
+		return this.readCounter(aStatement);
 	}
 
 	@Override
@@ -1,11 +1,11 @@
 package org.hucompute.services.uima.eval.database.abstraction.implementation;
 
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoClient;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
-import com.mongodb.client.model.Filters;
-import com.mongodb.client.model.UpdateOptions;
-import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.*;
 import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS;
 import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Lemma;
@@ -19,6 +19,7 @@ import org.apache.uima.jcas.JCas;
 import org.bson.Document;
 import org.bson.types.ObjectId;
 import org.hucompute.services.uima.eval.database.abstraction.AbstractQueryHandler;
+import org.hucompute.services.uima.eval.database.abstraction.BatchOptions;
 import org.hucompute.services.uima.eval.database.abstraction.ElementType;
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.DocumentNotFoundException;
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.QHException;
@@ -31,12 +32,26 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 public class MongoDBQueryHandler extends AbstractQueryHandler
 {
+	protected static final int DUPLICATE_KEY_ERROR = 11000;
+	protected static final int MAX_UPSERT_RETRIES = 3;
+
 	protected MongoClient client;
 	protected MongoDatabase database;
 
+	/**
+	 * Whether the indexes are built in #finishIngest after all Documents are
+	 * stored instead of in #createIndexes before the first one. Configured by
+	 * MONGODB_INDEXES=after.
+	 */
+	protected boolean deferIndexes;
+	protected boolean indexesPending;
+
 	public MongoDBQueryHandler(MongoClient mongoClient)
 	{
 		this.client = mongoClient;
+		this.deferIndexes = "after".equalsIgnoreCase(
+				System.getenv("MONGODB_INDEXES")
+		);
 	}
 
 	@Override
@@ -55,6 +70,106 @@ public class MongoDBQueryHandler extends AbstractQueryHandler
 
 	}
 
+	/**
+	 * Builds the indexes right away or marks them to be built in
+	 * #finishIngest, depending on MONGODB_INDEXES.
+	 */
+	@Override
+	public void createIndexes()
+	{
+		if (this.deferIndexes)
+		{
+			this.indexesPending = true;
+			return;
+		}
+		this.buildIndexes();
+	}
+
+	/**
+	 * Builds the indexes, if they were deferred until all Documents are
+	 * stored.
+	 * Without the unique indexes, concurrent writers may have upserted the
+	 * same Lemma or POS value twice. Those duplicates are merged first, so
+	 * that the unique indexes can be built.
+	 */
+	@Override
+	public void finishIngest()
+	{
+		if (!this.indexesPending)
+		{
+			return;
+		}
+
+		long start = System.currentTimeMillis();
+		this.mergeDuplicateValues("lemma");
+		this.mergeDuplicateValues("pos");
+		this.buildIndexes();
+		this.indexesPending = false;
+		logger.info("Building the indexes after the ingest took "
+				+ (System.currentTimeMillis() - start) + "ms.");
+	}
+
+	/**
+	 * Creates an index for every field that is filtered by: the documentId
+	 * of Tokens (together with begin, so Tokens are read in order) and
+	 * n-grams, and the value of Lemmata and POS, which is unique.
+	 */
+	protected void buildIndexes()
+	{
+		IndexOptions unique = new IndexOptions().unique(true);
+
+		this.database.getCollection("token").createIndex(
+				Indexes.ascending("documentId", "begin")
+		);
+		this.database.getCollection("biGram").createIndex(
+				Indexes.ascending("documentId")
+		);
+		this.database.getCollection("triGram").createIndex(
+				Indexes.ascending("documentId")
+		);
+		this.database.getCollection("lemma").createIndex(
+				Indexes.ascending("value"), unique
+		);
+		this.database.getCollection("pos").createIndex(
+				Indexes.ascending("value"), unique
+		);
+	}
+
+	/**
+	 * Merges all documents with the same value into the first one of them
+	 * and sums up their counts.
+	 *
+	 * @param collection The collection of counted values.
+	 */
+	protected void mergeDuplicateValues(String collection)
+	{
+		MongoCursor<Document> duplicates = this.database
+				.getCollection(collection)
+				.aggregate(Arrays.asList(
+						Aggregates.group(
+								"$value",
+								Accumulators.push("ids", "$_id"),
+								Accumulators.sum("count", "$count"),
+								Accumulators.sum("documents", 1)
+						),
+						Aggregates.match(Filters.gt("documents", 1))
+				))
+				.allowDiskUse(true)
+				.iterator();
+		while (duplicates.hasNext())
+		{
+			Document duplicate = duplicates.next();
+			List<?> ids = (List<?>) duplicate.get("ids");
+			this.database.getCollection(collection).updateOne(
+					Filters.eq("_id", ids.get(0)),
+					Updates.set("count", duplicate.get("count"))
+			);
+			this.database.getCollection(collection).deleteMany(
+					Filters.in("_id", ids.subList(1, ids.size()))
+			);
+		}
+	}
+
 	@Override
 	public void openDatabase() throws IOException
 	{
@@ -147,6 +262,284 @@ public class MongoDBQueryHandler extends AbstractQueryHandler
 		return documentId;
 	}
 
+	/**
+	 * Stores the whole Document with one unordered bulk write per collection.
+	 *
+	 * @param document The Document to insert.
+	 * @throws QHException If anything goes wrong. Encapsulates underlying
+	 *                     Exceptions.
+	 * @see #storeDocumentHierarchies
+	 */
+	@Override
+	public void storeDocumentHierarchy(JCas document) throws QHException
+	{
+		this.storeDocumentHierarchies(
+				Collections.singletonList(document), new BatchOptions()
+		);
+	}
+
+	/**
+	 * Stores the elements of <i>documentsPerBatch</i> Documents with one
+	 * unordered bulk write per collection.
+	 * All ids are generated on the client and bigrams and trigrams are built
+	 * from the Token sequence in memory, so nothing has to be read back.
+	 * Lemma and POS counters are aggregated per batch before being upserted.
+	 *
+	 * @param documents The Documents to insert.
+	 * @param options   Controls how many Documents share the bulk writes.
+	 * @throws QHException If anything goes wrong. Encapsulates underlying
+	 *                     Exceptions. Documents collected before the failing
+	 *                     one are stored nevertheless.
+	 */
+	@Override
+	public void storeDocumentHierarchies(
+			Iterable<JCas> documents,
+			BatchOptions options
+	) throws QHException
+	{
+		HierarchyWrites batch = new HierarchyWrites();
+		int pendingDocuments = 0;
+		try
+		{
+			for (JCas document : documents)
+			{
+				batch.addAll(this.createHierarchyWrites(document));
+				pendingDocuments++;
+				if (pendingDocuments >= options.getDocumentsPerBatch())
+				{
+					this.writeHierarchies(batch);
+					pendingDocuments = 0;
+				}
+			}
+		} catch (RuntimeException e)
+		{
+			this.writeHierarchies(batch);
+			throw e instanceof QHException
+					? (QHException) e
+					: new QHException(e);
+		}
+		this.writeHierarchies(batch);
+	}
+
+	/**
+	 * Inserts the Document itself and collects the writes for all of its
+	 * elements.
+	 *
+	 * @param document The Document to insert.
+	 * @return The writes for the Document's elements.
+	 * @throws QHException If the Document can't be inserted or converted.
+	 */
+	protected HierarchyWrites createHierarchyWrites(JCas document)
+			throws QHException
+	{
+		final String documentId = DocumentMetaData.get(document)
+				.getDocumentId();
+		HierarchyWrites writes = new HierarchyWrites();
+
+		try
+		{
+			this.storeJCasDocument(document);
+
+			ObjectId previousParagraphId = null;
+			for (Paragraph paragraph
+					: JCasUtil.select(document, Paragraph.class))
+			{
+				ObjectId paragraphId = ObjectId.get();
+				writes.paragraphs.add(new InsertOneModel<>(
+						new Document("_id", paragraphId)
+								.append("documentId", documentId)
+								.append("begin", paragraph.getBegin())
+								.append("end", paragraph.getEnd())
+								.append("previousParagraph", previousParagraphId)
+				));
+				previousParagraphId = paragraphId;
+
+				ObjectId previousSentenceId = null;
+				for (Sentence sentence : JCasUtil.selectCovered(
+						document, Sentence.class, paragraph
+				))
+				{
+					ObjectId sentenceId = ObjectId.get();
+					writes.sentences.add(new InsertOneModel<>(
+							new Document("_id", sentenceId)
+									.append("documentId", documentId)
+									.append("begin", sentence.getBegin())
+									.append("end", sentence.getEnd())
+									.append("previousSentence", previousSentenceId)
+									.append("paragraphId", paragraphId)
+					));
+					previousSentenceId = sentenceId;
+
+					ObjectId previousTokenId = null;
+					String previousValue = null;
+					String prevPreviousValue = null;
+					for (Token token : JCasUtil.selectCovered(
+							document, Token.class, sentence
+					))
+					{
+						ObjectId tokenId = ObjectId.get();
+						String lemmaValue = token.getLemma().getValue();
+						String posValue = token.getPos().getPosValue();
+						writes.tokens.add(new InsertOneModel<>(
+								new Document("_id", tokenId)
+										.append("documentId", documentId)
+										.append("begin", token.getBegin())
+										.append("end", token.getEnd())
+										.append("lemmaValue", lemmaValue)
+										.append("posValue", posValue)
+										.append("previousToken", previousTokenId)
+										.append("paragraphId", paragraphId)
+										.append("sentenceId", sentenceId)
+						));
+
+						writes.lemmaCount.computeIfAbsent(
+								lemmaValue, value -> new AtomicInteger(0)
+						).incrementAndGet();
+						writes.posCount.computeIfAbsent(
+								posValue, value -> new AtomicInteger(0)
+						).incrementAndGet();
+
+						if (previousValue != null)
+						{
+							writes.biGrams.add(new InsertOneModel<>(
+									new Document("documentId", documentId)
+											.append("firstValue", previousValue)
+											.append("secondValue", lemmaValue)
+							));
+						}
+						if (prevPreviousValue != null)
+						{
+							writes.triGrams.add(new InsertOneModel<>(
+									new Document("documentId", documentId)
+											.append("firstValue", prevPreviousValue)
+											.append("secondValue", previousValue)
+											.append("thirdValue", lemmaValue)
+							));
+						}
+
+						previousTokenId = tokenId;
+						prevPreviousValue = previousValue;
+						previousValue = lemmaValue;
+					}
+				}
+			}
+		} catch (RuntimeException e)
+		{
+			logger.severe("There was an error when trying to insert "
+					+ documentId + ".");
+			throw new QHException(e);
+		}
+		return writes;
+	}
+
+	/**
+	 * Sends the collected writes with one bulk write per collection.
+	 *
+	 * @param writes The writes to send. Are empty afterwards.
+	 * @throws QHException If any bulk write fails.
+	 */
+	protected void writeHierarchies(HierarchyWrites writes) throws QHException
+	{
+		try
+		{
+			this.bulkWrite("paragraph", writes.paragraphs);
+			this.bulkWrite("sentence", writes.sentences);
+			this.bulkWrite("token", writes.tokens);
+			this.bulkUpsert("lemma", this.createCounterUpdates(writes.lemmaCount));
+			this.bulkUpsert("pos", this.createCounterUpdates(writes.posCount));
+			this.bulkWrite("biGram", writes.biGrams);
+			this.bulkWrite("triGram", writes.triGrams);
+		} catch (RuntimeException e)
+		{
+			throw new QHException(e);
+		} finally
+		{
+			writes.clear();
+		}
+	}
+
+	/**
+	 * @param counts Occurences per value.
+	 * @return One upsert per value, incrementing its count by the occurences.
+	 */
+	protected List<WriteModel<Document>> createCounterUpdates(
+			Map<String, AtomicInteger> counts
+	)
+	{
+		List<WriteModel<Document>> updates = new ArrayList<>();
+		UpdateOptions upsert = new UpdateOptions().upsert(true);
+		counts.forEach((value, count) -> updates.add(new UpdateOneModel<>(
+				Filters.eq("value", value),
+				Updates.inc("count", count.get()),
+				upsert
+		)));
+		return updates;
+	}
+
+	/**
+	 * Sends the requests as one unordered bulk write, which lets the server
+	 * apply them in any order. Does nothing if there are no requests.
+	 *
+	 * @param collection The collection to write to.
+	 * @param requests   The requests.
+	 */
+	protected void bulkWrite(
+			String collection,
+			List<WriteModel<Document>> requests
+	)
+	{
+		if (requests.isEmpty())
+		{
+			return;
+		}
+		this.database.getCollection(collection).bulkWrite(
+				requests,
+				new BulkWriteOptions().ordered(false)
+		);
+	}
+
+	/**
+	 * Like #bulkWrite, but retries upserts that failed with a duplicate key
+	 * error. Those happen, if a concurrent writer inserted the same value
+	 * between the upsert's lookup and insert. Retried, the upsert updates
+	 * the now existing document. All other upserts of the bulk write were
+	 * applied already, since it is unordered.
+	 *
+	 * @param collection The collection to write to.
+	 * @param requests   The upserts.
+	 */
+	protected void bulkUpsert(
+			String collection,
+			List<WriteModel<Document>> requests
+	)
+	{
+		for (int attempt = 0; ; attempt++)
+		{
+			try
+			{
+				this.bulkWrite(collection, requests);
+				return;
+			} catch (MongoBulkWriteException e)
+			{
+				List<WriteModel<Document>> failedRequests = new ArrayList<>();
+				for (BulkWriteError error : e.getWriteErrors())
+				{
+					if (error.getCode() != DUPLICATE_KEY_ERROR
+							|| attempt >= MAX_UPSERT_RETRIES)
+					{
+						throw e;
+					}
+					failedRequests.add(requests.get(error.getIndex()));
+				}
+				if (e.getWriteConcernError() != null)
+				{
+					throw e;
+				}
+				requests = failedRequests;
+			}
+		}
+	}
+
 	@Override
 	public String storeParagraph(
 			Paragraph paragraph,
@@ -253,21 +646,21 @@ public class MongoDBQueryHandler extends AbstractQueryHandler
 					.append("secondValue", lemmaValue);
 			this.database.getCollection("biGram").insertOne(biGram);
 
-			// Check if previous Token was already second value in a bigram.
-			Document previousBigram = this.database.getCollection("biGram")
-					.find(
-							Filters.eq(
-									"firstValue",
-									previousToken.get("lemmaValue")
-							)
-					).first();
+			// Follow the Token chain instead of searching the bigrams, since
+			// the same value may occur in any number of bigrams.
+			ObjectId prevPreviousTokenId =
+					previousToken.getObjectId("previousToken");
 
-			if (previousBigram != null)
+			if (prevPreviousTokenId != null)
 			{
-				// If the previous Token was the second value in a trigram, it
-				// and its previous Token can be used in a new trigram.
+				// If the previous Token has a predecessor, both can be used
+				// in a new trigram.
+				Document prevPreviousToken = this.database
+						.getCollection("token")
+						.find(Filters.eq("_id", prevPreviousTokenId))
+						.first();
 				Document triGram = new Document("documentId", documentId)
-						.append("firstValue", previousBigram.get("firstValue"))
+						.append("firstValue", prevPreviousToken.get("lemmaValue"))
 						.append("secondValue", previousToken.get("lemmaValue"))
 						.append("thirdValue", lemmaValue);
 				this.database.getCollection("triGram").insertOne(triGram);
@@ -290,13 +683,23 @@ public class MongoDBQueryHandler extends AbstractQueryHandler
 		}
 	}
 
+	/**
+	 * Pages over the _id index of the document collection.
+	 */
 	@Override
-	public Iterable<String> getDocumentIds()
+	public List<String> getDocumentIds(String afterId, int limit)
 	{
 		List<String> documentIds = new ArrayList<>();
 
 		try (MongoCursor<Document> cursor = this.database
-				.getCollection("document").find().iterator())
+				.getCollection("document")
+				.find(afterId == null
+						? new Document()
+						: Filters.gt("_id", afterId))
+				.projection(Projections.include("_id"))
+				.sort(Sorts.ascending("_id"))
+				.limit(limit)
+				.iterator())
 		{
 			while (cursor.hasNext())
 			{
@@ -884,4 +1287,45 @@ public class MongoDBQueryHandler extends AbstractQueryHandler
 			return null;
 		}
 	}
+
+	/**
+	 * The writes for the elements of one or more Documents, grouped by
+	 * collection.
+	 */
+	protected static class HierarchyWrites
+	{
+		protected final List<WriteModel<Document>> paragraphs = new ArrayList<>();
+		protected final List<WriteModel<Document>> sentences = new ArrayList<>();
+		protected final List<WriteModel<Document>> tokens = new ArrayList<>();
+		protected final List<WriteModel<Document>> biGrams = new ArrayList<>();
+		protected final List<WriteModel<Document>> triGrams = new ArrayList<>();
+		protected final Map<String, AtomicInteger> lemmaCount = new HashMap<>();
+		protected final Map<String, AtomicInteger> posCount = new HashMap<>();
+
+		protected void addAll(HierarchyWrites other)
+		{
+			this.paragraphs.addAll(other.paragraphs);
+			this.sentences.addAll(other.sentences);
+			this.tokens.addAll(other.tokens);
+			this.biGrams.addAll(other.biGrams);
+			this.triGrams.addAll(other.triGrams);
+			other.lemmaCount.forEach((value, count) -> this.lemmaCount
+					.computeIfAbsent(value, key -> new AtomicInteger(0))
+					.addAndGet(count.get()));
+			other.posCount.forEach((value, count) -> this.posCount
+					.computeIfAbsent(value, key -> new AtomicInteger(0))
+					.addAndGet(count.get()));
+		}
+
+		protected void clear()
+		{
+			this.paragraphs.clear();
+			this.sentences.clear();
+			this.tokens.clear();
+			this.biGrams.clear();
+			this.triGrams.clear();
+			this.lemmaCount.clear();
+			this.posCount.clear();
+		}
+	}
 }
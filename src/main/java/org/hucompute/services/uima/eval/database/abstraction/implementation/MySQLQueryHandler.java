@@ -1,5 +1,9 @@
 package org.hucompute.services.uima.eval.database.abstraction.implementation;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS;
 import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Lemma;
@@ -9,25 +13,240 @@ import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import org.apache.commons.lang.StringUtils;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.CASException;
+import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.hucompute.services.uima.eval.database.abstraction.AbstractQueryHandler;
+import org.hucompute.services.uima.eval.database.abstraction.BatchOptions;
 import org.hucompute.services.uima.eval.database.abstraction.ElementType;
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.DocumentNotFoundException;
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.QHException;
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.TypeHasNoValueException;
 import org.hucompute.services.uima.eval.database.connection.Connections;
+import org.hucompute.services.uima.eval.database.connection.implementation.MySQLConnection;
 
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MySQLQueryHandler extends AbstractQueryHandler
 {
+	/**
+	 * Determines the types of the primary and foreign keys.
+	 * <p>
+	 * UUID: Random UUID strings as keys, Tokens are clustered by their id.
+	 * Compact: BIGINT keys from a client side sequence, INT keys for Lemmata
+	 * and Tokens clustered by (documentId, position). Documents keep their
+	 * textual id in both modes, since it is used as the external key.
+	 */
+	public enum SchemaMode
+	{
+		UUID, Compact
+	}
+
+	/**
+	 * Determines how #storeDocumentHierarchy writes to the database.
+	 * <p>
+	 * RowByRow: Every element is inserted immediately with its own statement.
+	 * Batch: The rows of #storeDocumentHierarchies are sent with JDBC batches
+	 * as configured by its BatchOptions.
+	 * Bulk: Documents are converted to tab separated rows per table and
+	 * streamed into the database with LOAD DATA LOCAL INFILE every
+	 * MYSQL_BULK_FLUSH_DOCUMENTS Documents. Foreign key checks are disabled
+	 * while loading and verified in #finishIngest. New Lemmata are still
+	 * inserted immediately, so that concurrent writers agree on their ids.
+	 */
+	public enum IngestMode
+	{
+		RowByRow, Batch, Bulk
+	}
+
+	public static final int DEFAULT_LEMMA_CACHE_SIZE = 100000;
+	public static final int DEFAULT_BULK_FLUSH_DOCUMENTS = 100;
+	public static final int DEFAULT_COMMIT_DOCUMENTS = 0;
+	public static final int STATEMENT_CACHE_SIZE = 256;
+
+	/**
+	 * Shared dictionary for the Lemma and POS values read into CASes. The
+	 * same values occur in nearly every Document, so they are only kept once
+	 * as long as any CAS references them.
+	 */
+	protected static final Interner<String> VALUE_DICTIONARY =
+			Interners.newWeakInterner();
+
+	/**
+	 * Maps Lemma values to their ids, so that known Lemmata don't have to be
+	 * looked up for every Token. Bounded by MYSQL_LEMMA_CACHE_SIZE. Shared by
+	 * all handlers, since concurrent writers store the same Lemmata.
+	 */
+	protected static final Cache<String, String> LEMMA_ID_CACHE =
+			CacheBuilder.newBuilder()
+					.maximumSize(getLemmaCacheSize())
+					.build();
+
+	/**
+	 * Autocommit connection on which all handlers insert new Lemmata, one at
+	 * a time. Opened on first use. Guarded by LEMMA_LOCK.
+	 */
+	protected static Connection lemmaConnection;
+	protected static final Object LEMMA_LOCK = new Object();
+
 	protected Connection connection;
+	protected SchemaMode schemaMode;
+	protected IngestMode ingestMode;
+
+	/**
+	 * Prepared statements keyed by their SQL. They live as long as the
+	 * handler and must not be closed by their users. The least recently used
+	 * statement is closed once more than STATEMENT_CACHE_SIZE different
+	 * statements were prepared, since some queries depend on the amount of
+	 * their parameters.
+	 */
+	protected Map<String, PreparedStatement> preparedStatements;
+
+	/**
+	 * Amount of Documents that are inserted in one transaction. 0 keeps
+	 * autocommit enabled, so that every row is committed on its own.
+	 * Configured by MYSQL_COMMIT_DOCUMENTS.
+	 */
+	protected int commitDocuments;
+	protected int uncommittedDocuments;
+
+	/**
+	 * Rows waiting to be loaded in Bulk IngestMode, in the order in which the
+	 * tables have to be loaded.
+	 */
+	protected List<BulkTable> bulkTables;
+	protected Map<ElementType, BulkTable> bulkElementTables;
+	protected BulkTable bulkTokenLemmaTable;
+	protected BulkTable bulkDocumentLemmaTable;
+	protected int bulkFlushDocuments;
+	protected int bulkPendingDocuments;
+
+	/**
+	 * Client side sequences for the Compact SchemaMode. Continue after the
+	 * highest stored id when the database is opened. Shared by all handlers,
+	 * so that concurrent writers never hand out the same key.
+	 */
+	protected static final Map<ElementType, AtomicLong> ID_SEQUENCES =
+			new EnumMap<>(ElementType.class);
+
+	static
+	{
+		for (ElementType type : Arrays.asList(
+				ElementType.Paragraph, ElementType.Sentence,
+				ElementType.Token, ElementType.Lemma
+		))
+		{
+			ID_SEQUENCES.put(type, new AtomicLong(0));
+		}
+	}
+
+	/**
+	 * Position of the next Token in the Document currently being inserted.
+	 */
+	protected String currentPositionDocumentId;
+	protected int currentTokenPosition;
+
+	/**
+	 * The shared LEMMA_ID_CACHE.
+	 */
+	protected Cache<String, String> lemmaIdCache;
+	protected int lemmaCacheSize;
+
+	/**
+	 * The Lemma ids that are already connected to the Document that is
+	 * currently being inserted.
+	 */
+	protected String currentLemmaDocumentId;
+	protected Set<String> currentDocumentLemmaIds;
 
 	public MySQLQueryHandler(Connection connection)
 	{
 		this.connection = connection;
+		this.preparedStatements = new LinkedHashMap<String, PreparedStatement>(
+				16, 0.75f, true
+		)
+		{
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, PreparedStatement> eldest
+			)
+			{
+				if (this.size() <= STATEMENT_CACHE_SIZE)
+				{
+					return false;
+				}
+				try
+				{
+					eldest.getValue().close();
+				} catch (SQLException e)
+				{
+					e.printStackTrace();
+				}
+				return true;
+			}
+		};
+
+		String commit = System.getenv("MYSQL_COMMIT_DOCUMENTS");
+		this.commitDocuments = (commit == null || commit.isEmpty())
+				? DEFAULT_COMMIT_DOCUMENTS
+				: Integer.parseInt(commit);
+
+		String schema = System.getenv("MYSQL_SCHEMA");
+		this.schemaMode = "compact".equalsIgnoreCase(schema)
+				? SchemaMode.Compact
+				: SchemaMode.UUID;
+
+		this.ingestMode = IngestMode.RowByRow;
+		String flushDocuments = System.getenv("MYSQL_BULK_FLUSH_DOCUMENTS");
+		this.bulkFlushDocuments =
+				(flushDocuments == null || flushDocuments.isEmpty())
+						? DEFAULT_BULK_FLUSH_DOCUMENTS
+						: Integer.parseInt(flushDocuments);
+		this.bulkElementTables = new EnumMap<>(ElementType.class);
+		this.bulkElementTables.put(ElementType.Document, new BulkTable(
+				ElementType.Document.toString(),
+				"`id`, `text`, `language`"
+		));
+		this.bulkElementTables.put(ElementType.Paragraph, new BulkTable(
+				ElementType.Paragraph.toString(),
+				"`id`, `documentId`, `previousParagraphId`, `begin`, `end`"
+		));
+		this.bulkElementTables.put(ElementType.Sentence, new BulkTable(
+				ElementType.Sentence.toString(),
+				"`id`, `documentId`, `paragraphId`, `previousSentenceId`, `begin`, `end`"
+		));
+		this.bulkElementTables.put(ElementType.Token, new BulkTable(
+				ElementType.Token.toString(),
+				"`id`, `documentId`, `paragraphId`, `sentenceId`, `previousTokenId`, `value`, `begin`, `end`, `position`"
+		));
+		this.bulkTokenLemmaTable = new BulkTable(
+				"tokenLemmaMap",
+				"`tokenId`, `lemmaId`"
+		);
+		this.bulkDocumentLemmaTable = new BulkTable(
+				"documentLemmaMap",
+				"`documentId`, `lemmaId`"
+		);
+		// EnumMap iterates in declaration order, which matches the order of
+		// the foreign keys.
+		this.bulkTables = new ArrayList<>(this.bulkElementTables.values());
+		this.bulkTables.add(this.bulkTokenLemmaTable);
+		this.bulkTables.add(this.bulkDocumentLemmaTable);
+
+		this.lemmaCacheSize = getLemmaCacheSize();
+		this.lemmaIdCache = LEMMA_ID_CACHE;
+		this.currentDocumentLemmaIds = new HashSet<>();
+	}
+
+	protected static int getLemmaCacheSize()
+	{
+		String cacheSize = System.getenv("MYSQL_LEMMA_CACHE_SIZE");
+		return (cacheSize == null || cacheSize.isEmpty())
+				? DEFAULT_LEMMA_CACHE_SIZE
+				: Integer.parseInt(cacheSize);
 	}
 
 	@Override
@@ -36,9 +255,165 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 		return Connections.DBName.MySQL;
 	}
 
+	public IngestMode getIngestMode()
+	{
+		return this.ingestMode;
+	}
+
+	/**
+	 * Switches the IngestMode. Should only be called before the first or
+	 * after the last Document of an ingest, since buffered rows are not
+	 * flushed.
+	 *
+	 * @param ingestMode The new IngestMode.
+	 */
+	public void setIngestMode(IngestMode ingestMode)
+	{
+		this.ingestMode = ingestMode;
+	}
+
+	/**
+	 * Returns the cached statement for the given SQL or prepares it on first
+	 * use. The returned statement must not be closed.
+	 *
+	 * @param sql The statement's SQL.
+	 * @return A prepared statement bound to this handler's connection.
+	 * @throws SQLException If the statement can't be prepared.
+	 */
+	protected PreparedStatement getPreparedStatement(String sql)
+			throws SQLException
+	{
+		PreparedStatement aStatement = this.preparedStatements.get(sql);
+		if (aStatement == null || aStatement.isClosed())
+		{
+			aStatement = this.connection.prepareStatement(sql);
+			this.preparedStatements.put(sql, aStatement);
+		}
+		return aStatement;
+	}
+
+	/**
+	 * Disables autocommit if Documents are to be inserted in transactions.
+	 * Has no effect if a transaction is already running.
+	 *
+	 * @throws SQLException If autocommit can't be changed.
+	 */
+	protected void beginIngestTransaction() throws SQLException
+	{
+		if (this.commitDocuments > 0 && this.connection.getAutoCommit())
+		{
+			this.connection.setAutoCommit(false);
+			this.uncommittedDocuments = 0;
+		}
+	}
+
+	/**
+	 * Counts completely inserted Documents and commits the running
+	 * transaction once MYSQL_COMMIT_DOCUMENTS Documents are uncommitted.
+	 *
+	 * @param documents Amount of Documents that were inserted.
+	 * @throws SQLException If the commit fails.
+	 */
+	protected void documentsInserted(int documents) throws SQLException
+	{
+		if (this.connection.getAutoCommit())
+		{
+			return;
+		}
+		this.uncommittedDocuments += documents;
+		if (this.uncommittedDocuments >= this.commitDocuments)
+		{
+			this.connection.commit();
+			this.uncommittedDocuments = 0;
+		}
+	}
+
+	/**
+	 * Marks the start of a Document or batch in the running transaction, so
+	 * that a failure only discards it and not the Documents before.
+	 *
+	 * @return The savepoint or null, if no transaction is running.
+	 * @throws SQLException If the savepoint can't be set.
+	 */
+	protected Savepoint setDocumentSavepoint() throws SQLException
+	{
+		return this.connection.getAutoCommit()
+				? null
+				: this.connection.setSavepoint();
+	}
+
+	/**
+	 * Discards everything written since the savepoint, while the earlier
+	 * uncommitted Documents stay part of the running transaction.
+	 *
+	 * @param savepoint The savepoint returned by #setDocumentSavepoint.
+	 */
+	protected void rollbackToSavepoint(Savepoint savepoint)
+	{
+		if (savepoint == null)
+		{
+			return;
+		}
+		try
+		{
+			this.connection.rollback(savepoint);
+			this.connection.releaseSavepoint(savepoint);
+			this.forgetDocumentLemmaIds();
+		} catch (SQLException e)
+		{
+			// The savepoint is gone, so only the whole transaction can be
+			// discarded.
+			e.printStackTrace();
+			this.rollbackIngestTransaction();
+		}
+	}
+
+	/**
+	 * Commits the running transaction, if any, and enables autocommit again.
+	 *
+	 * @throws SQLException If the commit fails.
+	 */
+	protected void commitIngestTransaction() throws SQLException
+	{
+		if (!this.connection.getAutoCommit())
+		{
+			this.connection.commit();
+			this.connection.setAutoCommit(true);
+			this.uncommittedDocuments = 0;
+		}
+	}
+
+	/**
+	 * Discards all uncommitted Documents after a failed insert and enables
+	 * autocommit again. Client side state that may refer to discarded rows
+	 * is reset as well. Lemmata are committed on their own and are kept.
+	 */
+	protected void rollbackIngestTransaction()
+	{
+		try
+		{
+			if (!this.connection.getAutoCommit())
+			{
+				logger.warning("Rolling back the last "
+						+ this.uncommittedDocuments + " Documents.");
+				this.connection.rollback();
+				this.connection.setAutoCommit(true);
+				this.uncommittedDocuments = 0;
+				this.forgetDocumentLemmaIds();
+			}
+		} catch (SQLException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
 	@Override
 	public void setUpDatabase()
 	{
+		final boolean compact = this.schemaMode == SchemaMode.Compact;
+		final String keyType = compact ? "BIGINT" : "VARCHAR(36)";
+		final String lemmaKeyType = compact ? "INT" : "VARCHAR(36)";
+
 		try (Statement aStatement = this.connection.createStatement())
 		{
 			String dropTables = "DROP TABLE IF EXISTS documentLemmaMap, " +
@@ -53,9 +428,9 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 					"  PRIMARY KEY (id) " +
 					")";
 			String createParagraphTable = "CREATE TABLE " + ElementType.Paragraph + " ( " +
-					"  id VARCHAR(36) NOT NULL, " +
+					"  id " + keyType + " NOT NULL, " +
 					"  documentId VARCHAR(50) NOT NULL, " +
-					"  previousParagraphId VARCHAR(36), " +
+					"  previousParagraphId " + keyType + ", " +
 					"  begin INT NOT NULL, " +
 					"  end INT NOT NULL, " +
 					"  PRIMARY KEY (id), " +
@@ -63,10 +438,10 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 					"  FOREIGN KEY (previousParagraphId) REFERENCES " + ElementType.Paragraph + "(id) " +
 					")";
 			String createSentenceTable = "CREATE TABLE " + ElementType.Sentence + " ( " +
-					"  id VARCHAR(36) NOT NULL, " +
-					"  paragraphId VARCHAR(36) NOT NULL, " +
+					"  id " + keyType + " NOT NULL, " +
+					"  paragraphId " + keyType + " NOT NULL, " +
 					"  documentId VARCHAR(50) NOT NULL, " +
-					"  previousSentenceId VARCHAR(36), " +
+					"  previousSentenceId " + keyType + ", " +
 					"  begin INT NOT NULL, " +
 					"  end INT NOT NULL, " +
 					"  PRIMARY KEY (id), " +
@@ -75,36 +450,40 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 					"  FOREIGN KEY (previousSentenceId) REFERENCES " + ElementType.Sentence + "(id) " +
 					")";
 			String createTokenTable = "CREATE TABLE " + ElementType.Token + " ( " +
-					"  id VARCHAR(36) NOT NULL, " +
-					"  sentenceId VARCHAR(36) NOT NULL, " +
-					"  paragraphId VARCHAR(36) NOT NULL, " +
+					"  id " + keyType + " NOT NULL, " +
+					"  sentenceId " + keyType + " NOT NULL, " +
+					"  paragraphId " + keyType + " NOT NULL, " +
 					"  documentId VARCHAR(50) NOT NULL, " +
-					"  previousTokenId VARCHAR(36), " +
+					"  position INT NOT NULL, " +
+					"  previousTokenId " + keyType + ", " +
 					"  value VARCHAR(255) NOT NULL, " +
 					"  begin INT NOT NULL, " +
 					"  end INT NOT NULL, " +
-					"  PRIMARY KEY (id), " +
+					(compact
+							? "  PRIMARY KEY (documentId, position), " +
+							"  UNIQUE KEY (id), "
+							: "  PRIMARY KEY (id), ") +
 					"  FOREIGN KEY (sentenceId) REFERENCES " + ElementType.Sentence + "(id), " +
 					"  FOREIGN KEY (paragraphId) REFERENCES " + ElementType.Paragraph + "(id), " +
 					"  FOREIGN KEY (documentId) REFERENCES " + ElementType.Document + "(id), " +
 					"  FOREIGN KEY (previousTokenId) REFERENCES " + ElementType.Token + "(id) " +
 					")";
 			String createLemmaTable = "CREATE TABLE " + ElementType.Lemma + " ( " +
-					"  id VARCHAR(36) NOT NULL, " +
+					"  id " + lemmaKeyType + " NOT NULL, " +
 					"  value VARCHAR(255) NOT NULL, " +
 					"  PRIMARY KEY (id), " +
 					"  UNIQUE(value) " +
 					")";
 
 			String createTokenLemmaMap = "CREATE TABLE tokenLemmaMap ( " +
-					"  tokenId VARCHAR(36) NOT NULL, " +
-					"  lemmaId VARCHAR(36) NOT NULL, " +
+					"  tokenId " + keyType + " NOT NULL, " +
+					"  lemmaId " + lemmaKeyType + " NOT NULL, " +
 					"  FOREIGN KEY (tokenId) REFERENCES " + ElementType.Token + "(id), " +
 					"  FOREIGN KEY (lemmaId) REFERENCES " + ElementType.Lemma + "(id) " +
 					")";
 			String createDocumentLemmaMap = "CREATE TABLE documentLemmaMap ( " +
 					"  documentId VARCHAR(50) NOT NULL, " +
-					"  lemmaId VARCHAR(36) NOT NULL, " +
+					"  lemmaId " + lemmaKeyType + " NOT NULL, " +
 					"  FOREIGN KEY (documentId) REFERENCES " + ElementType.Document + "(id), " +
 					"  FOREIGN KEY (lemmaId) REFERENCES " + ElementType.Lemma + "(id) " +
 					")";
@@ -121,12 +500,157 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 		{
 			throw new QHException(e);
 		}
+		this.resetLemmaCaches();
+		this.resetIdSequences();
 	}
 
+	/**
+	 * Warms the Lemma cache with the Lemmata that are already stored and
+	 * continues the id sequences after the highest stored ids.
+	 */
 	@Override
 	public void openDatabase() throws IOException
 	{
+		if (this.schemaMode == SchemaMode.Compact)
+		{
+			try (Statement aStatement = this.connection.createStatement())
+			{
+				for (Map.Entry<ElementType, AtomicLong> sequence
+						: ID_SEQUENCES.entrySet())
+				{
+					ResultSet result = aStatement.executeQuery(
+							"SELECT COALESCE(MAX(`id`), 0) FROM "
+									+ sequence.getKey() + ";"
+					);
+					result.next();
+					// Other handlers may already have handed out higher ids.
+					sequence.getValue().accumulateAndGet(
+							result.getLong(1), Math::max
+					);
+				}
+			} catch (SQLException e)
+			{
+				e.printStackTrace();
+				throw new QHException(e);
+			}
+		}
 
+		this.resetLemmaCaches();
+		String selectLemmata = "SELECT `id`, `value` FROM " +
+				ElementType.Lemma + " LIMIT ?;";
+		try
+		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(selectLemmata);
+			aStatement.setInt(1, this.lemmaCacheSize);
+			ResultSet result = aStatement.executeQuery();
+
+			while (result.next())
+			{
+				this.lemmaIdCache.put(result.getString(2), result.getString(1));
+			}
+		} catch (SQLException e)
+		{
+			e.printStackTrace();
+			throw new QHException(e);
+		}
+	}
+
+	/**
+	 * Forgets all cached Lemma ids and Document-Lemma connections. Has to be
+	 * called whenever Lemmata are removed from the database.
+	 */
+	protected void resetLemmaCaches()
+	{
+		this.lemmaIdCache.invalidateAll();
+		this.forgetDocumentLemmaIds();
+	}
+
+	/**
+	 * Forgets the Document-Lemma connections of the current Document. Has to
+	 * be called whenever they may have been rolled back.
+	 */
+	protected void forgetDocumentLemmaIds()
+	{
+		this.currentLemmaDocumentId = null;
+		this.currentDocumentLemmaIds.clear();
+	}
+
+	/**
+	 * Restarts all id sequences. Only valid on an empty database, that no
+	 * other handler writes to.
+	 */
+	protected void resetIdSequences()
+	{
+		ID_SEQUENCES.values().forEach(sequence -> sequence.set(0));
+		this.currentPositionDocumentId = null;
+		this.currentTokenPosition = 0;
+	}
+
+	/**
+	 * Creates a new key for an element of the given type.
+	 *
+	 * @param type Paragraph, Sentence, Token or Lemma.
+	 * @return A random UUID or the next value of the type's sequence,
+	 * depending on the SchemaMode.
+	 */
+	protected String nextId(ElementType type)
+	{
+		if (this.schemaMode == SchemaMode.Compact)
+		{
+			return String.valueOf(ID_SEQUENCES.get(type).incrementAndGet());
+		}
+		return UUID.randomUUID().toString();
+	}
+
+	/**
+	 * The position of the next Token in the given Document. Relies on the
+	 * Tokens of a Document being inserted in order and without interruption.
+	 *
+	 * @param documentId The Document in which the Token occurs.
+	 * @return The Token's position, starting at 0.
+	 */
+	protected int nextTokenPosition(String documentId)
+	{
+		if (!documentId.equals(this.currentPositionDocumentId))
+		{
+			this.currentPositionDocumentId = documentId;
+			this.currentTokenPosition = 0;
+		}
+		return this.currentTokenPosition++;
+	}
+
+	/**
+	 * Binds a key generated by #nextId as a parameter with the type matching
+	 * the SchemaMode.
+	 *
+	 * @param aStatement The statement to bind the key to.
+	 * @param index      The parameter's index.
+	 * @param id         The key. May be null.
+	 * @throws SQLException If the parameter can't be bound.
+	 */
+	protected void setId(PreparedStatement aStatement, int index, String id)
+			throws SQLException
+	{
+		if (this.schemaMode == SchemaMode.Compact)
+		{
+			if (id == null)
+			{
+				aStatement.setNull(index, Types.BIGINT);
+			} else
+			{
+				aStatement.setLong(index, Long.parseLong(id));
+			}
+		} else
+		{
+			if (id == null)
+			{
+				aStatement.setNull(index, Types.VARCHAR);
+			} else
+			{
+				aStatement.setString(index, id);
+			}
+		}
 	}
 
 	/**
@@ -158,6 +682,8 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 		{
 			throw new QHException(e);
 		}
+		this.resetLemmaCaches();
+		this.resetIdSequences();
 	}
 
 	@Override
@@ -168,9 +694,10 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 		String createDocument = "INSERT INTO " + ElementType.Document +
 				" (`id`, `text`, `language`)" +
 				" VALUES (?, ?, ?);";
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(createDocument))
+		try
 		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(createDocument);
 			aStatement.setString(1, documentId);
 			aStatement.setString(2, document.getDocumentText());
 			aStatement.setString(3, document.getDocumentLanguage());
@@ -191,25 +718,18 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 			String previousParagraphId
 	)
 	{
-		String paragraphId = UUID.randomUUID().toString();
+		String paragraphId = this.nextId(ElementType.Paragraph);
 
 		String insertParagraph = "INSERT INTO " + ElementType.Paragraph +
 				" (`id`, `documentId`, `previousParagraphId`, `begin`, `end`)" +
 				" VALUES (?, ?, ?, ?, ?);";
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(insertParagraph))
+		try
 		{
-			aStatement.setString(1, paragraphId);
+			PreparedStatement aStatement =
+					this.getPreparedStatement(insertParagraph);
+			this.setId(aStatement, 1, paragraphId);
 			aStatement.setString(2, documentId);
-
-			if (previousParagraphId == null)
-			{
-				aStatement.setNull(3, Types.VARCHAR);
-			} else
-			{
-				aStatement.setString(3, previousParagraphId);
-			}
-
+			this.setId(aStatement, 3, previousParagraphId);
 			aStatement.setInt(4, paragraph.getBegin());
 			aStatement.setInt(5, paragraph.getEnd());
 
@@ -231,203 +751,773 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 			String previousSentenceId
 	)
 	{
-		String sentenceId = UUID.randomUUID().toString();
+		String sentenceId = this.nextId(ElementType.Sentence);
 		String insertSentence = "INSERT INTO " + ElementType.Sentence +
 				" (`id`, `documentId`, `paragraphId`, `previousSentenceId`, `begin`, `end`) " +
 				" VALUES (?, ?, ?, ?, ?, ?);";
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(insertSentence))
+		try
+		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(insertSentence);
+			this.setId(aStatement, 1, sentenceId);
+			aStatement.setString(2, documentId);
+			this.setId(aStatement, 3, paragraphId);
+			this.setId(aStatement, 4, previousSentenceId);
+			aStatement.setInt(5, sentence.getBegin());
+			aStatement.setInt(6, sentence.getEnd());
+
+			aStatement.executeUpdate();
+		} catch (SQLException e)
+		{
+			e.printStackTrace();
+			throw new QHException(e);
+		}
+
+		return sentenceId;
+	}
+
+	@Override
+	public String storeToken(
+			Token token,
+			String documentId,
+			String paragraphId,
+			String sentenceId,
+			String previousTokenId
+	)
+	{
+		String tokenId = this.nextId(ElementType.Token);
+		String insertToken = "INSERT INTO " + ElementType.Token +
+				" (`id`, `documentId`, `paragraphId`, `sentenceId`, `previousTokenId`, `value`, `begin`, `end`, `position`)" +
+				" VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?);";
+		try
+		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(insertToken);
+			this.setId(aStatement, 1, tokenId);
+			aStatement.setString(2, documentId);
+			this.setId(aStatement, 3, paragraphId);
+			this.setId(aStatement, 4, sentenceId);
+			this.setId(aStatement, 5, previousTokenId);
+			aStatement.setString(6, token.getCoveredText());
+			aStatement.setInt(7, token.getBegin());
+			aStatement.setInt(8, token.getEnd());
+			aStatement.setInt(9, this.nextTokenPosition(documentId));
+
+			aStatement.executeUpdate();
+		} catch (SQLException e)
+		{
+			e.printStackTrace();
+			throw new QHException(e);
+		}
+
+		// Get Lemma ID (and insert, if necessary)
+		String lemmaId = this.getLemmaId(token.getLemma().getValue());
+		// Insert connection from Token to Lemma.
+		String insertTokenLemmaConnection = "INSERT INTO `tokenLemmaMap`" +
+				" (`tokenId`, `lemmaId`)" +
+				" VALUES (?, ?);";
+		try
+		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(insertTokenLemmaConnection);
+			this.setId(aStatement, 1, tokenId);
+			this.setId(aStatement, 2, lemmaId);
+
+			aStatement.executeUpdate();
+		} catch (SQLException e)
+		{
+			e.printStackTrace();
+			throw new QHException(e);
+		}
+
+		// Insert connection between Document and Lemma, if non exists yet.
+		this.insertDocumentLemmaConnection(documentId, lemmaId);
+
+		return tokenId;
+	}
+
+	/**
+	 * Creates a new Lemma if none with the given value exists.
+	 * Otherwise retrieves the existing one.
+	 * Known Lemmata are served from the cache without querying the database.
+	 * <p>
+	 * New Lemmata are inserted and committed on the shared lemmaConnection,
+	 * outside of the writer's own transaction. So other writers only ever see
+	 * and cache committed Lemmata, no writer waits for another one's
+	 * transaction to reference a Lemma and rolling back a Document never
+	 * removes a Lemma that others already use. A Lemma may thus outlive the
+	 * Document it was inserted for.
+	 * <p>
+	 * Another writer may insert the same Lemma concurrently. Thus the insert
+	 * is a no-op for existing values and the id of the stored Lemma is read
+	 * back afterwards.
+	 *
+	 * @param value The Lemma's value.
+	 * @return The Lemma's id.
+	 */
+	protected String getLemmaId(String value)
+	{
+		String lemmaId = this.findLemmaId(value);
+		if (lemmaId != null)
+		{
+			return lemmaId;
+		}
+
+		// If no Lemma was found, a new one has to be created.
+		try
+		{
+			lemmaId = this.insertLemma(value);
+		} catch (SQLException e)
+		{
+			e.printStackTrace();
+			throw new QHException(e);
+		}
+		this.lemmaIdCache.put(value, lemmaId);
+
+		return lemmaId;
+	}
+
+	/**
+	 * Inserts a Lemma on the shared lemmaConnection, unless it is already
+	 * stored, and commits it right away.
+	 *
+	 * @param value The Lemma's value.
+	 * @return The id of the stored Lemma.
+	 * @throws SQLException If the Lemma can't be stored.
+	 */
+	protected String insertLemma(String value) throws SQLException
+	{
+		String insertLemma = "INSERT INTO " + ElementType.Lemma +
+				" (`id`, `value`)" +
+				" VALUES (?, ?)" +
+				" ON DUPLICATE KEY UPDATE `id` = `id`;";
+		String selectLemma = "SELECT `id` FROM " + ElementType.Lemma +
+				" WHERE `value` = ?;";
+		synchronized (LEMMA_LOCK)
+		{
+			if (lemmaConnection == null || !lemmaConnection.isValid(1))
+			{
+				lemmaConnection = MySQLConnection.connect();
+			}
+			lemmaConnection.setAutoCommit(true);
+
+			try (PreparedStatement aStatement =
+					     lemmaConnection.prepareStatement(insertLemma))
+			{
+				this.setId(aStatement, 1, this.nextId(ElementType.Lemma));
+				aStatement.setString(2, value);
+				aStatement.executeUpdate();
+			}
+			try (PreparedStatement aStatement =
+					     lemmaConnection.prepareStatement(selectLemma))
+			{
+				aStatement.setString(1, value);
+				ResultSet result = aStatement.executeQuery();
+				if (!result.next())
+				{
+					throw new SQLException(
+							"Lemma \"" + value + "\" was not stored."
+					);
+				}
+				return result.getString(1);
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the id of the Lemma with the given value from the cache or
+	 * the database.
+	 *
+	 * @param value The Lemma's value.
+	 * @return The Lemma's id or null, if no such Lemma is stored.
+	 */
+	protected String findLemmaId(String value)
+	{
+		String cachedId = this.lemmaIdCache.getIfPresent(value);
+		if (cachedId != null)
+		{
+			return cachedId;
+		}
+
+		String selectLemma = "SELECT `id` FROM " + ElementType.Lemma +
+				" WHERE `value` = ?";
+		try
+		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(selectLemma);
+			aStatement.setString(1, value);
+			ResultSet result = aStatement.executeQuery();
+
+			if (result.next())
+			{
+				// If a Lemma was found, return its id.
+				String lemmaId = result.getString(1);
+				this.lemmaIdCache.put(value, lemmaId);
+				return lemmaId;
+			}
+		} catch (SQLException e)
+		{
+			e.printStackTrace();
+			throw new QHException(e);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Inserts a connection from Document to Lemma into the table
+	 * documentLemmaMap.
+	 * Connections that were already made for the current Document are remem-
+	 * bered and skipped without querying the database.
+	 *
+	 * @param documentId
+	 * @param lemmaId
+	 * @return False, if the connection already existed. True otherwise.
+	 */
+	protected boolean insertDocumentLemmaConnection(
+			String documentId, String lemmaId
+	)
+	{
+		if (!documentId.equals(this.currentLemmaDocumentId))
+		{
+			this.currentLemmaDocumentId = documentId;
+			this.currentDocumentLemmaIds.clear();
+		}
+		if (!this.currentDocumentLemmaIds.add(lemmaId))
+		{
+			return false;
+		}
+
+		String selectConnection = "SELECT `documentId`, `lemmaId` " +
+				" FROM documentLemmaMap" +
+				" WHERE `documentId` = ? AND `lemmaId` = ?;";
+		try
+		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(selectConnection);
+			aStatement.setString(1, documentId);
+			this.setId(aStatement, 2, lemmaId);
+
+			ResultSet result = aStatement.executeQuery();
+
+			if (result.next())
+			{
+				// A Connection exists, nothing to be done here.
+				return false;
+			}
+		} catch (SQLException e)
+		{
+			e.printStackTrace();
+		}
+
+		String insertConnection = "INSERT INTO documentLemmaMap" +
+				" (`documentId`, `lemmaId`)" +
+				" VALUES (?, ?);";
+		try
+		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(insertConnection);
+			aStatement.setString(1, documentId);
+			this.setId(aStatement, 2, lemmaId);
+
+			aStatement.executeUpdate();
+		} catch (SQLException e)
+		{
+			e.printStackTrace();
+		}
+
+		return true;
+	}
+
+	/**
+	 * In Batch IngestMode the Documents' hierarchies are stored with JDBC
+	 * batches instead of one statement per element.
+	 * <p>
+	 * Rows are collected per table and sent as soon as <i>batchSize</i> rows
+	 * are pending or <i>documentsPerBatch</i> documents are complete. The
+	 * tables are always flushed in the order of their foreign keys.
+	 * <p>
+	 * The Documents are stored atomically: If any of them fails, none of
+	 * them is stored, while Documents of earlier calls are kept. Without
+	 * MYSQL_COMMIT_DOCUMENTS, each call runs in a transaction of its own.
+	 * <p>
+	 * The other IngestModes store one Document after the other via
+	 * #storeDocumentHierarchy.
+	 *
+	 * @param documents The Documents to insert.
+	 * @param options   Controls how elements are grouped into batches.
+	 * @throws QHException If any of the Documents can't be stored.
+	 */
+	@Override
+	public void storeDocumentHierarchies(
+			Iterable<JCas> documents,
+			BatchOptions options
+	) throws QHException
+	{
+		if (this.ingestMode != IngestMode.Batch)
+		{
+			super.storeDocumentHierarchies(documents, options);
+			return;
+		}
+
+		String insertParagraph = "INSERT INTO " + ElementType.Paragraph +
+				" (`id`, `documentId`, `previousParagraphId`, `begin`, `end`)" +
+				" VALUES (?, ?, ?, ?, ?);";
+		String insertSentence = "INSERT INTO " + ElementType.Sentence +
+				" (`id`, `documentId`, `paragraphId`, `previousSentenceId`, `begin`, `end`) " +
+				" VALUES (?, ?, ?, ?, ?, ?);";
+		String insertToken = "INSERT INTO " + ElementType.Token +
+				" (`id`, `documentId`, `paragraphId`, `sentenceId`, `previousTokenId`, `value`, `begin`, `end`, `position`)" +
+				" VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?);";
+		String insertTokenLemmaConnection = "INSERT INTO `tokenLemmaMap`" +
+				" (`tokenId`, `lemmaId`)" +
+				" VALUES (?, ?);";
+		String insertDocumentLemmaConnection = "INSERT INTO documentLemmaMap" +
+				" (`documentId`, `lemmaId`)" +
+				" VALUES (?, ?);";
+
+		List<PreparedStatement> statements = new ArrayList<>();
+		boolean ownTransaction = false;
+		Savepoint savepoint = null;
+		try
 		{
-			aStatement.setString(1, sentenceId);
-			aStatement.setString(2, documentId);
-			aStatement.setString(3, paragraphId);
+			PreparedStatement paragraphStatement =
+					this.getPreparedStatement(insertParagraph);
+			PreparedStatement sentenceStatement =
+					this.getPreparedStatement(insertSentence);
+			PreparedStatement tokenStatement =
+					this.getPreparedStatement(insertToken);
+			PreparedStatement tokenLemmaStatement =
+					this.getPreparedStatement(insertTokenLemmaConnection);
+			PreparedStatement documentLemmaStatement =
+					this.getPreparedStatement(insertDocumentLemmaConnection);
+			// Order matters: every table only references tables before it.
+			statements.addAll(Arrays.asList(
+					paragraphStatement,
+					sentenceStatement,
+					tokenStatement,
+					tokenLemmaStatement,
+					documentLemmaStatement
+			));
+			this.beginIngestTransaction();
+			ownTransaction = this.connection.getAutoCommit();
+			if (ownTransaction)
+			{
+				this.connection.setAutoCommit(false);
+			}
+			savepoint = this.setDocumentSavepoint();
+			int pendingRows = 0;
+			int pendingDocuments = 0;
+			int storedDocuments = 0;
+
+			for (JCas document : documents)
+			{
+				// A failing Document aborts the batch, so that it is rolled
+				// back instead of being counted as inserted.
+				final String documentId = this.storeJCasDocument(document);
+
+				Set<String> documentLemmaIds = new HashSet<>();
+				int position = 0;
+				String previousParagraphId = null;
+				for (Paragraph paragraph
+						: JCasUtil.select(document, Paragraph.class))
+				{
+					String paragraphId = this.nextId(ElementType.Paragraph);
+					this.setId(paragraphStatement, 1, paragraphId);
+					paragraphStatement.setString(2, documentId);
+					this.setId(paragraphStatement, 3, previousParagraphId);
+					paragraphStatement.setInt(4, paragraph.getBegin());
+					paragraphStatement.setInt(5, paragraph.getEnd());
+					paragraphStatement.addBatch();
+					pendingRows++;
+					previousParagraphId = paragraphId;
+
+					String previousSentenceId = null;
+					for (Sentence sentence : JCasUtil.selectCovered(
+							document, Sentence.class, paragraph
+					))
+					{
+						String sentenceId = this.nextId(ElementType.Sentence);
+						this.setId(sentenceStatement, 1, sentenceId);
+						sentenceStatement.setString(2, documentId);
+						this.setId(sentenceStatement, 3, paragraphId);
+						this.setId(sentenceStatement, 4, previousSentenceId);
+						sentenceStatement.setInt(5, sentence.getBegin());
+						sentenceStatement.setInt(6, sentence.getEnd());
+						sentenceStatement.addBatch();
+						pendingRows++;
+						previousSentenceId = sentenceId;
+
+						String previousTokenId = null;
+						for (Token token : JCasUtil.selectCovered(
+								document, Token.class, sentence
+						))
+						{
+							String tokenId = this.nextId(ElementType.Token);
+							this.setId(tokenStatement, 1, tokenId);
+							tokenStatement.setString(2, documentId);
+							this.setId(tokenStatement, 3, paragraphId);
+							this.setId(tokenStatement, 4, sentenceId);
+							this.setId(tokenStatement, 5, previousTokenId);
+							tokenStatement.setString(6, token.getCoveredText());
+							tokenStatement.setInt(7, token.getBegin());
+							tokenStatement.setInt(8, token.getEnd());
+							tokenStatement.setInt(9, position++);
+							tokenStatement.addBatch();
+							previousTokenId = tokenId;
+
+							String lemmaId = this.getLemmaId(
+									token.getLemma().getValue()
+							);
+							this.setId(tokenLemmaStatement, 1, tokenId);
+							this.setId(tokenLemmaStatement, 2, lemmaId);
+							tokenLemmaStatement.addBatch();
+							pendingRows += 2;
+
+							// The Document is new, so every Lemma has to be
+							// connected exactly once.
+							if (documentLemmaIds.add(lemmaId))
+							{
+								documentLemmaStatement.setString(1, documentId);
+								this.setId(documentLemmaStatement, 2, lemmaId);
+								documentLemmaStatement.addBatch();
+								pendingRows++;
+							}
+
+							if (pendingRows >= options.getBatchSize())
+							{
+								this.executeBatches(statements);
+								pendingRows = 0;
+							}
+						}
+					}
+				}
+
+				pendingDocuments++;
+				storedDocuments++;
+				if (pendingDocuments >= options.getDocumentsPerBatch())
+				{
+					this.executeBatches(statements);
+					pendingRows = 0;
+					pendingDocuments = 0;
+				}
+			}
 
-			if (previousSentenceId == null)
+			// Only committed once all rows were sent, so that no Document
+			// is committed with rows still waiting in batches.
+			this.executeBatches(statements);
+			if (ownTransaction)
 			{
-				aStatement.setNull(4, Types.VARCHAR);
+				this.connection.commit();
+				this.connection.setAutoCommit(true);
 			} else
 			{
-				aStatement.setString(4, previousSentenceId);
+				this.connection.releaseSavepoint(savepoint);
+				this.documentsInserted(storedDocuments);
 			}
-
-			aStatement.setInt(5, sentence.getBegin());
-			aStatement.setInt(6, sentence.getEnd());
-
-			aStatement.executeUpdate();
-		} catch (SQLException e)
+		} catch (SQLException | QHException e)
 		{
+			// The statements are reused, so unsent rows must not linger.
+			for (PreparedStatement statement : statements)
+			{
+				try
+				{
+					statement.clearBatch();
+				} catch (SQLException ignored)
+				{
+
+				}
+			}
+			if (ownTransaction || savepoint == null)
+			{
+				this.rollbackIngestTransaction();
+			} else
+			{
+				this.rollbackToSavepoint(savepoint);
+			}
 			e.printStackTrace();
-			throw new QHException(e);
+			throw e instanceof QHException
+					? (QHException) e
+					: new QHException((SQLException) e);
 		}
-
-		return sentenceId;
 	}
 
+	/**
+	 * In Bulk IngestMode the Document is only converted into rows, which are
+	 * loaded every MYSQL_BULK_FLUSH_DOCUMENTS Documents and in #finishIngest.
+	 * In Batch IngestMode it is stored as a batch of its own. Otherwise the
+	 * Document is inserted row by row, in a transaction if
+	 * MYSQL_COMMIT_DOCUMENTS is set. If the Document can't be inserted, only
+	 * the Document itself is rolled back and the exception is thrown.
+	 *
+	 * @param document The Document to insert.
+	 * @throws QHException If anything goes wrong. Encapsulates underlying
+	 *                     Exceptions.
+	 */
 	@Override
-	public String storeToken(
-			Token token,
-			String documentId,
-			String paragraphId,
-			String sentenceId,
-			String previousTokenId
-	)
+	public void storeDocumentHierarchy(JCas document) throws QHException
 	{
-		String tokenId = UUID.randomUUID().toString();
-		String insertToken = "INSERT INTO " + ElementType.Token +
-				" (`id`, `documentId`, `paragraphId`, `sentenceId`, `previousTokenId`, `value`, `begin`, `end`)" +
-				" VALUES (?, ?, ?, ?, ?, ?, ?, ?);";
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(insertToken))
+		if (this.ingestMode == IngestMode.Batch)
 		{
-			aStatement.setString(1, tokenId);
-			aStatement.setString(2, documentId);
-			aStatement.setString(3, paragraphId);
-			aStatement.setString(4, sentenceId);
-
-			if (previousTokenId == null)
+			this.storeDocumentHierarchies(
+					Collections.singletonList(document), new BatchOptions()
+			);
+			return;
+		}
+		if (this.ingestMode != IngestMode.Bulk)
+		{
+			Savepoint savepoint = null;
+			try
 			{
-				aStatement.setNull(5, Types.VARCHAR);
-			} else
+				this.beginIngestTransaction();
+				savepoint = this.setDocumentSavepoint();
+				String documentId = this.storeJCasDocument(document);
+				this.storeDocumentElements(document, documentId);
+				if (savepoint != null)
+				{
+					this.connection.releaseSavepoint(savepoint);
+				}
+				this.documentsInserted(1);
+			} catch (SQLException e)
 			{
-				aStatement.setString(5, previousTokenId);
+				this.rollbackToSavepoint(savepoint);
+				e.printStackTrace();
+				throw new QHException(e);
+			} catch (QHException e)
+			{
+				this.rollbackToSavepoint(savepoint);
+				throw e;
 			}
+			return;
+		}
 
-			aStatement.setString(6, token.getCoveredText());
-			aStatement.setInt(7, token.getBegin());
-			aStatement.setInt(8, token.getEnd());
-
-			aStatement.executeUpdate();
-		} catch (SQLException e)
+		this.bufferDocumentHierarchy(document);
+		this.bulkPendingDocuments++;
+		if (this.bulkPendingDocuments >= this.bulkFlushDocuments)
 		{
-			e.printStackTrace();
-			throw new QHException(e);
+			this.flushBulkTables();
 		}
+	}
 
-		// Get Lemma ID (and insert, if necessary)
-		String lemmaId = this.getLemmaId(token.getLemma().getValue());
-		// Insert connection from Token to Lemma.
-		String insertTokenLemmaConnection = "INSERT INTO `tokenLemmaMap`" +
-				" (`tokenId`, `lemmaId`)" +
-				" VALUES (?, ?);";
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(
-						     insertTokenLemmaConnection
-				     ))
+	/**
+	 * Loads all remaining rows in Bulk IngestMode and verifies the foreign
+	 * keys that were not checked while loading. Commits the running
+	 * transaction in all modes.
+	 *
+	 * @throws QHException If loading fails or rows with dangling foreign keys
+	 *                     were found.
+	 */
+	@Override
+	public void finishIngest() throws QHException
+	{
+		if (this.ingestMode == IngestMode.Bulk)
 		{
-			aStatement.setString(1, tokenId);
-			aStatement.setString(2, lemmaId);
+			this.flushBulkTables();
+			this.verifyForeignKeys();
+		}
 
-			aStatement.executeUpdate();
+		try
+		{
+			this.commitIngestTransaction();
 		} catch (SQLException e)
 		{
 			e.printStackTrace();
 			throw new QHException(e);
 		}
+	}
 
-		// Insert connection between Document and Lemma, if non exists yet.
-		this.insertDocumentLemmaConnection(documentId, lemmaId);
+	/**
+	 * Converts a Document and all of its elements into rows for the Bulk
+	 * IngestMode.
+	 *
+	 * @param document The Document to convert.
+	 */
+	protected void bufferDocumentHierarchy(JCas document)
+	{
+		final String documentId = DocumentMetaData.get(document)
+				.getDocumentId();
+		this.bulkElementTables.get(ElementType.Document).addRow(
+				documentId,
+				document.getDocumentText(),
+				document.getDocumentLanguage()
+		);
+
+		Set<String> documentLemmaIds = new HashSet<>();
+		int position = 0;
+		String previousParagraphId = null;
+		for (Paragraph paragraph : JCasUtil.select(document, Paragraph.class))
+		{
+			String paragraphId = this.nextId(ElementType.Paragraph);
+			this.bulkElementTables.get(ElementType.Paragraph).addRow(
+					paragraphId,
+					documentId,
+					previousParagraphId,
+					String.valueOf(paragraph.getBegin()),
+					String.valueOf(paragraph.getEnd())
+			);
+			previousParagraphId = paragraphId;
+
+			String previousSentenceId = null;
+			for (Sentence sentence : JCasUtil.selectCovered(
+					document, Sentence.class, paragraph
+			))
+			{
+				String sentenceId = this.nextId(ElementType.Sentence);
+				this.bulkElementTables.get(ElementType.Sentence).addRow(
+						sentenceId,
+						documentId,
+						paragraphId,
+						previousSentenceId,
+						String.valueOf(sentence.getBegin()),
+						String.valueOf(sentence.getEnd())
+				);
+				previousSentenceId = sentenceId;
 
-		return tokenId;
+				String previousTokenId = null;
+				for (Token token : JCasUtil.selectCovered(
+						document, Token.class, sentence
+				))
+				{
+					String tokenId = this.nextId(ElementType.Token);
+					this.bulkElementTables.get(ElementType.Token).addRow(
+							tokenId,
+							documentId,
+							paragraphId,
+							sentenceId,
+							previousTokenId,
+							token.getCoveredText(),
+							String.valueOf(token.getBegin()),
+							String.valueOf(token.getEnd()),
+							String.valueOf(position++)
+					);
+					previousTokenId = tokenId;
+
+					String lemmaId = this.getLemmaId(
+							token.getLemma().getValue()
+					);
+					this.bulkTokenLemmaTable.addRow(tokenId, lemmaId);
+					if (documentLemmaIds.add(lemmaId))
+					{
+						this.bulkDocumentLemmaTable.addRow(documentId, lemmaId);
+					}
+				}
+			}
+		}
 	}
 
 	/**
-	 * Creates a new Lemma if none with the given value exists.
-	 * Otherwise retrieves the existing one.
+	 * Streams all buffered rows into their tables with LOAD DATA LOCAL INFILE.
+	 * Foreign key checks are disabled for the duration of the load, since
+	 * self-referencing rows may be loaded in any order.
+	 * <p>
+	 * All tables are loaded in one transaction, even if autocommit is used
+	 * otherwise, so that a failing table does not leave the others loaded.
+	 * The buffers are emptied in any case, since the rows of a failed load
+	 * would otherwise be sent again with the next one.
 	 *
-	 * @param value The Lemma's value.
-	 * @return The Lemma's id.
+	 * @throws QHException If any table can't be loaded. Nothing of the
+	 *                     buffered Documents is stored in that case.
 	 */
-	protected String getLemmaId(String value)
+	protected void flushBulkTables()
 	{
-		String selectLemma = "SELECT `id` FROM " + ElementType.Lemma +
-				" WHERE `value` = ?";
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(selectLemma))
+		try (Statement aStatement = this.connection.createStatement())
 		{
-			aStatement.setString(1, value);
-			ResultSet result = aStatement.executeQuery();
-
-			if (result.next())
+			this.connection.setAutoCommit(false);
+			aStatement.execute("SET foreign_key_checks = 0;");
+			try
 			{
-				// If a Lemma was found, return its id.
-				return result.getString(1);
+				for (BulkTable table : this.bulkTables)
+				{
+					table.load(aStatement);
+				}
+			} finally
+			{
+				aStatement.execute("SET foreign_key_checks = 1;");
 			}
+			this.commitIngestTransaction();
 		} catch (SQLException e)
 		{
+			logger.severe("Discarding the last " + this.bulkPendingDocuments
+					+ " Documents, since they could not be loaded.");
+			this.rollbackIngestTransaction();
 			e.printStackTrace();
 			throw new QHException(e);
-		}
-
-		// If no Lemma was found, a new one has to be created.
-		String lemmaId = UUID.randomUUID().toString();
-		String insertLemma = "INSERT INTO " + ElementType.Lemma +
-				" (`id`, `value`)" +
-				" VALUES (?, ?);";
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(insertLemma))
-		{
-			aStatement.setString(1, lemmaId);
-			aStatement.setString(2, value);
-
-			aStatement.executeUpdate();
-		} catch (SQLException e)
+		} finally
 		{
-			e.printStackTrace();
-			throw new QHException(e);
+			for (BulkTable table : this.bulkTables)
+			{
+				table.clear();
+			}
+			this.bulkPendingDocuments = 0;
 		}
-
-		return lemmaId;
 	}
 
 	/**
-	 * Inserts a connection from Document to Lemma into the table
-	 * documentLemmaMap.
+	 * Makes sure that every foreign key loaded without checks references an
+	 * existing row.
 	 *
-	 * @param documentId
-	 * @param lemmaId
-	 * @return False, if the connection already existed. True otherwise.
+	 * @throws QHException If any dangling reference is found.
 	 */
-	protected boolean insertDocumentLemmaConnection(
-			String documentId, String lemmaId
-	)
+	protected void verifyForeignKeys()
 	{
-		String selectConnection = "SELECT `documentId`, `lemmaId` " +
-				" FROM documentLemmaMap" +
-				" WHERE `documentId` = ? AND `lemmaId` = ?;";
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(selectConnection))
-		{
-			aStatement.setString(1, documentId);
-			aStatement.setString(2, lemmaId);
-
-			ResultSet result = aStatement.executeQuery();
+		String[][] foreignKeys = {
+				{ElementType.Paragraph.toString(), "documentId", ElementType.Document.toString()},
+				{ElementType.Paragraph.toString(), "previousParagraphId", ElementType.Paragraph.toString()},
+				{ElementType.Sentence.toString(), "documentId", ElementType.Document.toString()},
+				{ElementType.Sentence.toString(), "paragraphId", ElementType.Paragraph.toString()},
+				{ElementType.Sentence.toString(), "previousSentenceId", ElementType.Sentence.toString()},
+				{ElementType.Token.toString(), "documentId", ElementType.Document.toString()},
+				{ElementType.Token.toString(), "paragraphId", ElementType.Paragraph.toString()},
+				{ElementType.Token.toString(), "sentenceId", ElementType.Sentence.toString()},
+				{ElementType.Token.toString(), "previousTokenId", ElementType.Token.toString()},
+				{"tokenLemmaMap", "tokenId", ElementType.Token.toString()},
+				{"tokenLemmaMap", "lemmaId", ElementType.Lemma.toString()},
+				{"documentLemmaMap", "documentId", ElementType.Document.toString()},
+				{"documentLemmaMap", "lemmaId", ElementType.Lemma.toString()}
+		};
 
-			if (result.next())
+		try (Statement aStatement = this.connection.createStatement())
+		{
+			for (String[] foreignKey : foreignKeys)
 			{
-				// A Connection exists, nothing to be done here.
-				return false;
+				String query = "SELECT COUNT(*)" +
+						" FROM " + foreignKey[0] + " AS `child`" +
+						"     LEFT JOIN " + foreignKey[2] + " AS `parent`" +
+						"         ON `child`.`" + foreignKey[1] + "` = `parent`.`id`" +
+						" WHERE `child`.`" + foreignKey[1] + "` IS NOT NULL" +
+						"     AND `parent`.`id` IS NULL;";
+				ResultSet result = aStatement.executeQuery(query);
+				result.next();
+				int dangling = result.getInt(1);
+				if (dangling > 0)
+				{
+					throw new QHException(new SQLException(
+							dangling + " rows in " + foreignKey[0] + "."
+									+ foreignKey[1] + " reference missing "
+									+ foreignKey[2] + " rows."
+					));
+				}
 			}
 		} catch (SQLException e)
 		{
 			e.printStackTrace();
+			throw new QHException(e);
 		}
+	}
 
-		String insertConnection = "INSERT INTO documentLemmaMap" +
-				" (`documentId`, `lemmaId`)" +
-				" VALUES (?, ?);";
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(insertConnection))
-		{
-			aStatement.setString(1, documentId);
-			aStatement.setString(2, lemmaId);
-
-			aStatement.executeUpdate();
-		} catch (SQLException e)
+	/**
+	 * Executes the pending batches of all given statements in order.
+	 *
+	 * @param statements The statements in foreign key order.
+	 * @throws SQLException If any of the batches fails.
+	 */
+	protected void executeBatches(List<PreparedStatement> statements)
+			throws SQLException
+	{
+		for (PreparedStatement statement : statements)
 		{
-			e.printStackTrace();
+			statement.executeBatch();
 		}
-
-		return true;
 	}
 
 	@Override
@@ -436,9 +1526,10 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 	{
 		String query = "SELECT * FROM " + ElementType.Document +
 				" WHERE `id` = ?;";
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(query))
+		try
 		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(query);
 			aStatement.setString(1, documentId);
 
 			ResultSet result = aStatement.executeQuery();
@@ -454,18 +1545,33 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 		}
 	}
 
+	/**
+	 * Pages over the primary key of the Document table.
+	 */
 	@Override
-	public Iterable<String> getDocumentIds()
+	public List<String> getDocumentIds(String afterId, int limit)
 	{
 		List<String> documentIds = new ArrayList<>();
 		String query = "SELECT `id`" +
-				" FROM " + ElementType.Document + ";";
-		try (Statement aStatement = this.connection.createStatement())
+				" FROM " + ElementType.Document +
+				(afterId == null ? "" : " WHERE `id` > ?") +
+				" ORDER BY `id`" +
+				" LIMIT ?;";
+		try
 		{
-			ResultSet result = aStatement.executeQuery(query);
-			while (result.next())
+			PreparedStatement aStatement = this.getPreparedStatement(query);
+			int parameter = 1;
+			if (afterId != null)
+			{
+				aStatement.setString(parameter++, afterId);
+			}
+			aStatement.setInt(parameter, limit);
+			try (ResultSet result = aStatement.executeQuery())
 			{
-				documentIds.add(result.getString(1));
+				while (result.next())
+				{
+					documentIds.add(result.getString(1));
+				}
 			}
 		} catch (SQLException e)
 		{
@@ -484,10 +1590,10 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 				"     JOIN documentLemmaMap AS `dlm`" +
 				"         ON `lemma`.`id` = `dlm`.`lemmaId`" +
 				" WHERE `dlm`.`documentId` = ?;";
-		try (PreparedStatement aStatement = this.connection.prepareStatement(
-				query
-		))
+		try
 		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(query);
 			aStatement.setString(1, documentId);
 
 			ResultSet lemmataResult = aStatement.executeQuery();
@@ -505,6 +1611,20 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 		return lemmata;
 	}
 
+	/**
+	 * Reads the Document and then all of its Tokens joined with their Lemmata
+	 * in one query ordered by begin.
+	 * The Token rows are streamed from the server, so that the driver does
+	 * not buffer the whole result of large Documents. While the result is
+	 * open, no other statement can be executed on the connection.
+	 * <p>
+	 * POS are stored inside Tokens, so their value is the Token's value.
+	 *
+	 * @param aCAS       The CAS to populate with the found data.
+	 * @param documentId The document whose data shall be used.
+	 * @throws DocumentNotFoundException If the documentId can't be found in db.
+	 * @throws QHException               If any underlying Exception is thrown.
+	 */
 	@Override
 	public void populateCasWithDocument(CAS aCAS, String documentId)
 			throws DocumentNotFoundException, QHException
@@ -516,56 +1636,67 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 					" FROM " + ElementType.Document +
 					" WHERE `id` = ?;";
 			PreparedStatement selectDocumentStatement =
-					this.connection.prepareStatement(selectDocumentQuery);
+					this.getPreparedStatement(selectDocumentQuery);
 			selectDocumentStatement.setString(1, documentId);
-			ResultSet documentResult = selectDocumentStatement.executeQuery();
-			if (!documentResult.next())
+			try (ResultSet documentResult = selectDocumentStatement.executeQuery())
 			{
-				throw new DocumentNotFoundException();
-			}
+				if (!documentResult.next())
+				{
+					throw new DocumentNotFoundException();
+				}
 
-			// Create Document CAS
-			DocumentMetaData meta = DocumentMetaData.create(aCAS);
-			meta.setDocumentId(documentId);
-			aCAS.setDocumentLanguage(documentResult.getString(1));
-			aCAS.setDocumentText(documentResult.getString(2));
+				// Create Document CAS
+				DocumentMetaData meta = DocumentMetaData.create(aCAS);
+				meta.setDocumentId(documentId);
+				aCAS.setDocumentLanguage(documentResult.getString(1));
+				aCAS.setDocumentText(documentResult.getString(2));
+			}
 
-			// Retrieve connected Tokens
-			String selectTokenQuery = "SELECT `begin`, `end`, `value`" +
-					" FROM " + ElementType.Token +
-					" WHERE `documentId` = ?;";
+			// Retrieve connected Tokens with their Lemmata
+			String selectTokenQuery = "SELECT `token`.`begin`, `token`.`end`," +
+					"     `token`.`value`, `lemma`.`value`" +
+					" FROM " + ElementType.Token + " AS `token`" +
+					"     LEFT JOIN tokenLemmaMap AS `tlm`" +
+					"         ON `token`.`id` = `tlm`.`tokenId`" +
+					"     LEFT JOIN " + ElementType.Lemma + " AS `lemma`" +
+					"         ON `tlm`.`lemmaId` = `lemma`.`id`" +
+					" WHERE `token`.`documentId` = ?" +
+					" ORDER BY `token`.`begin`, `token`.`end`;";
 			PreparedStatement selectTokenStatement =
-					this.connection.prepareStatement(selectTokenQuery);
+					this.getPreparedStatement(selectTokenQuery);
+			// Prepared statements are forward-only and read-only by default.
+			// This fetch size makes the MySQL driver stream the rows one by
+			// one instead of reading the whole result into memory.
+			selectTokenStatement.setFetchSize(Integer.MIN_VALUE);
 			selectTokenStatement.setString(1, documentId);
-			ResultSet tokenResult = selectTokenStatement.executeQuery();
 
-			while (tokenResult.next())
+			JCas jCas = aCAS.getJCas();
+			try (ResultSet tokenResult = selectTokenStatement.executeQuery())
 			{
-				Token xmiToken = new Token(
-						aCAS.getJCas(),
-						tokenResult.getInt(1),
-						tokenResult.getInt(2)
-				);
-
-				Lemma lemma = new Lemma(
-						aCAS.getJCas(),
-						xmiToken.getBegin(),
-						xmiToken.getEnd()
-				);
-				lemma.setValue(tokenResult.getString(3));
-				lemma.addToIndexes();
-				xmiToken.setLemma(lemma);
-
-				POS pos = new POS(
-						aCAS.getJCas(),
-						xmiToken.getBegin(),
-						xmiToken.getEnd()
-				);
-				pos.setPosValue(tokenResult.getString(3));
-				pos.addToIndexes();
-				xmiToken.setPos(pos);
-
-				xmiToken.addToIndexes();
+				while (tokenResult.next())
+				{
+					int begin = tokenResult.getInt(1);
+					int end = tokenResult.getInt(2);
+					String tokenValue = tokenResult.getString(3);
+					String lemmaValue = tokenResult.getString(4);
+
+					Token xmiToken = new Token(jCas, begin, end);
+
+					if (lemmaValue != null)
+					{
+						Lemma lemma = new Lemma(jCas, begin, end);
+						lemma.setValue(VALUE_DICTIONARY.intern(lemmaValue));
+						lemma.addToIndexes();
+						xmiToken.setLemma(lemma);
+					}
+
+					POS pos = new POS(jCas, begin, end);
+					pos.setPosValue(VALUE_DICTIONARY.intern(tokenValue));
+					pos.addToIndexes();
+					xmiToken.setPos(pos);
+
+					xmiToken.addToIndexes();
+				}
 			}
 		} catch (CASException | SQLException e)
 		{
@@ -582,9 +1713,10 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 				"     JOIN documentLemmaMap AS `dlm`" +
 				"         ON `lemma`.`id` = `dlm`.`lemmaId`" +
 				" WHERE `lemma`.`value` = ?;";
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(query))
+		try
 		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(query);
 			aStatement.setString(1, lemma);
 
 			ResultSet result = aStatement.executeQuery();
@@ -665,9 +1797,10 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 
 		String query = "SELECT COUNT(*) FROM " + tableName +
 				" WHERE `documentId` = ?;";
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(query))
+		try
 		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(query);
 			aStatement.setString(1, documentId);
 
 			ResultSet result = aStatement.executeQuery();
@@ -698,9 +1831,10 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 		String query = "SELECT COUNT(*)" +
 				" FROM " + type +
 				" WHERE `value` = ?;";
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(query))
+		try
 		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(query);
 			aStatement.setString(1, value);
 
 			ResultSet result = aStatement.executeQuery();
@@ -740,9 +1874,10 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 					"   AND `lemma`.`value` = ?;";
 		}
 
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(query))
+		try
 		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(query);
 			aStatement.setString(1, documentId);
 			aStatement.setString(2, value);
 
@@ -878,9 +2013,10 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 				" GROUP BY `document`.`id`;";
 
 		int counter = 1;
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(query))
+		try
 		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(query);
 			// Loop over document ids and set each to a separate prepared value
 			// slot.
 			for (String documentId : documentIds)
@@ -917,9 +2053,10 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 				"             ON `tlm`.`tokenId` = `token`.`id`" +
 				" WHERE `token`.`documentId` = ?" +
 				" GROUP BY `lemma`.`id`;";
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(query))
+		try
 		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(query);
 			aStatement.setString(1, documentId);
 
 			ResultSet result = aStatement.executeQuery();
@@ -950,9 +2087,10 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 				"         JOIN " + ElementType.Token + " AS `token`" +
 				"             ON `tlm`.`tokenId` = `token`.`id`" +
 				" WHERE `token`.`documentId` = ? AND `lemma`.`value` = ?;";
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(query))
+		try
 		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(query);
 			aStatement.setString(1, documentId);
 			aStatement.setString(2, lemma);
 
@@ -977,9 +2115,10 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 				"     LEFT JOIN " + ElementType.Token + " AS `b`" +
 				"         ON `a`.`id` = `b`.`previousTokenId`" +
 				" WHERE `a`.`documentId` = ?;";
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(query))
+		try
 		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(query);
 			aStatement.setString(1, documentId);
 
 			ResultSet result = aStatement.executeQuery();
@@ -1051,9 +2190,10 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 				"     LEFT JOIN " + ElementType.Token + " AS `b`" +
 				"         ON `a`.`id` = `b`.`previousTokenId`" +
 				" WHERE `a`.`documentId` IN " + questionMarks + ";";
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(query))
+		try
 		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(query);
 			int counter = 1;
 			for (String documentId : documentIds)
 			{
@@ -1092,9 +2232,10 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 				"         LEFT JOIN " + ElementType.Token + " AS `c`" +
 				"             ON `b`.`id` = `c`.`previousTokenId`" +
 				" WHERE `a`.`documentId` = ?;";
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(query))
+		try
 		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(query);
 			aStatement.setString(1, documentId);
 
 			ResultSet result = aStatement.executeQuery();
@@ -1170,9 +2311,10 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 				"         LEFT JOIN " + ElementType.Token + " AS `c`" +
 				"             ON `b`.`id` = `c`.`previousTokenId`" +
 				" WHERE `a`.`documentId` IN " + questionMarks + ";";
-		try (PreparedStatement aStatement =
-				     this.connection.prepareStatement(query))
+		try
 		{
+			PreparedStatement aStatement =
+					this.getPreparedStatement(query);
 			int counter = 1;
 			for (String documentId : documentIds)
 			{
@@ -1198,4 +2340,173 @@ public class MySQLQueryHandler extends AbstractQueryHandler
 
 		return triGramList;
 	}
+
+	/**
+	 * Buffers tab separated rows for one table in memory and loads them with
+	 * LOAD DATA LOCAL INFILE.
+	 */
+	protected static class BulkTable
+	{
+		/**
+		 * Exposes the internal buffer, so that it can be read without copying.
+		 */
+		protected static class RowBuffer extends ByteArrayOutputStream
+		{
+			public InputStream toInputStream()
+			{
+				return new ByteArrayInputStream(this.buf, 0, this.count);
+			}
+		}
+
+		protected final String table;
+		protected final String columns;
+		protected final RowBuffer buffer;
+		protected final Writer writer;
+
+		public BulkTable(String table, String columns)
+		{
+			this.table = table;
+			this.columns = columns;
+			this.buffer = new RowBuffer();
+			this.writer = new OutputStreamWriter(
+					this.buffer, StandardCharsets.UTF_8
+			);
+		}
+
+		/**
+		 * Appends a row. Null values are written as NULL.
+		 *
+		 * @param values The row's values in the order of the columns.
+		 */
+		public void addRow(String... values)
+		{
+			try
+			{
+				for (int i = 0; i < values.length; i++)
+				{
+					if (i > 0)
+					{
+						this.writer.write('\t');
+					}
+					this.writer.write(escape(values[i]));
+				}
+				this.writer.write('\n');
+			} catch (IOException e)
+			{
+				throw new QHException(e);
+			}
+		}
+
+		/**
+		 * Loads all buffered rows into the table and empties the buffer.
+		 *
+		 * @param aStatement The statement to execute the load with.
+		 * @throws SQLException If the load fails.
+		 */
+		public void load(Statement aStatement) throws SQLException
+		{
+			try
+			{
+				this.writer.flush();
+			} catch (IOException e)
+			{
+				throw new QHException(e);
+			}
+			if (this.buffer.size() == 0)
+			{
+				return;
+			}
+
+			setLocalInfileInputStream(aStatement, this.buffer.toInputStream());
+			aStatement.execute("LOAD DATA LOCAL INFILE 'stream'" +
+					" INTO TABLE " + this.table +
+					" CHARACTER SET utf8mb4" +
+					" (" + this.columns + ");");
+			setLocalInfileInputStream(aStatement, null);
+			this.buffer.reset();
+		}
+
+		/**
+		 * Discards all buffered rows.
+		 */
+		public void clear()
+		{
+			try
+			{
+				this.writer.flush();
+			} catch (IOException e)
+			{
+				throw new QHException(e);
+			}
+			this.buffer.reset();
+		}
+
+		/**
+		 * Escapes a value for the default field and line terminators of LOAD
+		 * DATA.
+		 *
+		 * @param value The value.
+		 * @return The escaped value or \N for null.
+		 */
+		protected static String escape(String value)
+		{
+			if (value == null)
+			{
+				return "\\N";
+			}
+			StringBuilder escaped = new StringBuilder(value.length());
+			for (char c : value.toCharArray())
+			{
+				switch (c)
+				{
+					case '\\':
+						escaped.append("\\\\");
+						break;
+					case '\t':
+						escaped.append("\\t");
+						break;
+					case '\n':
+						escaped.append("\\n");
+						break;
+					case '\r':
+						escaped.append("\\r");
+						break;
+					case '\0':
+						escaped.append("\\0");
+						break;
+					default:
+						escaped.append(c);
+				}
+			}
+			return escaped.toString();
+		}
+
+		/**
+		 * Hands a stream to the driver, which it sends instead of a file on
+		 * the next LOAD DATA LOCAL INFILE. The method is not part of JDBC and
+		 * the driver's interface declaring it moved between Connector/J
+		 * releases, so it is looked up on the implementation.
+		 *
+		 * @param aStatement The statement executing the LOAD DATA.
+		 * @param stream     The rows. Null resets the statement.
+		 * @throws SQLException If the driver does not support it.
+		 */
+		protected static void setLocalInfileInputStream(
+				Statement aStatement, InputStream stream
+		) throws SQLException
+		{
+			try
+			{
+				aStatement.getClass()
+						.getMethod("setLocalInfileInputStream", InputStream.class)
+						.invoke(aStatement, stream);
+			} catch (ReflectiveOperationException e)
+			{
+				throw new SQLException(
+						"The JDBC driver does not support streaming LOAD DATA "
+								+ "LOCAL INFILE.", e
+				);
+			}
+		}
+	}
 }
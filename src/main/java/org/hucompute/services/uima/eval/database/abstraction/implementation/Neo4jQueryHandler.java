@@ -8,8 +8,10 @@ import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.CASException;
+import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.hucompute.services.uima.eval.database.abstraction.AbstractQueryHandler;
+import org.hucompute.services.uima.eval.database.abstraction.BatchOptions;
 import org.hucompute.services.uima.eval.database.abstraction.ElementType;
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.DocumentNotFoundException;
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.QHException;
@@ -45,14 +47,54 @@ public class Neo4jQueryHandler extends AbstractQueryHandler
 		return Connections.DBName.Neo4j;
 	}
 
+	public static final int INDEX_TIMEOUT_SECONDS = 300;
+
 	/**
 	 * No need for setup, since any structure in neo4j is created by inserting.
+	 * Indexes are created separately in #createIndexes.
 	 */
 	@Override
 	public void setUpDatabase()
 	{
 	}
 
+	/**
+	 * Creates uniqueness constraints for the properties by which nodes are
+	 * matched during ingest, which also creates an index for each of them.
+	 * Tokens are additionally indexed by their Document's id. Waits until all
+	 * indexes are online, since they are populated in the background.
+	 */
+	@Override
+	public void createIndexes()
+	{
+		String[][] uniqueProperties = {
+				{ElementType.Document.toString(), "id"},
+				{ElementType.Paragraph.toString(), "paragraphId"},
+				{ElementType.Sentence.toString(), "sentenceId"},
+				{ElementType.Token.toString(), "tokenId"},
+				{ElementType.Lemma.toString(), "value"},
+				{ElementType.Pos.toString(), "value"}
+		};
+
+		// Schema changes can't be mixed with other statements in one
+		// transaction, so every statement runs on its own.
+		try (Session session = this.driver.session())
+		{
+			for (String[] property : uniqueProperties)
+			{
+				session.run("CREATE CONSTRAINT ON (n:" + property[0] + ") "
+						+ "ASSERT n." + property[1] + " IS UNIQUE").consume();
+			}
+			session.run("CREATE INDEX ON :" + ElementType.Token + "(id)")
+					.consume();
+			session.run("CALL db.awaitIndexes(" + INDEX_TIMEOUT_SECONDS + ")")
+					.consume();
+		} catch (RuntimeException e)
+		{
+			throw new QHException(e);
+		}
+	}
+
 	@Override
 	public void openDatabase() throws IOException
 	{
@@ -119,6 +161,238 @@ public class Neo4jQueryHandler extends AbstractQueryHandler
 		return documentId;
 	}
 
+	/**
+	 * Stores the whole Document in one transaction.
+	 *
+	 * @param document The Document to insert.
+	 * @throws QHException If anything goes wrong. Encapsulates underlying
+	 *                     Exceptions.
+	 * @see #storeDocumentHierarchies
+	 */
+	@Override
+	public void storeDocumentHierarchy(JCas document) throws QHException
+	{
+		this.storeDocumentHierarchies(
+				Collections.singletonList(document), new BatchOptions()
+		);
+	}
+
+	/**
+	 * Stores <i>documentsPerBatch</i> Documents per transaction. All Para-
+	 * graphs, Sentences and Tokens of a Document are collected into parameter
+	 * lists first and then created with one UNWIND statement per type, plus
+	 * one per successor relationship. Creates the same nodes and relation-
+	 * ships as the single store methods.
+	 *
+	 * @param documents The Documents to insert.
+	 * @param options   Controls how many Documents share a transaction.
+	 * @throws QHException If anything goes wrong. Encapsulates underlying
+	 *                     Exceptions. Documents collected before the failing
+	 *                     one are stored nevertheless.
+	 */
+	@Override
+	public void storeDocumentHierarchies(
+			Iterable<JCas> documents,
+			BatchOptions options
+	) throws QHException
+	{
+		List<Map<String, Object>> hierarchies = new ArrayList<>();
+		try
+		{
+			for (JCas document : documents)
+			{
+				hierarchies.add(this.createHierarchyParameters(document));
+				if (hierarchies.size() >= options.getDocumentsPerBatch())
+				{
+					this.writeHierarchies(hierarchies);
+				}
+			}
+		} catch (RuntimeException e)
+		{
+			this.writeHierarchies(hierarchies);
+			throw e instanceof QHException
+					? (QHException) e
+					: new QHException(e);
+		}
+		this.writeHierarchies(hierarchies);
+	}
+
+	/**
+	 * Collects the Document and all of its elements into query parameters.
+	 *
+	 * @param document The Document to convert.
+	 * @return The parameters for the statements in #writeHierarchies.
+	 */
+	protected Map<String, Object> createHierarchyParameters(JCas document)
+	{
+		final String documentId = DocumentMetaData.get(document)
+				.getDocumentId();
+
+		List<Map<String, Object>> paragraphs = new ArrayList<>();
+		List<Map<String, Object>> sentences = new ArrayList<>();
+		List<Map<String, Object>> tokens = new ArrayList<>();
+		Set<String> lemmaValues = new HashSet<>();
+		Set<String> posValues = new HashSet<>();
+
+		String previousParagraphId = null;
+		for (Paragraph paragraph : JCasUtil.select(document, Paragraph.class))
+		{
+			String paragraphId = UUID.randomUUID().toString();
+			Map<String, Object> paragraphRow = new HashMap<>();
+			paragraphRow.put("paragraphId", paragraphId);
+			paragraphRow.put("previousId", previousParagraphId);
+			paragraphRow.put("begin", paragraph.getBegin());
+			paragraphRow.put("end", paragraph.getEnd());
+			paragraphs.add(paragraphRow);
+			previousParagraphId = paragraphId;
+
+			String previousSentenceId = null;
+			for (Sentence sentence : JCasUtil.selectCovered(
+					document, Sentence.class, paragraph
+			))
+			{
+				String sentenceId = UUID.randomUUID().toString();
+				Map<String, Object> sentenceRow = new HashMap<>();
+				sentenceRow.put("sentenceId", sentenceId);
+				sentenceRow.put("paragraphId", paragraphId);
+				sentenceRow.put("previousId", previousSentenceId);
+				sentenceRow.put("begin", sentence.getBegin());
+				sentenceRow.put("end", sentence.getEnd());
+				sentences.add(sentenceRow);
+				previousSentenceId = sentenceId;
+
+				String previousTokenId = null;
+				for (Token token : JCasUtil.selectCovered(
+						document, Token.class, sentence
+				))
+				{
+					String tokenId = UUID.randomUUID().toString();
+					Map<String, Object> tokenRow = new HashMap<>();
+					tokenRow.put("tokenId", tokenId);
+					tokenRow.put("paragraphId", paragraphId);
+					tokenRow.put("sentenceId", sentenceId);
+					tokenRow.put("previousId", previousTokenId);
+					tokenRow.put("begin", token.getBegin());
+					tokenRow.put("end", token.getEnd());
+					tokenRow.put("value", token.getCoveredText());
+					tokenRow.put("lemma", token.getLemma().getValue());
+					tokenRow.put("pos", token.getPos().getPosValue());
+					tokens.add(tokenRow);
+					lemmaValues.add(token.getLemma().getValue());
+					posValues.add(token.getPos().getPosValue());
+					previousTokenId = tokenId;
+				}
+			}
+		}
+
+		Map<String, Object> queryParams = new HashMap<>();
+		queryParams.put("documentId", documentId);
+		queryParams.put("text", document.getDocumentText());
+		queryParams.put("language", document.getDocumentLanguage());
+		queryParams.put("paragraphs", paragraphs);
+		queryParams.put("sentences", sentences);
+		queryParams.put("tokens", tokens);
+		queryParams.put("lemmata", new ArrayList<>(lemmaValues));
+		queryParams.put("posValues", new ArrayList<>(posValues));
+
+		return queryParams;
+	}
+
+	/**
+	 * Creates the collected Documents in one transaction.
+	 *
+	 * @param hierarchies Parameters created by #createHierarchyParameters.
+	 *                    Is empty afterwards.
+	 * @throws QHException If the transaction fails. Nothing of the Documents
+	 *                     is stored in that case.
+	 */
+	protected void writeHierarchies(List<Map<String, Object>> hierarchies)
+			throws QHException
+	{
+		if (hierarchies.isEmpty())
+		{
+			return;
+		}
+
+		try (Session session = this.driver.session())
+		{
+			session.writeTransaction(tx -> {
+				for (Map<String, Object> hierarchy : hierarchies)
+				{
+					tx.run("MERGE (d:" + ElementType.Document + " {id:{documentId}}) "
+							+ "SET d.text = {text}, d.language = {language}", hierarchy);
+
+					// Lemmata and POS may already exist, so they are merged.
+					tx.run("MATCH (d:" + ElementType.Document + " {id:{documentId}}) "
+							+ "UNWIND {lemmata} AS value "
+							+ "MERGE (l:" + ElementType.Lemma + " {value:value}) "
+							+ "MERGE (d)-[:" + Relationship.DocumentHasLemma + "]->(l)", hierarchy);
+					tx.run("UNWIND {posValues} AS value "
+							+ "MERGE (:" + ElementType.Pos + " {value:value})", hierarchy);
+
+					// All other elements are new, so they are simply created.
+					tx.run("MATCH (d:" + ElementType.Document + " {id:{documentId}}) "
+							+ "UNWIND {paragraphs} AS row "
+							+ "CREATE (p:" + ElementType.Paragraph + " {paragraphId:row.paragraphId, id:{documentId}, begin:row.begin, end:row.end}) "
+							+ "CREATE (d)-[:" + Relationship.DocumentHasParagraph + "]->(p)", hierarchy);
+					tx.run("MATCH (d:" + ElementType.Document + " {id:{documentId}}) "
+							+ "UNWIND {sentences} AS row "
+							+ "MATCH (p:" + ElementType.Paragraph + " {paragraphId:row.paragraphId}) "
+							+ "CREATE (s:" + ElementType.Sentence + " {sentenceId:row.sentenceId, id:{documentId}, begin:row.begin, end:row.end}) "
+							+ "CREATE (d)-[:" + Relationship.DocumentHasSentence + "]->(s) "
+							+ "CREATE (s)-[:" + Relationship.SentenceInParagraph + "]->(p)", hierarchy);
+					tx.run("MATCH (d:" + ElementType.Document + " {id:{documentId}}) "
+							+ "UNWIND {tokens} AS row "
+							+ "MATCH (p:" + ElementType.Paragraph + " {paragraphId:row.paragraphId}) "
+							+ "MATCH (s:" + ElementType.Sentence + " {sentenceId:row.sentenceId}) "
+							+ "MATCH (l:" + ElementType.Lemma + " {value:row.lemma}) "
+							+ "MATCH (pos:" + ElementType.Pos + " {value:row.pos}) "
+							+ "CREATE (t:" + ElementType.Token + " {tokenId:row.tokenId, id:{documentId}, begin:row.begin, end:row.end, value:row.value}) "
+							+ "CREATE (d)-[:" + Relationship.DocumentHasToken + "]->(t) "
+							+ "CREATE (t)-[:" + Relationship.TokenInParagraph + "]->(p) "
+							+ "CREATE (t)-[:" + Relationship.TokenInSentence + "]->(s) "
+							+ "CREATE (t)-[:" + Relationship.TokenHasLemma + "]->(l) "
+							+ "CREATE (t)-[:" + Relationship.TokenAtPos + "]->(pos)", hierarchy);
+
+					// Successor relationships are created only after all nodes
+					// exist, since a statement is not guaranteed to see the nodes
+					// it created itself.
+					tx.run("UNWIND {paragraphs} AS row "
+							+ "WITH row WHERE row.previousId IS NOT NULL "
+							+ "MATCH (p_prev:" + ElementType.Paragraph + " {paragraphId:row.previousId}) "
+							+ "MATCH (p:" + ElementType.Paragraph + " {paragraphId:row.paragraphId}) "
+							+ "CREATE (p_prev)-[:" + Relationship.NextParagraph + "]->(p)", hierarchy);
+					tx.run("UNWIND {sentences} AS row "
+							+ "WITH row WHERE row.previousId IS NOT NULL "
+							+ "MATCH (s_prev:" + ElementType.Sentence + " {sentenceId:row.previousId}) "
+							+ "MATCH (s:" + ElementType.Sentence + " {sentenceId:row.sentenceId}) "
+							+ "CREATE (s_prev)-[:" + Relationship.NextSentence + "]->(s)", hierarchy);
+					tx.run("UNWIND {tokens} AS row "
+							+ "WITH row WHERE row.previousId IS NOT NULL "
+							+ "MATCH (t_prev:" + ElementType.Token + " {tokenId:row.previousId}) "
+							+ "MATCH (t:" + ElementType.Token + " {tokenId:row.tokenId}) "
+							+ "CREATE (t_prev)-[:" + Relationship.NextToken + "]->(t)", hierarchy);
+				}
+
+				tx.success();
+				return 1;
+			});
+		} catch (RuntimeException e)
+		{
+			List<Object> documentIds = new ArrayList<>();
+			for (Map<String, Object> hierarchy : hierarchies)
+			{
+				documentIds.add(hierarchy.get("documentId"));
+			}
+			logger.severe("There was an error when trying to insert "
+					+ documentIds + ".");
+			throw new QHException(e);
+		} finally
+		{
+			hierarchies.clear();
+		}
+	}
+
 	/**
 	 * @param paragraph           The Paragraph.
 	 * @param documentId          The id of the document in which the paragraph
@@ -332,13 +606,20 @@ public class Neo4jQueryHandler extends AbstractQueryHandler
 	 * @return The ids of all Documents stored in the database.
 	 */
 	@Override
-	public Iterable<String> getDocumentIds()
+	public List<String> getDocumentIds(String afterId, int limit)
 	{
 		ArrayList<String> ids = new ArrayList<>();
 		try (Session session = this.driver.session())
 		{
 			StatementResult result = session.readTransaction(tx -> {
-				return tx.run("MATCH (d:" + ElementType.Document + ") RETURN d.id as id");
+				Map<String, Object> queryParams = new HashMap<>();
+				queryParams.put("afterId", afterId);
+				queryParams.put("limit", limit);
+				// The range on the unique id can be answered by the index of
+				// the constraint.
+				return tx.run("MATCH (d:" + ElementType.Document + ") "
+						+ (afterId == null ? "" : "WHERE d.id > {afterId} ")
+						+ "RETURN d.id as id ORDER BY d.id LIMIT {limit}", queryParams);
 			});
 			for (Record record : result.list())
 			{
@@ -371,6 +652,10 @@ public class Neo4jQueryHandler extends AbstractQueryHandler
 	}
 
 	/**
+	 * Reads the Document and then all of its Tokens together with their
+	 * Lemmata and Pos in a single query, ordered by their position. The rows
+	 * are added to the CAS while they are streamed from the server.
+	 *
 	 * @param aCAS       The CAS to populate with the found data.
 	 * @param documentId The document whose data shall be used.
 	 * @throws DocumentNotFoundException If the documentId can't be found in db.
@@ -399,34 +684,34 @@ public class Neo4jQueryHandler extends AbstractQueryHandler
 					meta.setDocumentId(document.get("id").asString());
 					aCAS.setDocumentLanguage(document.get("language").asString());
 					aCAS.setDocumentText(document.get("text").asString());
-					StatementResult tokensResult = tx.run("MATCH (t:" + ElementType.Token + " {id:{documentId}}) RETURN t as token", documentParams);
+					JCas jCas = aCAS.getJCas();
+					// Only the needed properties are projected, so that the
+					// nodes themselves are not transferred.
+					StatementResult tokensResult = tx.run("MATCH (t:" + ElementType.Token + " {id:{documentId}}) "
+							+ "OPTIONAL MATCH (t)-[:" + Relationship.TokenHasLemma + "]->(l:" + ElementType.Lemma + ") "
+							+ "OPTIONAL MATCH (t)-[:" + Relationship.TokenAtPos + "]->(pos:" + ElementType.Pos + ") "
+							+ "RETURN t.begin AS begin, t.end AS end, l.value AS lemma, pos.value AS pos "
+							+ "ORDER BY begin, end", documentParams);
 					while (tokensResult.hasNext())
 					{
-						Value foundToken = tokensResult.next().get("token");
+						Record row = tokensResult.next();
+						int begin = row.get("begin").asInt();
+						int end = row.get("end").asInt();
 
-						Token xmiToken = new Token(aCAS.getJCas(), foundToken.get("begin").asInt(), foundToken.get("end").asInt());
+						Token xmiToken = new Token(jCas, begin, end);
 
-						Map<String, Object> tokenParams = new HashMap<>();
-						tokenParams.put("documentId", documentId);
-						tokenParams.put("tokenBegin", foundToken.get("begin").asInt());
-						tokenParams.put("tokenEnd", foundToken.get("end").asInt());
-						tokenParams.put("tokenValue", foundToken.get("value").asString());
-						StatementResult lemmasResult = tx.run("MATCH (t:" + ElementType.Token + " {id:{documentId}, begin:{tokenBegin}, end:{tokenEnd}, value:{tokenValue}})-[:" + Relationship.TokenHasLemma + "]->(l:" + ElementType.Lemma + ") RETURN l as lemma", tokenParams);
-						while (lemmasResult.hasNext())
+						if (!row.get("lemma").isNull())
 						{
-							Value foundLemma = lemmasResult.next().get("lemma");
-							Lemma lemma = new Lemma(aCAS.getJCas(), xmiToken.getBegin(), xmiToken.getEnd());
-							lemma.setValue(foundLemma.get("value").asString());
+							Lemma lemma = new Lemma(jCas, begin, end);
+							lemma.setValue(row.get("lemma").asString());
 							lemma.addToIndexes();
 							xmiToken.setLemma(lemma);
 						}
 
-						StatementResult posResult = tx.run("MATCH (t:" + ElementType.Token + " {id:{documentId}, begin:{tokenBegin}, end:{tokenEnd}, value:{tokenValue}})-[:" + Relationship.TokenAtPos + "]->(pos:" + ElementType.Pos + ") RETURN pos", tokenParams);
-						while (posResult.hasNext())
+						if (!row.get("pos").isNull())
 						{
-							Value foundPos = posResult.next().get("pos");
-							POS pos = new POS(aCAS.getJCas(), xmiToken.getBegin(), xmiToken.getEnd());
-							pos.setPosValue(foundPos.get("value").asString());
+							POS pos = new POS(jCas, begin, end);
+							pos.setPosValue(row.get("pos").asString());
 							pos.addToIndexes();
 							xmiToken.setPos(pos);
 						}
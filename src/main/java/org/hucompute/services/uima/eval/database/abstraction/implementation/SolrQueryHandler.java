@@ -1,12 +1,20 @@
 package org.hucompute.services.uima.eval.database.abstraction.implementation;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Paragraph;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
-import org.apache.http.client.fluent.Request;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicNameValuePair;
 import org.apache.uima.cas.CAS;
+import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.hucompute.services.uima.eval.database.abstraction.AbstractQueryHandler;
 import org.hucompute.services.uima.eval.database.abstraction.ElementType;
@@ -15,19 +23,74 @@ import org.hucompute.services.uima.eval.database.abstraction.exceptions.QHExcept
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.TypeHasNoValueException;
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.TypeNotCountableException;
 import org.hucompute.services.uima.eval.database.connection.Connections;
+import org.hucompute.services.uima.eval.database.connection.HttpTransport;
+import org.hucompute.services.uima.eval.database.connection.RequestBuffer;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-
+import java.util.function.Consumer;
+
+/**
+ * Solr only stores one flat index entry per document. Paragraphs, Sentences
+ * and Tokens are not stored on their own, but the values of the Tokens,
+ * Lemmata and Pos are indexed as multi-valued fields with term vectors and
+ * the amount of each element is stored with the document.
+ * So all the counting and calculating methods are answered by the index
+ * (facets, terms, term vectors and function queries) in one request, while
+ * the Documents themselves can't be restored from Solr.
+ * <p>
+ * Documents are written with a streaming JSON generator into a buffer and
+ * sent as one array per batch. A document that fails while it is written is
+ * removed from the buffer again, without affecting the rest of the batch. The batch is sent after SOLR_BATCH_DOCUMENTS
+ * documents or, if SOLR_FLUSH_INTERVAL is set, when a document is added
+ * that many milliseconds after the batch was started.
+ * Updates don't wait until they are visible. They are committed by Solr
+ * within SOLR_COMMIT_WITHIN milliseconds, if set, and explicitly in
+ * #commitIngest.
+ */
 public class SolrQueryHandler extends AbstractQueryHandler
 {
+	/**
+	 * Amount of documents per request when paging through the whole index.
+	 */
+	protected static final int PAGE_SIZE = 1000;
+	protected static final int DEFAULT_BATCH_DOCUMENTS = 1;
+	/**
+	 * Every document gets a generator of its own, that must not close the
+	 * shared buffer.
+	 */
+	protected static final JsonFactory JSON_FACTORY = new JsonFactory()
+			.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
 	protected String rootEndpoint;
 
+	protected int batchDocuments;
+	protected long flushInterval;
+	protected long commitWithin;
+
+	protected RequestBuffer documentBuffer;
+	protected int pendingDocuments;
+	protected long batchStart;
+
 	public SolrQueryHandler(String endpoint)
 	{
 		this.rootEndpoint = endpoint + "/solr/" + System.getenv("SOLR_CORE");
+
+		String batchDocuments = System.getenv("SOLR_BATCH_DOCUMENTS");
+		this.batchDocuments = (batchDocuments == null || batchDocuments.isEmpty())
+				? DEFAULT_BATCH_DOCUMENTS : Integer.parseInt(batchDocuments);
+		String flushInterval = System.getenv("SOLR_FLUSH_INTERVAL");
+		this.flushInterval = (flushInterval == null || flushInterval.isEmpty())
+				? 0 : Long.parseLong(flushInterval);
+		String commitWithin = System.getenv("SOLR_COMMIT_WITHIN");
+		this.commitWithin = (commitWithin == null || commitWithin.isEmpty())
+				? 0 : Long.parseLong(commitWithin);
+
+		this.documentBuffer = new RequestBuffer();
+		this.pendingDocuments = 0;
 	}
 
 	@Override
@@ -56,12 +119,13 @@ public class SolrQueryHandler extends AbstractQueryHandler
 	@Override
 	public void clearDatabase() throws IOException
 	{
-		Request.Post(this.rootEndpoint + "/update")
-				.bodyString(
-						"<delete><query>*:*</query></delete>",
-						ContentType.create("text/xml")
-				)
-				.execute();
+		HttpPost request = new HttpPost(this.rootEndpoint + "/update");
+		request.setEntity(new StringEntity(
+				"<delete><query>*:*</query></delete>",
+				ContentType.create("text/xml")
+		));
+
+		HttpTransport.getInstance().executeForString(request);
 	}
 
 	@Override
@@ -70,32 +134,226 @@ public class SolrQueryHandler extends AbstractQueryHandler
 		final String documentId = DocumentMetaData.get(document)
 				.getDocumentId();
 
-		String url = this.rootEndpoint + "/update";
+		// The array's brackets and separators are written by hand, so that a
+		// failed document can be cut off without breaking the array.
+		final int documentStart = this.documentBuffer.size();
+		try
+		{
+			if (this.pendingDocuments == 0)
+			{
+				this.documentBuffer.write('[');
+				this.batchStart = System.currentTimeMillis();
+			} else
+			{
+				this.documentBuffer.write(',');
+			}
+			try (JsonGenerator writer = JSON_FACTORY.createGenerator(
+					this.documentBuffer, JsonEncoding.UTF8
+			))
+			{
+				this.writeSolrDocument(writer, document, documentId);
+			}
+			this.pendingDocuments++;
+		} catch (IOException e)
+		{
+			e.printStackTrace();
+			this.documentBuffer.truncate(documentStart);
+			throw new QHException(e);
+		} catch (RuntimeException e)
+		{
+			this.documentBuffer.truncate(documentStart);
+			throw e;
+		}
+
+		if (this.pendingDocuments >= this.batchDocuments
+				|| (this.flushInterval > 0 && System.currentTimeMillis()
+				- this.batchStart >= this.flushInterval))
+		{
+			this.flushDocuments();
+		}
+
+		return documentId;
+	}
+
+	/**
+	 * Writes the values and amounts of all elements in the document.
+	 *
+	 * @param writer     The generator to write the index entry to.
+	 * @param document   The Document.
+	 * @param documentId The Document's id.
+	 */
+	protected void writeSolrDocument(
+			JsonGenerator writer, JCas document, String documentId
+	) throws IOException
+	{
+		Collection<Token> tokens = JCasUtil.select(document, Token.class);
+		Set<String> distinctLemmata = new HashSet<>();
+		Set<String> distinctPos = new HashSet<>();
 
-		JSONObject command = new JSONObject();
-		JSONObject add = new JSONObject();
-		command.put("add", add);
-		JSONObject doc = new JSONObject();
-		add.put("doc", doc);
-		doc.put("id", documentId);
-		doc.put("text", document.getDocumentText());
+		writer.writeStartObject();
+		writer.writeStringField("id", documentId);
+		writer.writeStringField("text", document.getDocumentText());
+
+		writer.writeArrayFieldStart("tokens");
+		for (Token token : tokens)
+		{
+			writer.writeString(token.getCoveredText());
+		}
+		writer.writeEndArray();
+
+		writer.writeArrayFieldStart("lemmata");
+		for (Token token : tokens)
+		{
+			String lemmaValue = token.getLemma().getValue();
+			writer.writeString(lemmaValue);
+			distinctLemmata.add(lemmaValue);
+		}
+		writer.writeEndArray();
+
+		writer.writeArrayFieldStart("pos");
+		for (Token token : tokens)
+		{
+			String posValue = token.getPos().getPosValue();
+			writer.writeString(posValue);
+			distinctPos.add(posValue);
+		}
+		writer.writeEndArray();
+
+		this.writeLemmaNGrams(writer, document);
+		writer.writeNumberField(
+				"paragraphCount",
+				JCasUtil.select(document, Paragraph.class).size()
+		);
+		writer.writeNumberField(
+				"sentenceCount",
+				JCasUtil.select(document, Sentence.class).size()
+		);
+		writer.writeNumberField("tokenCount", tokens.size());
+		writer.writeNumberField("lemmaCount", distinctLemmata.size());
+		writer.writeNumberField("posCount", distinctPos.size());
+		writer.writeEndObject();
+	}
+
+	/**
+	 * Writes the lemma bi- and trigrams of all sentences in the document.
+	 * They are built here instead of by Solr, so that no n-gram spans the
+	 * boundary between two sentences.
+	 *
+	 * @param writer   The generator to write the index entry to.
+	 * @param document The Document.
+	 */
+	protected void writeLemmaNGrams(JsonGenerator writer, JCas document)
+			throws IOException
+	{
+		List<String> biGrams = new ArrayList<>();
+		List<String> triGrams = new ArrayList<>();
+		for (Sentence sentence : JCasUtil.select(document, Sentence.class))
+		{
+			String previousValue = null;
+			String prevPreviousValue = null;
+			for (Token token : JCasUtil.selectCovered(
+					document, Token.class, sentence
+			))
+			{
+				String lemmaValue = token.getLemma().getValue();
+				if (previousValue != null)
+				{
+					biGrams.add(previousValue + "-" + lemmaValue);
+				}
+				if (prevPreviousValue != null)
+				{
+					triGrams.add(prevPreviousValue + "-" + previousValue
+							+ "-" + lemmaValue);
+				}
+				prevPreviousValue = previousValue;
+				previousValue = lemmaValue;
+			}
+		}
+
+		writer.writeArrayFieldStart("lemmaBiGrams");
+		for (String biGram : biGrams)
+		{
+			writer.writeString(biGram);
+		}
+		writer.writeEndArray();
+
+		writer.writeArrayFieldStart("lemmaTriGrams");
+		for (String triGram : triGrams)
+		{
+			writer.writeString(triGram);
+		}
+		writer.writeEndArray();
+	}
+
+	/**
+	 * Sends the buffered documents as one array and clears the buffer, even
+	 * if the request fails.
+	 */
+	protected void flushDocuments() throws QHException
+	{
+		if (this.pendingDocuments == 0)
+		{
+			return;
+		}
+
+		String url = this.rootEndpoint + "/update";
+		if (this.commitWithin > 0)
+		{
+			url += "?commitWithin=" + this.commitWithin;
+		}
 
 		try
 		{
-			Request.Post(url)
-					.addHeader("Accept", "application/json")
-					.bodyString(
-							command.toString(),
-							ContentType.create("application/json")
-					)
-					.execute();
+			this.documentBuffer.write(']');
+
+			HttpPost request = new HttpPost(url);
+			request.addHeader("Accept", "application/json");
+			request.setEntity(this.documentBuffer.toEntity(
+					ContentType.create("application/json", "UTF-8")
+			));
+
+			HttpTransport.getInstance().executeForString(request);
 		} catch (IOException e)
 		{
 			e.printStackTrace();
 			throw new QHException(e);
+		} finally
+		{
+			this.documentBuffer.reset();
+			this.pendingDocuments = 0;
 		}
+	}
 
-		return documentId;
+	/**
+	 * Sends the last batch.
+	 */
+	@Override
+	public void finishIngest() throws QHException
+	{
+		this.flushDocuments();
+	}
+
+	/**
+	 * Commits explicitly, since the updates themselves don't wait for it.
+	 */
+	@Override
+	public void commitIngest() throws QHException
+	{
+		HttpPost request = new HttpPost(this.rootEndpoint + "/update");
+		request.addHeader("Accept", "application/json");
+		request.setEntity(new StringEntity(
+				"{\"commit\":{}}",
+				ContentType.create("application/json", "UTF-8")
+		));
+
+		try
+		{
+			HttpTransport.getInstance().executeForString(request);
+		} catch (IOException e)
+		{
+			e.printStackTrace();
+			throw new QHException(e);
+		}
 	}
 
 	@Override
@@ -116,24 +374,267 @@ public class SolrQueryHandler extends AbstractQueryHandler
 		throw new UnsupportedOperationException();
 	}
 
+	/**
+	 * Sends the parameters as a form to one of the core's request handlers.
+	 *
+	 * @param handler    The path of the request handler, e.g. "/select".
+	 * @param parameters Alternatingly names and values of the parameters.
+	 * @return the server's response.
+	 */
+	protected JSONObject sendQuery(String handler, String... parameters)
+	{
+		List<NameValuePair> form = new ArrayList<>();
+		form.add(new BasicNameValuePair("wt", "json"));
+		// Render named lists as objects instead of flat arrays.
+		form.add(new BasicNameValuePair("json.nl", "map"));
+		for (int i = 0; i < parameters.length; i += 2)
+		{
+			form.add(new BasicNameValuePair(parameters[i], parameters[i + 1]));
+		}
+
+		HttpPost request = new HttpPost(this.rootEndpoint + handler);
+		request.addHeader("Accept", "application/json");
+		request.setEntity(new UrlEncodedFormEntity(form, StandardCharsets.UTF_8));
+
+		try
+		{
+			return HttpTransport.getInstance().executeForJSON(request);
+		} catch (IOException e)
+		{
+			e.printStackTrace();
+			throw new QHException(e);
+		}
+	}
+
+	/**
+	 * @return The parameters followed by the additional ones.
+	 */
+	protected static String[] concat(String[] parameters, String... additional)
+	{
+		String[] result = Arrays.copyOf(
+				parameters, parameters.length + additional.length
+		);
+		System.arraycopy(
+				additional, 0, result, parameters.length, additional.length
+		);
+		return result;
+	}
+
+	/**
+	 * Selects exactly the document with the given id.
+	 *
+	 * @param documentId The Document's id.
+	 * @param fields     The fields or functions to return.
+	 * @return The document.
+	 * @throws DocumentNotFoundException If the document does not exist.
+	 */
+	protected JSONObject selectDocument(String documentId, String fields, String... parameters)
+			throws DocumentNotFoundException
+	{
+		JSONArray docs = this.sendQuery("/select", concat(
+				parameters,
+				"q", "{!term f=id v=$documentId}",
+				"documentId", documentId,
+				"fl", fields,
+				"rows", "1"
+		))
+				.getJSONObject("response")
+				.getJSONArray("docs");
+		if (docs.length() == 0)
+		{
+			throw new DocumentNotFoundException();
+		}
+		return docs.getJSONObject(0);
+	}
+
+	/**
+	 * Pages through all documents matching the query with a cursor.
+	 *
+	 * @param consumer   Called for each document.
+	 * @param parameters Alternatingly names and values of the parameters,
+	 *                   including the query and the fields to return.
+	 */
+	protected void forEachDocument(
+			Consumer<JSONObject> consumer, String... parameters
+	)
+	{
+		String[] query = concat(
+				parameters,
+				"sort", "id asc",
+				"rows", String.valueOf(PAGE_SIZE),
+				"cursorMark", null
+		);
+
+		String cursorMark = "*";
+		String nextCursorMark = null;
+		while (!cursorMark.equals(nextCursorMark))
+		{
+			if (nextCursorMark != null)
+			{
+				cursorMark = nextCursorMark;
+			}
+			query[parameters.length + 5] = cursorMark;
+			JSONObject response = this.sendQuery("/select", query);
+
+			JSONArray docs = response.getJSONObject("response")
+					.getJSONArray("docs");
+			for (int i = 0; i < docs.length(); i++)
+			{
+				consumer.accept(docs.getJSONObject(i));
+			}
+			nextCursorMark = response.getString("nextCursorMark");
+		}
+	}
+
+	/**
+	 * @param field The field, whose term vectors are requested.
+	 * @param rows  The maximum amount of documents found by the query.
+	 * @param query A query for the documents.
+	 * @return The frequency of each term in field for each document found.
+	 */
+	protected Map<String, Map<String, Integer>> getTermVectors(
+			String field, int rows, String... query
+	)
+	{
+		JSONObject termVectors = this.sendQuery("/tvrh", concat(
+				query,
+				"tv.fl", field,
+				"tv.tf", "true",
+				"fl", "id",
+				"rows", String.valueOf(rows)
+		)).getJSONObject("termVectors");
+
+		Map<String, Map<String, Integer>> result = new LinkedHashMap<>();
+		for (String documentId : termVectors.keySet())
+		{
+			// Besides the documents there is the name of the unique key.
+			JSONObject documentVector = termVectors.optJSONObject(documentId);
+			if (documentVector == null)
+			{
+				continue;
+			}
+
+			Map<String, Integer> frequencies = new HashMap<>();
+			JSONObject terms = documentVector.optJSONObject(field);
+			if (terms != null)
+			{
+				for (String term : terms.keySet())
+				{
+					frequencies.put(
+							term, terms.getJSONObject(term).getInt("tf")
+					);
+				}
+			}
+			result.put(documentId, frequencies);
+		}
+		return result;
+	}
+
+	/**
+	 * @param field The field, whose terms are requested.
+	 * @return The total frequency of each term in field in all documents.
+	 */
+	protected Map<String, Integer> getTotalTermFrequencies(String field)
+	{
+		JSONObject terms = this.sendQuery(
+				"/terms",
+				"terms.fl", field,
+				"terms.limit", "-1",
+				"terms.sort", "index",
+				"terms.ttf", "true"
+		).getJSONObject("terms").getJSONObject(field);
+
+		Map<String, Integer> frequencies = new TreeMap<>();
+		for (String term : terms.keySet())
+		{
+			JSONObject frequency = terms.optJSONObject(term);
+			frequencies.put(
+					term,
+					(frequency != null)
+							? frequency.getInt("ttf")
+							: terms.getInt(term)
+			);
+		}
+		return frequencies;
+	}
+
+	/**
+	 * Repeats each term as often as it occurs, since n-grams are expected
+	 * once per occurrence.
+	 */
+	protected List<String> expandFrequencies(Map<String, Integer> frequencies)
+	{
+		List<String> terms = new ArrayList<>();
+		for (Map.Entry<String, Integer> entry : frequencies.entrySet())
+		{
+			for (int i = 0; i < entry.getValue(); i++)
+			{
+				terms.add(entry.getKey());
+			}
+		}
+		return terms;
+	}
+
+	/**
+	 * @param documentIds The Documents' ids.
+	 * @return Query parameters that match exactly the given documents.
+	 */
+	protected String[] queryForDocuments(Collection<String> documentIds)
+	{
+		return new String[]{
+				"q", "{!terms f=id separator=$separator v=$documentIds}",
+				"separator", "\n",
+				"documentIds", String.join("\n", documentIds)
+		};
+	}
+
 	@Override
 	public void checkIfDocumentExists(String documentId) throws DocumentNotFoundException
 	{
-		throw new UnsupportedOperationException();
+		this.selectDocument(documentId, "id");
 	}
 
+	/**
+	 * Pages over the sorted id field with a range filter.
+	 */
 	@Override
-	public Iterable<String> getDocumentIds()
+	public List<String> getDocumentIds(String afterId, int limit)
 	{
-		throw new UnsupportedOperationException();
+		String filter = (afterId == null)
+				? "*:*"
+				: "id:{\"" + afterId.replace("\\", "\\\\")
+				.replace("\"", "\\\"") + "\" TO *]";
+		JSONArray docs = this.sendQuery(
+				"/select",
+				"q", "*:*",
+				"fq", filter,
+				"fl", "id",
+				"sort", "id asc",
+				"rows", String.valueOf(limit)
+		)
+				.getJSONObject("response")
+				.getJSONArray("docs");
+
+		List<String> documentIds = new ArrayList<>();
+		for (int i = 0; i < docs.length(); i++)
+		{
+			documentIds.add(docs.getJSONObject(i).getString("id"));
+		}
+		return documentIds;
 	}
 
 	@Override
 	public Set<String> getLemmataForDocument(String documentId) throws DocumentNotFoundException
 	{
-		throw new UnsupportedOperationException();
+		this.checkIfDocumentExists(documentId);
+		return new TreeSet<>(
+				this.calculateRawTermFrequenciesInDocument(documentId).keySet()
+		);
 	}
 
+	/**
+	 * The XMI of the documents is not stored in Solr.
+	 */
 	@Override
 	public void populateCasWithDocument(CAS aCAS, String documentId) throws DocumentNotFoundException, QHException
 	{
@@ -143,156 +644,286 @@ public class SolrQueryHandler extends AbstractQueryHandler
 	@Override
 	public int countDocumentsContainingLemma(String lemma)
 	{
-		throw new UnsupportedOperationException();
+		return this.sendQuery(
+				"/select",
+				"q", "{!term f=lemmata v=$lemma}",
+				"lemma", lemma,
+				"rows", "0"
+		).getJSONObject("response").getInt("numFound");
 	}
 
+	/**
+	 * Sums up the amounts stored with each document and counts the distinct
+	 * values in one facet request.
+	 */
 	@Override
 	public int countElementsOfType(ElementType type) throws TypeNotCountableException
 	{
-		throw new UnsupportedOperationException();
+		JSONObject facets = this.sendQuery(
+				"/select",
+				"q", "*:*",
+				"rows", "0",
+				"json.facet", "{"
+						+ "Paragraph:\"sum(paragraphCount)\","
+						+ "Sentence:\"sum(sentenceCount)\","
+						+ "Token:\"sum(tokenCount)\","
+						+ "Lemma:\"unique(lemmata)\","
+						+ "Pos:\"unique(pos)\""
+						+ "}"
+		).getJSONObject("facets");
+
+		if (type == ElementType.Document)
+		{
+			return facets.getInt("count");
+		}
+		// Without documents, only the count is returned.
+		return (int) facets.optDouble(type.toString(), 0);
 	}
 
 	@Override
 	public int countElementsInDocumentOfType(String documentId, ElementType type) throws DocumentNotFoundException, TypeNotCountableException
 	{
-		throw new UnsupportedOperationException();
+		JSONObject doc = this.selectDocument(
+				documentId,
+				"paragraphCount,sentenceCount,tokenCount,lemmaCount,posCount"
+		);
+		switch (type)
+		{
+			case Document:
+				return 1;
+			case Paragraph:
+				return doc.getInt("paragraphCount");
+			case Sentence:
+				return doc.getInt("sentenceCount");
+			case Token:
+				return doc.getInt("tokenCount");
+			case Lemma:
+				return doc.getInt("lemmaCount");
+			case Pos:
+				return doc.getInt("posCount");
+			default:
+				throw new TypeNotCountableException();
+		}
+	}
+
+	/**
+	 * @return The field in which values of the given type are indexed.
+	 */
+	protected String getFieldForType(ElementType type)
+	{
+		switch (type)
+		{
+			case Token:
+				return "tokens";
+			case Lemma:
+				return "lemmata";
+			case Pos:
+				return "pos";
+			default:
+				return null;
+		}
 	}
 
+	/**
+	 * Tokens are counted for each occurence, while Lemmata and Pos are
+	 * singletons and thus counted at most once.
+	 */
 	@Override
 	public int countElementsOfTypeWithValue(ElementType type, String value) throws TypeNotCountableException, TypeHasNoValueException
 	{
-		throw new UnsupportedOperationException();
+		this.checkTypeHasValueField(type);
+
+		String function = (type == ElementType.Token)
+				? "totaltermfreq" : "docfreq";
+		JSONArray docs = this.sendQuery(
+				"/select",
+				"q", "*:*",
+				"rows", "1",
+				"fl", "amount:" + function + "(" + this.getFieldForType(type) + ",$value)",
+				"value", value
+		).getJSONObject("response").getJSONArray("docs");
+
+		if (docs.length() == 0)
+		{
+			return 0;
+		}
+		int amount = docs.getJSONObject(0).getInt("amount");
+		return (type == ElementType.Token) ? amount : Math.min(amount, 1);
 	}
 
 	@Override
 	public int countElementsInDocumentOfTypeWithValue(String documentId, ElementType type, String value) throws DocumentNotFoundException, TypeNotCountableException, TypeHasNoValueException
 	{
-		throw new UnsupportedOperationException();
+		this.checkTypeHasValueField(type);
+
+		int amount = this.selectDocument(
+				documentId,
+				"amount:termfreq(" + this.getFieldForType(type) + ",$value)",
+				"value", value
+		).getInt("amount");
+		return (type == ElementType.Token) ? amount : Math.min(amount, 1);
 	}
 
 	@Override
 	public Map<String, Integer> countOccurencesForEachLemmaInAllDocuments()
 	{
-		throw new UnsupportedOperationException();
+		return this.getTotalTermFrequencies("lemmata");
+	}
+
+	/**
+	 * Adds the type token ratio of the given document to the map.
+	 */
+	protected void putTTR(Map<String, Double> ttrMap, JSONObject doc)
+	{
+		int tokenCount = doc.getInt("tokenCount");
+		ttrMap.put(
+				doc.getString("id"),
+				(tokenCount > 0)
+						? (double) doc.getInt("lemmaCount") / tokenCount
+						: 0.0
+		);
 	}
 
 	@Override
 	public Map<String, Double> calculateTTRForAllDocuments()
 	{
-		throw new UnsupportedOperationException();
+		Map<String, Double> ttrMap = new HashMap<>();
+		this.forEachDocument(
+				doc -> this.putTTR(ttrMap, doc),
+				"q", "*:*",
+				"fl", "id,tokenCount,lemmaCount"
+		);
+		return ttrMap;
 	}
 
 	@Override
 	public Double calculateTTRForDocument(String documentId) throws DocumentNotFoundException
 	{
-		throw new UnsupportedOperationException();
+		Map<String, Double> ttrMap = new HashMap<>();
+		this.putTTR(
+				ttrMap,
+				this.selectDocument(documentId, "id,tokenCount,lemmaCount")
+		);
+		return ttrMap.get(documentId);
 	}
 
 	@Override
 	public Map<String, Double> calculateTTRForCollectionOfDocuments(Collection<String> documentIds)
 	{
-		throw new UnsupportedOperationException();
+		Map<String, Double> ttrMap = new HashMap<>();
+		if (documentIds.isEmpty())
+		{
+			return ttrMap;
+		}
+
+		// missing documents in collections are ignored
+		this.forEachDocument(
+				doc -> this.putTTR(ttrMap, doc),
+				concat(
+						this.queryForDocuments(documentIds),
+						"fl", "id,tokenCount,lemmaCount"
+				)
+		);
+		return ttrMap;
 	}
 
 	@Override
 	public Map<String, Integer> calculateRawTermFrequenciesInDocument(String documentId) throws DocumentNotFoundException
 	{
-		throw new UnsupportedOperationException();
+		this.checkIfDocumentExists(documentId);
+		return this.getTermVectors(
+				"lemmata",
+				1,
+				"q", "{!term f=id v=$documentId}",
+				"documentId", documentId
+		).getOrDefault(documentId, new HashMap<>());
 	}
 
 	@Override
 	public Integer calculateRawTermFrequencyForLemmaInDocument(String lemma, String documentId) throws DocumentNotFoundException
 	{
-		throw new UnsupportedOperationException();
+		return this.selectDocument(
+				documentId,
+				"amount:termfreq(lemmata,$lemma)",
+				"lemma", lemma
+		).getInt("amount");
 	}
 
-	@Override
-	public Iterable<String> getBiGramsFromDocument(String documentId) throws UnsupportedOperationException, DocumentNotFoundException
+	protected Iterable<String> getNGramsFromDocument(
+			String field, String documentId
+	) throws DocumentNotFoundException
 	{
-		throw new UnsupportedOperationException();
+		this.checkIfDocumentExists(documentId);
+		return this.expandFrequencies(this.getTermVectors(
+				field,
+				1,
+				"q", "{!term f=id v=$documentId}",
+				"documentId", documentId
+		).getOrDefault(documentId, new HashMap<>()));
 	}
 
-	@Override
-	public Iterable<String> getBiGramsFromAllDocuments() throws UnsupportedOperationException
+	protected Iterable<String> getNGramsFromDocumentsInCollection(
+			String field, Collection<String> documentIds
+	)
 	{
-		List<String> biGrams = new ArrayList<>();
-		try
+		List<String> nGrams = new ArrayList<>();
+		if (documentIds.isEmpty())
 		{
-			JSONObject response = new JSONObject(
-					Request.Get(this.rootEndpoint + "/terms?terms.fl=biGrams&terms.limit=-1&terms.sort=index")
-							.addHeader("Accept", "application/json")
-							.execute()
-							.returnContent()
-							.toString()
-			);
-
-			JSONArray terms = response
-					.getJSONObject("terms")
-					.getJSONArray("biGrams");
-
-			// Steps of two, since every second element is the frequency of the
-			// biGram before.
-			for (int i = 0; i < terms.length(); i += 2)
-			{
-				biGrams.add(terms.getString(i));
-			}
+			return nGrams;
+		}
 
-			return biGrams;
-		} catch (IOException e)
+		for (Map<String, Integer> frequencies : this.getTermVectors(
+				field,
+				documentIds.size(),
+				this.queryForDocuments(documentIds)
+		).values())
 		{
-			e.printStackTrace();
-			return biGrams;
+			nGrams.addAll(this.expandFrequencies(frequencies));
 		}
+		return nGrams;
+	}
+
+	@Override
+	public Iterable<String> getBiGramsFromDocument(String documentId) throws UnsupportedOperationException, DocumentNotFoundException
+	{
+		return this.getNGramsFromDocument("lemmaBiGrams", documentId);
+	}
+
+	@Override
+	public Iterable<String> getBiGramsFromAllDocuments() throws UnsupportedOperationException
+	{
+		return this.expandFrequencies(
+				this.getTotalTermFrequencies("lemmaBiGrams")
+		);
 	}
 
 	@Override
 	public Iterable<String> getBiGramsFromDocumentsInCollection(Collection<String> documentIds) throws UnsupportedOperationException, DocumentNotFoundException
 	{
-		throw new UnsupportedOperationException();
+		return this.getNGramsFromDocumentsInCollection(
+				"lemmaBiGrams", documentIds
+		);
 	}
 
 	@Override
 	public Iterable<String> getTriGramsFromDocument(String documentId) throws UnsupportedOperationException, DocumentNotFoundException
 	{
-		throw new UnsupportedOperationException();
+		return this.getNGramsFromDocument("lemmaTriGrams", documentId);
 	}
 
 	@Override
 	public Iterable<String> getTriGramsFromAllDocuments() throws UnsupportedOperationException
 	{
-		List<String> triGrams = new ArrayList<>();
-		try
-		{
-			JSONObject response = new JSONObject(
-					Request.Get(this.rootEndpoint + "/terms?terms.fl=triGrams&terms.limit=-1&terms.sort=index")
-							.addHeader("Accept", "application/json")
-							.execute()
-							.returnContent()
-							.toString()
-			);
-
-			JSONArray terms = response
-					.getJSONObject("terms")
-					.getJSONArray("triGrams");
-
-			// Steps of two, since every second element is the frequency of the
-			// biGram before.
-			for (int i = 0; i < terms.length(); i += 2)
-			{
-				triGrams.add(terms.getString(i));
-			}
-
-			return triGrams;
-		} catch (IOException e)
-		{
-			e.printStackTrace();
-			return triGrams;
-		}
+		return this.expandFrequencies(
+				this.getTotalTermFrequencies("lemmaTriGrams")
+		);
 	}
 
 	@Override
 	public Iterable<String> getTriGramsFromDocumentsInCollection(Collection<String> documentIds) throws UnsupportedOperationException, DocumentNotFoundException
 	{
-		throw new UnsupportedOperationException();
+		return this.getNGramsFromDocumentsInCollection(
+				"lemmaTriGrams", documentIds
+		);
 	}
 }
@@ -82,4 +82,18 @@ public abstract class Connection
 	{
 		return this.isEstablished;
 	}
+
+	/**
+	 * Checks whether an established connection can still be used. Called by
+	 * the ConnectionPool before an idle connection is leased again.
+	 * Implementations should override this, if their client can detect bro-
+	 * ken connections.
+	 *
+	 * @return True, if the connection can be leased again. By default, if it
+	 * is established.
+	 */
+	public boolean isHealthy()
+	{
+		return this.isEstablished();
+	}
 }
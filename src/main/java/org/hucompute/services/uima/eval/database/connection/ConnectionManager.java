@@ -16,6 +16,11 @@ import java.util.logging.Logger;
  *
  * In case the ConnectionManager or its Connections can not be injected some-
  * where, it is used as a Singleton.
+ *
+ * Users, which need a Connection for themselves (e.g. concurrent writers),
+ * lease them from a ConnectionPool per class via #lease or by requesting more
+ * than one Connection of a class. Leased Connections have to be returned via
+ * #release.
  */
 public class ConnectionManager
 {
@@ -26,13 +31,26 @@ public class ConnectionManager
 
 	protected static final Logger LOGGER = Logger.getLogger(ConnectionManager.class.getName());
 	protected static final int threadCount = 10;
+	protected static final int DEFAULT_POOL_SIZE = 8;
+	protected static final long DEFAULT_POOL_IDLE_TIMEOUT = 60000;
 
 	protected Map<Class<? extends Connection>, Future<Connection>> connections;
+	protected Map<Class<? extends Connection>, ConnectionPool> pools;
 	protected ExecutorService executor;
+	protected int poolSize;
+	protected long poolIdleTimeout;
 
 	private ConnectionManager()
 	{
+		String poolSize = System.getenv("CONNECTION_POOL_SIZE");
+		String poolIdleTimeout = System.getenv("CONNECTION_POOL_IDLE_TIMEOUT");
+		this.poolSize = (poolSize == null || poolSize.isEmpty())
+				? DEFAULT_POOL_SIZE : Integer.parseInt(poolSize);
+		this.poolIdleTimeout = (poolIdleTimeout == null || poolIdleTimeout.isEmpty())
+				? DEFAULT_POOL_IDLE_TIMEOUT : Long.parseLong(poolIdleTimeout);
+
 		this.connections = new HashMap<>();
+		this.pools = new ConcurrentHashMap<>();
 		this.executor = Executors.newFixedThreadPool(ConnectionManager.threadCount);
 		LOGGER.info("ConnectionManager initialized.");
 	}
@@ -51,12 +69,23 @@ public class ConnectionManager
 	 * If a connection is not registered yet, a future for it will be created.
 	 * If a connection is already established, it will be added to a response object.
 	 * If all connections are established, the Response is finished and the responseEndpoint called.
+	 * If more than one connection of a class is requested, they are leased from the class' pool instead
+	 * and added to the response as pooled connections.
 	 *
 	 * @param connectionRequest
 	 */
 	public Future<ConnectionResponse> submitRequest(ConnectionRequest connectionRequest)
 	{
 		Objects.requireNonNull(connectionRequest);
+		for (Class<? extends Connection> cls : connectionRequest.getRequestedConnections())
+		{
+			if (connectionRequest.getRequestedAmount(cls) > this.poolSize)
+			{
+				// Leasing would block forever.
+				throw new IllegalArgumentException("Requested more connections to " + cls.getName()
+						+ " than the pool size of " + this.poolSize + ".");
+			}
+		}
 
 		LOGGER.finer("Request received. Processing in new Thread...");
 		return this.executor.submit(() -> {
@@ -65,6 +94,10 @@ public class ConnectionManager
 
 			for (Class<? extends Connection> cls : connectionRequest.getRequestedConnections())
 			{
+				if (connectionRequest.getRequestedAmount(cls) > 1)
+				{
+					continue;
+				}
 				Future<Connection> connectionFuture = connections.get(cls);
 				if (connectionFuture == null)
 				{
@@ -93,8 +126,18 @@ public class ConnectionManager
 			// the first blocking execution.
 			for (Class<? extends Connection> cls : connectionRequest.getRequestedConnections())
 			{
-				Future<Connection> connectionFuture = connections.get(cls);
-				connectionResponse.addConnection(connectionFuture.get());
+				int amount = connectionRequest.getRequestedAmount(cls);
+				if (amount > 1)
+				{
+					for (int i = 0; i < amount; i++)
+					{
+						connectionResponse.addPooledConnection(this.lease(cls));
+					}
+				} else
+				{
+					Future<Connection> connectionFuture = connections.get(cls);
+					connectionResponse.addConnection(connectionFuture.get());
+				}
 			}
 			// Call endpoint with Response object.
 			LOGGER.info("Response built. Returning...");
@@ -102,12 +145,68 @@ public class ConnectionManager
 		});
 	}
 
+	/**
+	 * Leases a Connection of the given class from its pool. Blocks while all
+	 * of the pool's Connections are leased.
+	 *
+	 * @param cls The class of the Connection.
+	 * @return An established Connection, that has to be returned via #release.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public Connection lease(Class<? extends Connection> cls) throws InterruptedException
+	{
+		Objects.requireNonNull(cls);
+		return this.pools.computeIfAbsent(
+				cls, key -> new ConnectionPool(key, this.poolSize, this.poolIdleTimeout)
+		).lease();
+	}
+
+	/**
+	 * Returns a leased Connection to its pool.
+	 *
+	 * @param connection A Connection obtained via #lease.
+	 */
+	public void release(Connection connection)
+	{
+		Objects.requireNonNull(connection);
+		ConnectionPool pool = this.pools.get(connection.getClass());
+		if (pool == null)
+		{
+			throw new IllegalArgumentException("The Connection was not leased from the ConnectionManager.");
+		}
+		pool.release(connection);
+	}
+
+	/**
+	 * @return The maximum amount of Connections per class, that can be leased at once.
+	 */
+	public int getPoolSize()
+	{
+		return this.poolSize;
+	}
+
+	/**
+	 * @param cls The class of the Connections.
+	 * @return The pool for the class or null, if none was leased yet.
+	 */
+	public ConnectionPool getPool(Class<? extends Connection> cls)
+	{
+		return this.pools.get(cls);
+	}
+
 	/**
 	 * Closes all connections that are open.
 	 * Cancels all futures, which have not yet been completed.
+	 * Drains all pools. Connections, which are still leased, are closed when
+	 * they are returned.
 	 */
 	public void close()
 	{
+		for (ConnectionPool pool : this.pools.values())
+		{
+			pool.close();
+		}
+
 		for (Future<Connection> futureConnection : this.connections.values())
 		{
 			if (futureConnection.isDone())
@@ -0,0 +1,232 @@
+package org.hucompute.services.uima.eval.database.connection;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+/**
+ * Holds up to a maximum amount of Connections of one class, which are leased
+ * to one user at a time and returned afterwards.
+ * Idle Connections are checked with Connection#isHealthy before they are
+ * leased again and closed, if they have been idle for longer than the idle
+ * timeout. Both happens lazily, whenever a Connection is leased or returned.
+ *
+ * @author Hannes Leutloff <hannes.leutloff@aol.de>
+ */
+public class ConnectionPool
+{
+	protected static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+
+	protected static final class IdleConnection
+	{
+		protected final Connection connection;
+		protected final long since;
+
+		protected IdleConnection(Connection connection)
+		{
+			this.connection = connection;
+			this.since = System.currentTimeMillis();
+		}
+	}
+
+	protected final Class<? extends Connection> connectionClass;
+	protected final int maxSize;
+	protected final long idleTimeout;
+
+	protected final Semaphore permits;
+	/**
+	 * Most recently returned Connections first, so that the ones at the end
+	 * are evicted when they are not needed.
+	 */
+	protected final Deque<IdleConnection> idleConnections;
+	protected final Set<Connection> leasedConnections;
+	protected volatile boolean closed;
+
+	/**
+	 * @param connectionClass The class of the pooled Connections. Needs a con-
+	 *                        structor without arguments.
+	 * @param maxSize         Maximum amount of Connections, leased or idle.
+	 * @param idleTimeout     Milliseconds after which idle Connections are
+	 *                        closed.
+	 */
+	public ConnectionPool(
+			Class<? extends Connection> connectionClass,
+			int maxSize,
+			long idleTimeout
+	)
+	{
+		Objects.requireNonNull(connectionClass);
+		if (maxSize < 1)
+		{
+			throw new IllegalArgumentException(
+					"The pool has to hold at least one Connection."
+			);
+		}
+		this.connectionClass = connectionClass;
+		this.maxSize = maxSize;
+		this.idleTimeout = idleTimeout;
+		this.permits = new Semaphore(maxSize, true);
+		this.idleConnections = new ArrayDeque<>();
+		this.leasedConnections = ConcurrentHashMap.newKeySet();
+		this.closed = false;
+	}
+
+	/**
+	 * Returns an idle and healthy Connection or establishes a new one. Blocks
+	 * while the maximum amount of Connections is leased.
+	 *
+	 * @return A Connection, that has to be returned via #release.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public Connection lease() throws InterruptedException
+	{
+		if (this.closed)
+		{
+			throw new IllegalStateException("The pool is closed.");
+		}
+
+		this.permits.acquire();
+		try
+		{
+			Connection connection = null;
+			synchronized (this)
+			{
+				this.evictIdleConnections();
+				IdleConnection idleConnection;
+				while (connection == null
+						&& (idleConnection = this.idleConnections.pollFirst()) != null)
+				{
+					if (idleConnection.connection.isHealthy())
+					{
+						connection = idleConnection.connection;
+					} else
+					{
+						LOGGER.fine("Closing unhealthy Connection to "
+								+ this.connectionClass.getName() + ".");
+						idleConnection.connection.close();
+					}
+				}
+			}
+
+			if (connection == null)
+			{
+				connection = this.createConnection();
+			}
+			this.leasedConnections.add(connection);
+			return connection;
+		} catch (RuntimeException e)
+		{
+			this.permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a leased Connection to the pool. It is closed instead, if the
+	 * pool was closed in the meantime or the Connection is not healthy.
+	 *
+	 * @param connection A Connection leased from this pool.
+	 */
+	public void release(Connection connection)
+	{
+		if (!this.leasedConnections.remove(connection))
+		{
+			throw new IllegalArgumentException(
+					"The Connection was not leased from this pool."
+			);
+		}
+
+		if (this.closed || !connection.isHealthy())
+		{
+			connection.close();
+		} else
+		{
+			synchronized (this)
+			{
+				this.idleConnections.addFirst(new IdleConnection(connection));
+				this.evictIdleConnections();
+			}
+		}
+		this.permits.release();
+	}
+
+	/**
+	 * Closes all idle Connections, which were not used for longer than the
+	 * idle timeout.
+	 */
+	protected synchronized void evictIdleConnections()
+	{
+		long now = System.currentTimeMillis();
+		Iterator<IdleConnection> iterator =
+				this.idleConnections.descendingIterator();
+		while (iterator.hasNext())
+		{
+			IdleConnection idleConnection = iterator.next();
+			if (now - idleConnection.since < this.idleTimeout)
+			{
+				// All following Connections were returned later.
+				return;
+			}
+			iterator.remove();
+			idleConnection.connection.close();
+		}
+	}
+
+	protected Connection createConnection()
+	{
+		LOGGER.fine("Establishing new pooled Connection to "
+				+ this.connectionClass.getName() + ".");
+		try
+		{
+			Connection connection = this.connectionClass.getConstructor()
+					.newInstance();
+			connection.establish();
+			return connection;
+		} catch (InstantiationException | IllegalAccessException
+				| InvocationTargetException | NoSuchMethodException e)
+		{
+			throw new IllegalArgumentException(
+					this.connectionClass.getName() + " can not be instantiated.",
+					e
+			);
+		}
+	}
+
+	/**
+	 * Closes all idle Connections. Leased Connections are closed when they
+	 * are returned. No Connections can be leased afterwards.
+	 */
+	public void close()
+	{
+		this.closed = true;
+		synchronized (this)
+		{
+			for (IdleConnection idleConnection : this.idleConnections)
+			{
+				idleConnection.connection.close();
+			}
+			this.idleConnections.clear();
+		}
+	}
+
+	public int getMaxSize()
+	{
+		return this.maxSize;
+	}
+
+	public synchronized int getIdleCount()
+	{
+		return this.idleConnections.size();
+	}
+
+	public int getLeasedCount()
+	{
+		return this.leasedConnections.size();
+	}
+}
@@ -1,19 +1,19 @@
 package org.hucompute.services.uima.eval.database.connection;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 /**
  * The ConnectionRequest is used to transfer a number of Connection classes to the ConnectionManager.
  * It tells the Manager, which Connections should be prepared and who should be called with them.
+ * If more than one Connection of a class is requested, they are leased from the Manager's pool for that
+ * class and have to be returned via ConnectionManager#release.
  *
  * @author Hannes Leutloff <hannes.leutloff@aol.de>
  */
 public class ConnectionRequest
 {
 	private HashSet<Class<? extends Connection>> connections;
+	private Map<Class<? extends Connection>, Integer> amounts;
 
 	/**
 	 * Constructs the ConnectionRequest from an endpoint and creates an empty list for the connection classes.
@@ -21,6 +21,7 @@ public class ConnectionRequest
 	public ConnectionRequest()
 	{
 		this.connections = new HashSet<>();
+		this.amounts = new HashMap<>();
 	}
 
 	/**
@@ -29,6 +30,7 @@ public class ConnectionRequest
 	public ConnectionRequest(List<Class<? extends Connection>> connections) {
 		this.connections = new HashSet<>();
 		this.connections.addAll(connections);
+		this.amounts = new HashMap<>();
 	}
 
 	/**
@@ -41,6 +43,7 @@ public class ConnectionRequest
 	{
 		this.connections = new HashSet<>();
 		this.connections.addAll(Arrays.asList(connectionClasses));
+		this.amounts = new HashMap<>();
 	}
 
 	/**
@@ -53,6 +56,31 @@ public class ConnectionRequest
 		this.connections.add(connectionClass);
 	}
 
+	/**
+	 * Adds a connectionClass to the set and requests the given amount of pooled connections for it.
+	 *
+	 * @param connectionClass A class for which connections should be established.
+	 * @param amount          The amount of connections. One requests the shared connection.
+	 */
+	public void addRequestedConnection(Class<? extends Connection> connectionClass, int amount)
+	{
+		if (amount < 1)
+		{
+			throw new IllegalArgumentException("At least one connection has to be requested.");
+		}
+		this.connections.add(connectionClass);
+		this.amounts.put(connectionClass, amount);
+	}
+
+	/**
+	 * @param connectionClass A requested connection class.
+	 * @return the amount of connections requested for the class.
+	 */
+	public int getRequestedAmount(Class<? extends Connection> connectionClass)
+	{
+		return this.amounts.getOrDefault(connectionClass, 1);
+	}
+
 	/**
 	 * @return the set of connection classes.
 	 */
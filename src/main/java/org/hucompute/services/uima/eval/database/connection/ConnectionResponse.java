@@ -1,7 +1,6 @@
 package org.hucompute.services.uima.eval.database.connection;
 
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.*;
 
 /**
  * Used to encapsulate Connection objects returned from the ConnectionManager.
@@ -11,10 +10,12 @@ import java.util.HashMap;
 public class ConnectionResponse
 {
 	protected HashMap<Class<? extends Connection>, Connection> connections;
+	protected HashMap<Class<? extends Connection>, List<Connection>> pooledConnections;
 
 	public ConnectionResponse()
 	{
 		this.connections = new HashMap<>();
+		this.pooledConnections = new HashMap<>();
 	}
 
 	/**
@@ -43,4 +44,25 @@ public class ConnectionResponse
 	{
 		return this.connections.get(className);
 	}
+
+	/**
+	 * Add a connection object leased from a pool.
+	 *
+	 * @param connection Established connection object.
+	 */
+	public void addPooledConnection(Connection connection)
+	{
+		this.pooledConnections
+				.computeIfAbsent(connection.getClass(), cls -> new ArrayList<>())
+				.add(connection);
+	}
+
+	/**
+	 * @param className The name of a connection class.
+	 * @return the connections leased for the class or an empty list.
+	 */
+	public List<Connection> getPooledConnections(Class<? extends Connection> className)
+	{
+		return this.pooledConnections.getOrDefault(className, new ArrayList<>());
+	}
 }
@@ -0,0 +1,350 @@
+package org.hucompute.services.uima.eval.database.connection;
+
+import com.google.common.io.CountingInputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Shared HTTP client for the databases that are only reachable via HTTP
+ * (Solr and Blazegraph).
+ * Connections are pooled with a limit per route and kept alive between re-
+ * quests, so that the handlers don't open a new socket for every query.
+ *
+ * Every request is counted per route (scheme, host and port) together with
+ * the bytes sent and received and the time until the response was consumed.
+ *
+ * Like the ConnectionManager, it is used as a Singleton.
+ */
+public class HttpTransport
+{
+	private static final class InstanceHolder
+	{
+		static HttpTransport INSTANCE = new HttpTransport();
+	}
+
+	protected static final Logger LOGGER = Logger.getLogger(HttpTransport.class.getName());
+
+	protected static final int DEFAULT_MAX_CONNECTIONS = 64;
+	protected static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 16;
+	/**
+	 * Used when the server does not send a Keep-Alive header.
+	 */
+	protected static final long DEFAULT_KEEP_ALIVE_MILLIS = 30000;
+
+	protected PoolingHttpClientConnectionManager connectionManager;
+	protected CloseableHttpClient client;
+	protected Map<String, Metrics> metrics;
+
+	private HttpTransport()
+	{
+		String maxConnections = System.getenv("HTTP_MAX_CONNECTIONS");
+		String maxConnectionsPerRoute = System.getenv("HTTP_MAX_CONNECTIONS_PER_ROUTE");
+
+		this.connectionManager = new PoolingHttpClientConnectionManager();
+		this.connectionManager.setMaxTotal(
+				(maxConnections == null || maxConnections.isEmpty())
+						? DEFAULT_MAX_CONNECTIONS
+						: Integer.parseInt(maxConnections)
+		);
+		this.connectionManager.setDefaultMaxPerRoute(
+				(maxConnectionsPerRoute == null || maxConnectionsPerRoute.isEmpty())
+						? DEFAULT_MAX_CONNECTIONS_PER_ROUTE
+						: Integer.parseInt(maxConnectionsPerRoute)
+		);
+		this.connectionManager.setValidateAfterInactivity(1000);
+
+		this.client = HttpClients.custom()
+				.setConnectionManager(this.connectionManager)
+				.setKeepAliveStrategy((response, context) -> {
+					long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE
+							.getKeepAliveDuration(response, context);
+					return keepAlive > 0 ? keepAlive : DEFAULT_KEEP_ALIVE_MILLIS;
+				})
+				.evictExpiredConnections()
+				.evictIdleConnections(DEFAULT_KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS)
+				.build();
+		this.metrics = new ConcurrentHashMap<>();
+		LOGGER.info("HttpTransport initialized.");
+	}
+
+	public static HttpTransport getInstance()
+	{
+		if (InstanceHolder.INSTANCE == null)
+		{
+			InstanceHolder.INSTANCE = new HttpTransport();
+		}
+		return InstanceHolder.INSTANCE;
+	}
+
+	/**
+	 * Executes the request and parses the response body while it is read from
+	 * the socket, without buffering it as a String first.
+	 *
+	 * @param request The request to execute.
+	 * @return the parsed response body.
+	 * @throws HttpResponseException if the server answered with a status
+	 *                               code of 300 or above.
+	 * @throws IOException           if the request could not be executed.
+	 */
+	public JSONObject executeForJSON(HttpUriRequest request) throws IOException
+	{
+		return this.execute(request, content -> {
+			try (Reader reader = new InputStreamReader(
+					content, StandardCharsets.UTF_8
+			))
+			{
+				return new JSONObject(new JSONTokener(reader));
+			}
+		});
+	}
+
+	/**
+	 * @param request The request to execute.
+	 * @return the response body as a String.
+	 * @throws HttpResponseException if the server answered with a status
+	 *                               code of 300 or above.
+	 * @throws IOException           if the request could not be executed.
+	 */
+	public String executeForString(HttpUriRequest request) throws IOException
+	{
+		return this.execute(request, content -> {
+			StringBuilder builder = new StringBuilder();
+			try (Reader reader = new InputStreamReader(
+					content, StandardCharsets.UTF_8
+			))
+			{
+				char[] buffer = new char[8192];
+				int read;
+				while ((read = reader.read(buffer)) != -1)
+				{
+					builder.append(buffer, 0, read);
+				}
+			}
+			return builder.toString();
+		});
+	}
+
+	/**
+	 * Executes the request and hands the response body to the handler. The
+	 * body is always consumed completely afterwards, so that the connection
+	 * can be returned to the pool and reused.
+	 *
+	 * @param request The request to execute.
+	 * @param handler Reads the response body. May be called with an empty
+	 *                stream, if the response has no body.
+	 * @return whatever the handler returns.
+	 * @throws HttpResponseException if the server answered with a status
+	 *                               code of 300 or above.
+	 * @throws IOException           if the request could not be executed.
+	 */
+	public <T> T execute(HttpUriRequest request, ContentHandler<T> handler)
+			throws IOException
+	{
+		Metrics routeMetrics = this.metrics.computeIfAbsent(
+				request.getURI().getScheme() + "://"
+						+ request.getURI().getAuthority(),
+				route -> new Metrics()
+		);
+		long start = System.nanoTime();
+		CountingInputStream content = null;
+		try (CloseableHttpResponse response = this.client.execute(request))
+		{
+			StatusLine status = response.getStatusLine();
+			HttpEntity entity = response.getEntity();
+			if (status.getStatusCode() >= 300)
+			{
+				EntityUtils.consume(entity);
+				throw new HttpResponseException(
+						status.getStatusCode(), status.getReasonPhrase()
+				);
+			}
+
+			content = new CountingInputStream(this.getContent(response));
+			T result = handler.handle(content);
+			EntityUtils.consume(entity);
+			return result;
+		} finally
+		{
+			routeMetrics.requests.incrementAndGet();
+			routeMetrics.nanoseconds.addAndGet(System.nanoTime() - start);
+			if (request instanceof HttpEntityEnclosingRequest
+					&& ((HttpEntityEnclosingRequest) request).getEntity() != null)
+			{
+				routeMetrics.bytesSent.addAndGet(Math.max(0,
+						((HttpEntityEnclosingRequest) request).getEntity()
+								.getContentLength()
+				));
+			}
+			if (content != null)
+			{
+				routeMetrics.bytesReceived.addAndGet(content.getCount());
+			}
+		}
+	}
+
+	protected InputStream getContent(HttpResponse response) throws IOException
+	{
+		if (response.getEntity() == null)
+		{
+			return new ByteArrayInputStream(new byte[0]);
+		}
+		return response.getEntity().getContent();
+	}
+
+	/**
+	 * @return The metrics for every route that was requested so far, keyed
+	 * by scheme, host and port.
+	 */
+	public Map<String, Metrics> getMetrics()
+	{
+		return this.metrics;
+	}
+
+	/**
+	 * The metrics are shared by the whole JVM, so every evaluation should
+	 * take a snapshot when it starts and only report the difference via
+	 * #getMetricsAsJSON(Map).
+	 *
+	 * @return A copy of the current metrics for every route.
+	 */
+	public Map<String, Metrics> snapshotMetrics()
+	{
+		Map<String, Metrics> snapshot = new HashMap<>();
+		for (Map.Entry<String, Metrics> entry : this.metrics.entrySet())
+		{
+			snapshot.put(entry.getKey(), entry.getValue().since(null));
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @return The metrics for every route as JSON, for the statistics output.
+	 */
+	public JSONObject getMetricsAsJSON()
+	{
+		return this.getMetricsAsJSON(Collections.emptyMap());
+	}
+
+	/**
+	 * @param snapshot Metrics taken with #snapshotMetrics.
+	 * @return The metrics for every route, that was requested since the
+	 * snapshot was taken, as JSON for the statistics output. Only counts the
+	 * requests since then.
+	 */
+	public JSONObject getMetricsAsJSON(Map<String, Metrics> snapshot)
+	{
+		JSONObject json = new JSONObject();
+		for (Map.Entry<String, Metrics> entry : this.metrics.entrySet())
+		{
+			Metrics metrics = entry.getValue()
+					.since(snapshot.get(entry.getKey()));
+			if (metrics.getRequests() == 0)
+			{
+				continue;
+			}
+			JSONObject route = new JSONObject();
+			route.put("requests", metrics.getRequests());
+			route.put("bytesSent", metrics.getBytesSent());
+			route.put("bytesReceived", metrics.getBytesReceived());
+			route.put("time", metrics.getTimeMillis());
+			json.put(entry.getKey(), route);
+		}
+		return json;
+	}
+
+	/**
+	 * Reads a response body. The stream is closed by the transport.
+	 */
+	@FunctionalInterface
+	public interface ContentHandler<T>
+	{
+		T handle(InputStream content) throws IOException;
+	}
+
+	/**
+	 * Counters for all requests sent to one route.
+	 */
+	public static class Metrics
+	{
+		protected final AtomicLong requests = new AtomicLong();
+		protected final AtomicLong bytesSent = new AtomicLong();
+		protected final AtomicLong bytesReceived = new AtomicLong();
+		protected final AtomicLong nanoseconds = new AtomicLong();
+
+		public long getRequests()
+		{
+			return this.requests.get();
+		}
+
+		/**
+		 * Only counts request bodies with a known length.
+		 */
+		public long getBytesSent()
+		{
+			return this.bytesSent.get();
+		}
+
+		public long getBytesReceived()
+		{
+			return this.bytesReceived.get();
+		}
+
+		/**
+		 * @return The accumulated time between sending the requests and con-
+		 * suming their responses in milliseconds.
+		 */
+		public long getTimeMillis()
+		{
+			return TimeUnit.NANOSECONDS.toMillis(this.nanoseconds.get());
+		}
+
+		/**
+		 * @param earlier Earlier metrics of the same route or null.
+		 * @return New metrics with the counts added since the earlier ones.
+		 */
+		public Metrics since(Metrics earlier)
+		{
+			Metrics difference = new Metrics();
+			difference.requests.set(this.requests.get());
+			difference.bytesSent.set(this.bytesSent.get());
+			difference.bytesReceived.set(this.bytesReceived.get());
+			difference.nanoseconds.set(this.nanoseconds.get());
+			if (earlier != null)
+			{
+				difference.requests.addAndGet(-earlier.requests.get());
+				difference.bytesSent.addAndGet(-earlier.bytesSent.get());
+				difference.bytesReceived.addAndGet(
+						-earlier.bytesReceived.get()
+				);
+				difference.nanoseconds.addAndGet(-earlier.nanoseconds.get());
+			}
+			return difference;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package org.hucompute.services.uima.eval.database.connection;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Collects the body of a request in memory. Exposes its internal array, so
+ * that it can be sent without copying.
+ */
+public class RequestBuffer extends ByteArrayOutputStream
+{
+	public RequestBuffer()
+	{
+		super(1 << 20);
+	}
+
+	public byte[] buffer()
+	{
+		return this.buf;
+	}
+
+	/**
+	 * Discards everything written after the given size, e.g. a partially
+	 * written element.
+	 *
+	 * @param size A size the buffer had before.
+	 */
+	public void truncate(int size)
+	{
+		if (size < 0 || size > this.count)
+		{
+			throw new IllegalArgumentException(
+					"The buffer can only be truncated to a previous size."
+			);
+		}
+		this.count = size;
+	}
+
+	/**
+	 * The entity shares the buffer, so it must not be reset before the re-
+	 * quest is sent.
+	 *
+	 * @param contentType The type of the content written into the buffer.
+	 * @return An entity with the current content of the buffer.
+	 */
+	public HttpEntity toEntity(ContentType contentType)
+	{
+		return new ByteArrayEntity(this.buf, 0, this.count, contentType);
+	}
+}
@@ -31,23 +31,48 @@ public class MySQLConnection extends Connection
 
 		try
 		{
-			String host = System.getenv("MYSQL_HOST");
-			String port = System.getenv("MYSQL_PORT");
-			String dbname = System.getenv("MYSQL_DBNAME");
-			String username = System.getenv("MYSQL_USER");
-			String password = System.getenv("MYSQL_PASS");
+			this.connection = connect();
+			return true;
+		} catch (SQLException e)
+		{
+			return false;
+		}
+	}
 
-			// MySQL Driver needs some strange url for connection, so we build
-			// it:
-			String url = "jdbc:mysql://" + host + ":" + port + "/" + dbname
-					+ "?useSSL=false";
+	/**
+	 * Opens a new JDBC connection to the MySQL Server configured in the
+	 * environment, that is not managed by any Connection.
+	 *
+	 * @return The JDBC connection. Has to be closed by the caller.
+	 * @throws SQLException If the server can't be reached.
+	 */
+	public static java.sql.Connection connect() throws SQLException
+	{
+		String host = System.getenv("MYSQL_HOST");
+		String port = System.getenv("MYSQL_PORT");
+		String dbname = System.getenv("MYSQL_DBNAME");
+		String username = System.getenv("MYSQL_USER");
+		String password = System.getenv("MYSQL_PASS");
 
-			this.connection = DriverManager.getConnection(
-					url,
-					username,
-					password
-			);
-			return true;
+		// MySQL Driver needs some strange url for connection, so we build
+		// it:
+		String url = "jdbc:mysql://" + host + ":" + port + "/" + dbname
+				+ "?useSSL=false&rewriteBatchedStatements=true"
+				+ "&allowLoadLocalInfile=true";
+
+		return DriverManager.getConnection(
+				url,
+				username,
+				password
+		);
+	}
+
+	@Override
+	public boolean isHealthy()
+	{
+		try
+		{
+			return this.connection != null && this.connection.isValid(1);
 		} catch (SQLException e)
 		{
 			return false;
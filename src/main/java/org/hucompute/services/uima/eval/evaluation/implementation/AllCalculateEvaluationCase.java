@@ -1,10 +1,12 @@
 package org.hucompute.services.uima.eval.evaluation.implementation;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.hucompute.services.uima.eval.database.abstraction.QueryHandlerInterface;
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.DocumentNotFoundException;
 import org.hucompute.services.uima.eval.database.abstraction.implementation.BenchmarkQueryHandler;
 import org.hucompute.services.uima.eval.database.connection.Connections;
+import org.hucompute.services.uima.eval.database.connection.HttpTransport;
 import org.hucompute.services.uima.eval.evaluation.framework.EvaluationCase;
 import org.hucompute.services.uima.eval.evaluation.framework.OutputProvider;
 import org.hucompute.services.uima.eval.utility.Collections;
@@ -51,6 +53,9 @@ public class AllCalculateEvaluationCase implements EvaluationCase
 			logger.info("Starting AllCalculateEvaluationCase for Database \""
 					+ this.dbName + "\".");
 
+			// The HTTP metrics are shared by all evaluations in this JVM.
+			Map<String, HttpTransport.Metrics> httpMetrics =
+					HttpTransport.getInstance().snapshotMetrics();
 			BenchmarkQueryHandler queryHandler = new BenchmarkQueryHandler(
 					currentQueryHandler
 			);
@@ -58,7 +63,9 @@ public class AllCalculateEvaluationCase implements EvaluationCase
 
 			// We'll need the documentIds and lemmata from the database later on
 			// for the evaluations.
-			this.documentIds = queryHandler.getDocumentIds();
+			this.documentIds = Lists.newArrayList(
+					queryHandler.getDocumentIds()
+			);
 			this.lemmata = new TreeSet<>();
 			this.documentIds.forEach(documentId -> {
 				try
@@ -221,6 +228,8 @@ public class AllCalculateEvaluationCase implements EvaluationCase
 			);
 			logger.info("Step " + step + " done.");
 
+			Formatting.putHttpMetrics(stats, httpMetrics);
+
 			logger.info("Writing results...");
 			// Write the results to a file
 			outputProvider.writeJSON(
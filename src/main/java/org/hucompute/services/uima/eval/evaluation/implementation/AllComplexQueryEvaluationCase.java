@@ -5,6 +5,7 @@ import org.hucompute.services.uima.eval.database.abstraction.QueryHandlerInterfa
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.DocumentNotFoundException;
 import org.hucompute.services.uima.eval.database.abstraction.implementation.BenchmarkQueryHandler;
 import org.hucompute.services.uima.eval.database.connection.Connections;
+import org.hucompute.services.uima.eval.database.connection.HttpTransport;
 import org.hucompute.services.uima.eval.evaluation.framework.EvaluationCase;
 import org.hucompute.services.uima.eval.evaluation.framework.OutputProvider;
 import org.hucompute.services.uima.eval.utility.Collections;
@@ -14,6 +15,7 @@ import org.json.JSONObject;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.logging.Logger;
@@ -48,6 +50,9 @@ public class AllComplexQueryEvaluationCase implements EvaluationCase
 			logger.info("Starting AllComplexQueryEvaluationCase for Database \""
 					+ this.dbName + "\".");
 
+			// The HTTP metrics are shared by all evaluations in this JVM.
+			Map<String, HttpTransport.Metrics> httpMetrics =
+					HttpTransport.getInstance().snapshotMetrics();
 			BenchmarkQueryHandler queryHandler = new BenchmarkQueryHandler(
 					currentQueryHandler
 			);
@@ -126,6 +131,8 @@ public class AllComplexQueryEvaluationCase implements EvaluationCase
 			);
 			logger.info("Step " + step + " done.");
 
+			Formatting.putHttpMetrics(stats, httpMetrics);
+
 			logger.info("Writing results...");
 			// Write the results to a file
 			outputProvider.writeJSON(
@@ -1,5 +1,6 @@
 package org.hucompute.services.uima.eval.evaluation.implementation;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.hucompute.services.uima.eval.database.abstraction.ElementType;
 import org.hucompute.services.uima.eval.database.abstraction.QueryHandlerInterface;
@@ -8,6 +9,7 @@ import org.hucompute.services.uima.eval.database.abstraction.exceptions.TypeHasN
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.TypeNotCountableException;
 import org.hucompute.services.uima.eval.database.abstraction.implementation.BenchmarkQueryHandler;
 import org.hucompute.services.uima.eval.database.connection.Connections;
+import org.hucompute.services.uima.eval.database.connection.HttpTransport;
 import org.hucompute.services.uima.eval.evaluation.framework.EvaluationCase;
 import org.hucompute.services.uima.eval.evaluation.framework.OutputProvider;
 import org.hucompute.services.uima.eval.utility.Collections;
@@ -68,6 +70,9 @@ public class AllQueryEvaluationCase implements EvaluationCase
 
 			JSONObject stats = new JSONObject();
 
+			// The HTTP metrics are shared by all evaluations in this JVM.
+			Map<String, HttpTransport.Metrics> httpMetrics =
+					HttpTransport.getInstance().snapshotMetrics();
 			BenchmarkQueryHandler queryHandler = new BenchmarkQueryHandler(
 					currentQueryHandler
 			);
@@ -203,6 +208,8 @@ public class AllQueryEvaluationCase implements EvaluationCase
 			);
 			logger.info("Step " + step + " done.");
 
+			Formatting.putHttpMetrics(stats, httpMetrics);
+
 			logger.info("Writing results...");
 			// Write the results to a file
 			outputProvider.writeJSON(
@@ -227,7 +234,9 @@ public class AllQueryEvaluationCase implements EvaluationCase
 			BenchmarkQueryHandler queryHandler
 	)
 	{
-		this.documentIds = queryHandler.getDocumentIds();
+		// The ids are fetched in pages while they are iterated, so they are
+		// copied once instead of fetching them again for every evaluation.
+		this.documentIds = Lists.newArrayList(queryHandler.getDocumentIds());
 		JSONObject documentIdsStats = Formatting.createOutputForMethod(
 				"getDocumentIds", queryHandler
 		);
@@ -91,14 +91,22 @@ public class AllReadEvaluationCase implements EvaluationCase
 			int inputFiles
 	) throws IOException, ResourceInitializationException
 	{
+		// Amount of Documents read ahead, 0 reads synchronously.
+		String prefetchValue = System.getenv("READER_PREFETCH");
+		int prefetch = (prefetchValue == null || prefetchValue.isEmpty())
+				? 0 : Integer.parseInt(prefetchValue);
+
 		return CollectionReaderFactory.createReader(
 				EvaluatingCollectionReader.class,
 				EvaluatingCollectionReader.PARAM_DBNAME,
 				dbName.toString(),
+				EvaluatingCollectionReader.PARAM_PREFETCH,
+				prefetch,
 				EvaluatingCollectionReader.PARAM_OUTPUT_FILE,
 				outputProvider.createFile(
 						AllReadEvaluationCase.class.getSimpleName(),
 						dbName.toString() + "_" + inputFiles
+								+ (prefetch > 0 ? "-prefetch" + prefetch : "")
 				)
 		);
 	}
@@ -8,6 +8,7 @@ import org.apache.uima.fit.factory.AnalysisEngineFactory;
 import org.apache.uima.fit.factory.CollectionReaderFactory;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.hucompute.services.uima.eval.database.abstraction.QueryHandlerInterface;
+import org.hucompute.services.uima.eval.database.abstraction.implementation.MySQLQueryHandler;
 import org.hucompute.services.uima.eval.database.connection.Connections;
 import org.hucompute.services.uima.eval.evaluation.framework.EvaluationCase;
 import org.hucompute.services.uima.eval.evaluation.framework.OutputProvider;
@@ -15,7 +16,10 @@ import org.hucompute.services.uima.eval.evaluation.implementation.collectionWrit
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.logging.Logger;
 
 import static org.apache.uima.fit.pipeline.SimplePipeline.runPipeline;
@@ -49,30 +53,50 @@ public class AllWriteEvaluationCase implements EvaluationCase
 				logger.info("Starting AllWriteEvaluationCase for Database \""
 						+ dbName + "\".");
 
-				// This reader reads all .xmi.gz files in the environment-defined
-				// input folder.
-				CollectionReader reader = CollectionReaderFactory.createReader(
-						XmiReader.class,
-						XmiReader.PARAM_PATTERNS,
-						"[+]*.xmi.gz", //
-						XmiReader.PARAM_SOURCE_LOCATION,
-						System.getenv("INPUT_DIR"),
-						XmiReader.PARAM_LANGUAGE,
-						"de"
-				);
-
-				try
+				// MySQL can be evaluated with multiple ingest modes, which all
+				// write their own output.
+				List<String> ingestModes = Collections.singletonList(null);
+				if (dbName == Connections.DBName.MySQL)
 				{
-					runPipeline(
-							reader,
-							createWriter(outputProvider, dbName, inputFiles)
-					);
-				} catch (UIMAException | IOException e)
+					ingestModes = getMySQLIngestModes();
+				}
+
+				for (String ingestMode : ingestModes)
 				{
-					logger.severe("AllWriteEvaluationCase for Database \""
-							+ dbName + "\" crashed.");
-					// TODO: handle better
-					e.printStackTrace();
+					for (int writerThreads : getWriterThreads())
+					{
+						// This reader reads all .xmi.gz files in the environment-
+						// defined input folder.
+						CollectionReader reader = CollectionReaderFactory.createReader(
+								XmiReader.class,
+								XmiReader.PARAM_PATTERNS,
+								"[+]*.xmi.gz", //
+								XmiReader.PARAM_SOURCE_LOCATION,
+								System.getenv("INPUT_DIR"),
+								XmiReader.PARAM_LANGUAGE,
+								"de"
+						);
+
+						try
+						{
+							runPipeline(
+									reader,
+									createWriter(
+											outputProvider,
+											dbName,
+											inputFiles,
+											ingestMode,
+											writerThreads
+									)
+							);
+						} catch (UIMAException | IOException e)
+						{
+							logger.severe("AllWriteEvaluationCase for Database \""
+									+ dbName + "\" crashed.");
+							// TODO: handle better
+							e.printStackTrace();
+						}
+					}
 				}
 
 				logger.info("AllWriteEvaluationCase for Database \""
@@ -105,15 +129,132 @@ public class AllWriteEvaluationCase implements EvaluationCase
 			int inputFiles
 	) throws IOException, ResourceInitializationException
 	{
+		return createWriter(outputProvider, dbName, inputFiles, null, 1);
+	}
+
+	/**
+	 * Creates an AnalysisEngine for the UIMA pipeline for a given dbName,
+	 * which writes with the given MySQL ingest mode.
+	 * Output of modes other than the default is written to a separate file,
+	 * so that the modes can be compared.
+	 *
+	 * @param outputProvider The outputProvider, which creates the output files.
+	 * @param dbName         The name of the database for which a writer should
+	 *                       be created.
+	 * @param ingestMode     The name of a MySQLQueryHandler.IngestMode or null
+	 *                       for the default.
+	 * @param writerThreads  The amount of threads writing concurrently.
+	 * @return The initialized AnalysisEngine containing a CollectionWriter.
+	 * @throws IOException                     If the output file can not be
+	 *                                         created.
+	 * @throws ResourceInitializationException If something inside UIMA went
+	 *                                         wrong.
+	 */
+	public static AnalysisEngine createWriter(
+			OutputProvider outputProvider,
+			Connections.DBName dbName,
+			int inputFiles,
+			String ingestMode,
+			int writerThreads
+	) throws IOException, ResourceInitializationException
+	{
+		String name = dbName.toString();
+		List<Object> parameters = new ArrayList<>();
+		if (ingestMode != null)
+		{
+			parameters.add(EvaluatingCollectionWriter.PARAM_MYSQL_INGEST_MODE);
+			parameters.add(ingestMode);
+			if (!ingestMode.equals(
+					MySQLQueryHandler.IngestMode.RowByRow.toString()
+			))
+			{
+				name += "-" + ingestMode;
+			}
+		}
+		if (writerThreads > 1)
+		{
+			parameters.add(EvaluatingCollectionWriter.PARAM_WRITER_THREADS);
+			parameters.add(writerThreads);
+			String queueSize = System.getenv("WRITER_QUEUE_SIZE");
+			if (queueSize != null && !queueSize.isEmpty())
+			{
+				parameters.add(EvaluatingCollectionWriter.PARAM_QUEUE_SIZE);
+				parameters.add(Integer.parseInt(queueSize));
+			}
+			name += "-" + writerThreads + "threads";
+		}
+		String documentsPerBatch = System.getenv("WRITER_DOCUMENTS_PER_BATCH");
+		if (documentsPerBatch != null && !documentsPerBatch.isEmpty()
+				&& Integer.parseInt(documentsPerBatch) > 1)
+		{
+			parameters.add(EvaluatingCollectionWriter.PARAM_DOCUMENTS_PER_BATCH);
+			parameters.add(Integer.parseInt(documentsPerBatch));
+			name += "-" + documentsPerBatch + "perBatch";
+		}
+		String batchSize = System.getenv("WRITER_BATCH_SIZE");
+		if (batchSize != null && !batchSize.isEmpty())
+		{
+			parameters.add(EvaluatingCollectionWriter.PARAM_BATCH_SIZE);
+			parameters.add(Integer.parseInt(batchSize));
+		}
+		parameters.add(EvaluatingCollectionWriter.PARAM_DBNAME);
+		parameters.add(dbName.toString());
+		parameters.add(EvaluatingCollectionWriter.PARAM_OUTPUT_FILE);
+		parameters.add(outputProvider.createFile(
+				AllWriteEvaluationCase.class.getSimpleName(),
+				name + "_" + inputFiles
+		));
+
 		return AnalysisEngineFactory.createEngine(
 				EvaluatingCollectionWriter.class,
-				EvaluatingCollectionWriter.PARAM_DBNAME,
-				dbName.toString(),
-				EvaluatingCollectionWriter.PARAM_OUTPUT_FILE,
-				outputProvider.createFile(
-						AllWriteEvaluationCase.class.getSimpleName(),
-						dbName.toString() + "_" + inputFiles
-				)
+				parameters.toArray()
 		);
 	}
+
+	/**
+	 * Reads the comma separated MySQL ingest modes to evaluate from the en-
+	 * vironment variable MYSQL_INGEST_MODES. Defaults to RowByRow.
+	 *
+	 * @return The names of MySQLQueryHandler.IngestModes.
+	 */
+	protected static List<String> getMySQLIngestModes()
+	{
+		String ingestModes = System.getenv("MYSQL_INGEST_MODES");
+		if (ingestModes == null || ingestModes.trim().isEmpty())
+		{
+			return Collections.singletonList(
+					MySQLQueryHandler.IngestMode.RowByRow.toString()
+			);
+		}
+
+		List<String> modes = new ArrayList<>();
+		for (String mode : ingestModes.split(","))
+		{
+			modes.add(MySQLQueryHandler.IngestMode.valueOf(mode.trim())
+					.toString());
+		}
+		return modes;
+	}
+
+	/**
+	 * Reads the comma separated amounts of concurrent writer threads to eval-
+	 * uate from the environment variable WRITER_THREADS. Defaults to 1.
+	 *
+	 * @return The amounts of writer threads.
+	 */
+	protected static List<Integer> getWriterThreads()
+	{
+		String writerThreads = System.getenv("WRITER_THREADS");
+		if (writerThreads == null || writerThreads.trim().isEmpty())
+		{
+			return Collections.singletonList(1);
+		}
+
+		List<Integer> amounts = new ArrayList<>();
+		for (String amount : writerThreads.split(","))
+		{
+			amounts.add(Integer.parseInt(amount.trim()));
+		}
+		return amounts;
+	}
 }
@@ -0,0 +1,197 @@
+package org.hucompute.services.uima.eval.evaluation.implementation.collectionReader;
+
+import org.apache.uima.cas.CAS;
+import org.hucompute.services.uima.eval.database.abstraction.exceptions.DocumentNotFoundException;
+import org.hucompute.services.uima.eval.database.abstraction.exceptions.QHException;
+import org.hucompute.services.uima.eval.database.abstraction.implementation.BenchmarkQueryHandler;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads Documents from the database into staging CASes ahead of the
+ * EvaluatingCollectionReader, so that the database does not sit idle while
+ * the pipeline processes the current Document.
+ * Only as many Documents are fetched as there are free staging CASes, so the
+ * memory used is bounded by their amount.
+ * After the last Document, PrefetchedDocument#END is put into the queue.
+ */
+public class DocumentPrefetcher implements Callable<Void>
+{
+	protected static final long POLL_TIMEOUT = 100;
+
+	protected final BenchmarkQueryHandler queryHandler;
+	protected final Iterator<String> documentIds;
+	protected final BlockingQueue<CAS> freeDocuments;
+	protected final BlockingQueue<PrefetchedDocument> readyDocuments;
+	protected volatile boolean stopped;
+
+	/**
+	 * @param queryHandler   A query handler on which the database is already
+	 *                       opened. Must not be used by anyone else while
+	 *                       the prefetcher runs.
+	 * @param documentIds    The ids of the Documents to fetch in order.
+	 * @param freeDocuments  The staging CASes to fetch into.
+	 * @param readyDocuments The queue, that fetched Documents are put into.
+	 */
+	public DocumentPrefetcher(
+			BenchmarkQueryHandler queryHandler,
+			Iterator<String> documentIds,
+			BlockingQueue<CAS> freeDocuments,
+			BlockingQueue<PrefetchedDocument> readyDocuments
+	)
+	{
+		this.queryHandler = queryHandler;
+		this.documentIds = documentIds;
+		this.freeDocuments = freeDocuments;
+		this.readyDocuments = readyDocuments;
+		this.stopped = false;
+	}
+
+	/**
+	 * Fetches Documents until all ids are read or #stop was called.
+	 */
+	@Override
+	public Void call() throws InterruptedException
+	{
+		while (!this.stopped && this.documentIds.hasNext())
+		{
+			String documentId = this.documentIds.next();
+
+			CAS cas = null;
+			while (cas == null)
+			{
+				if (this.stopped)
+				{
+					return null;
+				}
+				cas = this.freeDocuments.poll(
+						POLL_TIMEOUT, TimeUnit.MILLISECONDS
+				);
+			}
+			cas.reset();
+
+			PrefetchedDocument document =
+					new PrefetchedDocument(documentId, cas);
+			try
+			{
+				this.queryHandler.populateCasWithDocument(cas, documentId);
+				List<Long> callTimes = this.queryHandler.getMethodBenchmarks()
+						.get("populateCasWithDocument")
+						.getCallTimes();
+				document.fetchTime = callTimes.get(callTimes.size() - 1);
+			} catch (DocumentNotFoundException e)
+			{
+				document.found = false;
+			} catch (QHException e)
+			{
+				document.exception = e;
+			}
+
+			if (!this.offer(document))
+			{
+				return null;
+			}
+		}
+		this.offer(PrefetchedDocument.END);
+		return null;
+	}
+
+	/**
+	 * Blocks until the document was put into the queue or #stop was called.
+	 *
+	 * @return Whether the document was put into the queue.
+	 */
+	protected boolean offer(PrefetchedDocument document)
+			throws InterruptedException
+	{
+		while (!this.readyDocuments.offer(
+				document, POLL_TIMEOUT, TimeUnit.MILLISECONDS
+		))
+		{
+			if (this.stopped)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Lets the prefetcher stop as soon as possible.
+	 */
+	public void stop()
+	{
+		this.stopped = true;
+	}
+
+	/**
+	 * A Document read into a staging CAS.
+	 */
+	public static class PrefetchedDocument
+	{
+		/**
+		 * Marks the end of the collection.
+		 */
+		public static final PrefetchedDocument END =
+				new PrefetchedDocument(null, null);
+
+		protected final String documentId;
+		protected final CAS cas;
+		protected long fetchTime;
+		protected boolean found;
+		protected QHException exception;
+
+		protected PrefetchedDocument(String documentId, CAS cas)
+		{
+			this.documentId = documentId;
+			this.cas = cas;
+			this.fetchTime = 0;
+			this.found = true;
+			this.exception = null;
+		}
+
+		public String getDocumentId()
+		{
+			return this.documentId;
+		}
+
+		public boolean isEnd()
+		{
+			return this == END;
+		}
+
+		/**
+		 * @return The staging CAS. Has to be returned to the free CASes after
+		 * it was copied.
+		 */
+		public CAS getCas()
+		{
+			return this.cas;
+		}
+
+		/**
+		 * @return The time populateCasWithDocument took in milliseconds.
+		 */
+		public long getFetchTime()
+		{
+			return this.fetchTime;
+		}
+
+		public boolean wasFound()
+		{
+			return this.found;
+		}
+
+		/**
+		 * @return The exception populateCasWithDocument failed with or null.
+		 */
+		public QHException getException()
+		{
+			return this.exception;
+		}
+	}
+}
@@ -1,6 +1,5 @@
 package org.hucompute.services.uima.eval.evaluation.implementation.collectionReader;
 
-import com.google.common.collect.Iterables;
 import org.apache.uima.UimaContext;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.CASException;
@@ -8,12 +7,18 @@ import org.apache.uima.collection.CollectionException;
 import org.apache.uima.fit.component.CasCollectionReader_ImplBase;
 import org.apache.uima.fit.descriptor.ConfigurationParameter;
 import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.CasCopier;
+import org.apache.uima.util.CasCreationUtils;
 import org.apache.uima.util.Progress;
+import org.apache.uima.util.TypeSystemUtil;
+import org.hucompute.services.uima.eval.database.abstraction.ElementType;
 import org.hucompute.services.uima.eval.database.abstraction.QueryHandlerInterface;
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.DocumentNotFoundException;
 import org.hucompute.services.uima.eval.database.abstraction.exceptions.QHException;
+import org.hucompute.services.uima.eval.database.abstraction.exceptions.TypeNotCountableException;
 import org.hucompute.services.uima.eval.database.abstraction.implementation.BenchmarkQueryHandler;
 import org.hucompute.services.uima.eval.database.connection.*;
+import org.hucompute.services.uima.eval.evaluation.implementation.collectionReader.DocumentPrefetcher.PrefetchedDocument;
 import org.hucompute.services.uima.eval.utility.Formatting;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -25,7 +30,9 @@ import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
 import java.util.LongSummaryStatistics;
-import java.util.concurrent.ExecutionException;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -43,11 +50,42 @@ public class EvaluatingCollectionReader extends CasCollectionReader_ImplBase
 	@ConfigurationParameter(name = PARAM_DBNAME)
 	protected String dbName;
 
+	/**
+	 * Amount of Documents that are read ahead by a background thread while
+	 * the pipeline processes the current one. With 0, Documents are read
+	 * synchronously in #getNext.
+	 */
+	public static final String PARAM_PREFETCH = "prefetch";
+	@ConfigurationParameter(name = PARAM_PREFETCH, mandatory = false, defaultValue = "0")
+	protected int prefetch;
+
 	protected BenchmarkQueryHandler queryHandler;
 	protected Iterator<String> iterator;
 	protected int currentIndex;
 	protected int documentCount;
 	protected JSONArray specificDocumentStatistics;
+	/**
+	 * The HTTP metrics when this reader was initialized, since they are
+	 * shared by all evaluations in this JVM.
+	 */
+	protected Map<String, HttpTransport.Metrics> httpMetrics;
+
+	protected ExecutorService prefetchExecutor;
+	protected DocumentPrefetcher prefetcher;
+	protected Future<Void> prefetchResult;
+	/**
+	 * The staging CASes the prefetcher reads into. There are exactly
+	 * #prefetch of them, so that at most that many Documents are held.
+	 */
+	protected BlockingQueue<CAS> freeDocuments;
+	protected BlockingQueue<PrefetchedDocument> readyDocuments;
+	/**
+	 * The Document taken from the queue by #hasNext, together with the time
+	 * spent waiting for it and the amount of Documents left in the queue.
+	 */
+	protected PrefetchedDocument nextDocument;
+	protected long nextDocumentWaitTime;
+	protected int nextDocumentQueueDepth;
 
 	@Override
 	public void initialize(final UimaContext context)
@@ -59,6 +97,7 @@ public class EvaluatingCollectionReader extends CasCollectionReader_ImplBase
 		logger.info("Initializing CollectionReader for db " + this.dbName);
 
 		this.specificDocumentStatistics = new JSONArray();
+		this.httpMetrics = HttpTransport.getInstance().snapshotMetrics();
 
 		Class<? extends Connection> connectionClass =
 				Connections.getConnectionClassForName(this.dbName);
@@ -86,10 +125,19 @@ public class EvaluatingCollectionReader extends CasCollectionReader_ImplBase
 			Thread.currentThread().interrupt();
 		}
 
-		Iterable<String> ids = this.queryHandler.getDocumentIds();
-		this.documentCount = Iterables.size(ids);
+		// The ids are fetched in pages while they are iterated, so they are
+		// counted separately for the progress output.
+		try
+		{
+			this.documentCount = this.queryHandler
+					.countElementsOfType(ElementType.Document);
+		} catch (TypeNotCountableException e)
+		{
+			// Will never happen, since Documents are always countable.
+			e.printStackTrace();
+		}
 		this.currentIndex = 0;
-		this.iterator = ids.iterator();
+		this.iterator = this.queryHandler.getDocumentIds().iterator();
 
 		logger.info("Initialized CollectionReader for db " + this.dbName);
 	}
@@ -97,6 +145,12 @@ public class EvaluatingCollectionReader extends CasCollectionReader_ImplBase
 	@Override
 	public void getNext(CAS cas) throws IOException, CollectionException
 	{
+		if (this.prefetch > 0)
+		{
+			this.getNextPrefetched(cas);
+			return;
+		}
+
 		String id = this.iterator.next();
 		this.currentIndex++;
 		try
@@ -143,10 +197,244 @@ public class EvaluatingCollectionReader extends CasCollectionReader_ImplBase
 		}
 	}
 
+	/**
+	 * Takes the next Document from the prefetcher and copies it into the CAS.
+	 * The prefetcher is started on the first call, since the staging CASes
+	 * need the pipeline's type system.
+	 *
+	 * @param cas The CAS to populate.
+	 */
+	protected void getNextPrefetched(CAS cas) throws CollectionException
+	{
+		if (this.prefetcher == null)
+		{
+			this.startPrefetching(cas);
+		}
+
+		if (this.nextDocument == null)
+		{
+			this.takeReadyDocument();
+		}
+		PrefetchedDocument document = this.nextDocument;
+		long waitTime = this.nextDocumentWaitTime;
+		int queueDepth = this.nextDocumentQueueDepth;
+		this.nextDocument = null;
+		if (document.isEnd())
+		{
+			throw new CollectionException(
+					new NoSuchElementException("No documents left.")
+			);
+		}
+
+		this.currentIndex++;
+		try
+		{
+			logger.info(this.currentIndex + "/" + this.documentCount + " "
+					+ "Populating CAS with prefetched document \""
+					+ document.getDocumentId() + "\" from " + this.dbName
+					+ "...");
+			try
+			{
+				if (document.getException() != null)
+				{
+					if (document.getException().getException()
+							instanceof CASException)
+					{
+						throw new CollectionException(
+								document.getException().getException()
+						);
+					}
+					document.getException().printStackTrace();
+				} else if (!document.wasFound())
+				{
+					logger.warning("DocumentId \"" + document.getDocumentId()
+							+ "\" could not be found in the database, "
+							+ "although it was there just a moment ago. "
+							+ "Please check for concurrent access.");
+				} else
+				{
+					CasCopier.copyCas(document.getCas(), cas, true);
+					logger.info("CAS populated.");
+					logger.info("Took " + document.getFetchTime() + "ms to "
+							+ "fetch and " + waitTime + "ms waiting.");
+
+					JSONObject specificDocumentStatistic = new JSONObject();
+					specificDocumentStatistic.put(
+							"documentId", document.getDocumentId()
+					);
+					specificDocumentStatistic.put(
+							"fullReadTime", document.getFetchTime()
+					);
+					specificDocumentStatistic.put(
+							"waitTime", waitTime
+					);
+					specificDocumentStatistic.put(
+							"queueDepth", queueDepth
+					);
+					specificDocumentStatistic.put(
+							"textLength", cas.getDocumentText().length()
+					);
+					this.specificDocumentStatistics.put(
+							specificDocumentStatistic
+					);
+				}
+			} finally
+			{
+				document.getCas().reset();
+				this.freeDocuments.put(document.getCas());
+			}
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new CollectionException(e);
+		}
+	}
+
+	/**
+	 * Waits for the next Document from the prefetcher and keeps it as
+	 * #nextDocument.
+	 */
+	protected void takeReadyDocument() throws CollectionException
+	{
+		try
+		{
+			long waitStart = System.currentTimeMillis();
+			PrefetchedDocument document = this.readyDocuments.poll();
+			while (document == null)
+			{
+				this.checkPrefetcher();
+				document = this.readyDocuments.poll(
+						DocumentPrefetcher.POLL_TIMEOUT, TimeUnit.MILLISECONDS
+				);
+			}
+			this.nextDocument = document;
+			this.nextDocumentWaitTime = System.currentTimeMillis() - waitStart;
+			this.nextDocumentQueueDepth = this.readyDocuments.size();
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new CollectionException(e);
+		}
+	}
+
+	/**
+	 * Creates the staging CASes and starts fetching Documents in the back-
+	 * ground.
+	 *
+	 * @param cas A CAS from the pipeline, whose type system is used for the
+	 *            staging CASes.
+	 */
+	protected void startPrefetching(CAS cas) throws CollectionException
+	{
+		logger.info("Prefetching " + this.prefetch + " documents from "
+				+ this.dbName + ".");
+
+		this.freeDocuments = new ArrayBlockingQueue<>(this.prefetch);
+		// One more for the end of the collection.
+		this.readyDocuments = new ArrayBlockingQueue<>(this.prefetch + 1);
+		try
+		{
+			for (int i = 0; i < this.prefetch; i++)
+			{
+				this.freeDocuments.add(CasCreationUtils.createCas(
+						TypeSystemUtil.typeSystem2TypeSystemDescription(
+								cas.getTypeSystem()
+						), null, null
+				));
+			}
+		} catch (ResourceInitializationException e)
+		{
+			throw new CollectionException(e);
+		}
+
+		this.prefetcher = new DocumentPrefetcher(
+				this.queryHandler,
+				this.iterator,
+				this.freeDocuments,
+				this.readyDocuments
+		);
+		this.prefetchExecutor = Executors.newSingleThreadExecutor(
+				runnable -> new Thread(
+						runnable, "CollectionReader-" + this.dbName + "-prefetch"
+				)
+		);
+		this.prefetchResult = this.prefetchExecutor.submit(this.prefetcher);
+	}
+
+	/**
+	 * Fails, if the prefetcher stopped before all Documents were read, since
+	 * #getNext would otherwise wait forever for the next Document.
+	 */
+	protected void checkPrefetcher() throws CollectionException
+	{
+		if (this.prefetchResult.isDone() && this.readyDocuments.isEmpty())
+		{
+			try
+			{
+				this.prefetchResult.get();
+			} catch (InterruptedException | ExecutionException e)
+			{
+				throw new CollectionException(e);
+			}
+			throw new CollectionException(
+					new IllegalStateException("The prefetch thread stopped.")
+			);
+		}
+	}
+
+	/**
+	 * Stops the prefetcher and waits for it, so that its benchmarks can be
+	 * read afterwards.
+	 */
+	protected void stopPrefetching()
+	{
+		if (this.prefetchExecutor == null)
+		{
+			return;
+		}
+		this.prefetcher.stop();
+		this.prefetchExecutor.shutdown();
+		try
+		{
+			this.prefetchExecutor.awaitTermination(
+					Long.MAX_VALUE, TimeUnit.MILLISECONDS
+			);
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		this.prefetchExecutor = null;
+	}
+
+	/**
+	 * Before the prefetcher is started, the ids are checked directly. After-
+	 * wards this waits for the next Document from the prefetcher.
+	 */
 	@Override
 	public boolean hasNext() throws IOException, CollectionException
 	{
-		return this.iterator.hasNext();
+		if (this.prefetcher == null)
+		{
+			return this.iterator.hasNext();
+		}
+
+		if (this.nextDocument == null)
+		{
+			this.takeReadyDocument();
+		}
+		if (this.nextDocument.isEnd())
+		{
+			this.stopPrefetching();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void destroy()
+	{
+		this.stopPrefetching();
+		super.destroy();
 	}
 
 	@Override
@@ -162,6 +450,8 @@ public class EvaluatingCollectionReader extends CasCollectionReader_ImplBase
 	 */
 	public void writeOutput()
 	{
+		this.stopPrefetching();
+
 		LongSummaryStatistics documentReadStatistic = this.queryHandler
 				.getMethodBenchmarks().get("populateCasWithDocument")
 				.getCallTimes()
@@ -183,10 +473,12 @@ public class EvaluatingCollectionReader extends CasCollectionReader_ImplBase
 		JSONObject statisticsJSON = Formatting.createOutputForMethod(
 				"populateCasWithDocument", queryHandler
 		);
+		statisticsJSON.put("prefetch", this.prefetch);
 		statisticsJSON.put(
 				"specificDocumentStatistics",
 				this.specificDocumentStatistics
 		);
+		Formatting.putHttpMetrics(statisticsJSON, this.httpMetrics);
 
 		JSONObject wrapperJSON = new JSONObject();
 		wrapperJSON.put("read", statisticsJSON);
@@ -3,12 +3,19 @@ package org.hucompute.services.uima.eval.evaluation.implementation.collectionWri
 import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CASException;
 import org.apache.uima.fit.component.JCasConsumer_ImplBase;
 import org.apache.uima.fit.descriptor.ConfigurationParameter;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.CasCopier;
+import org.apache.uima.util.CasCreationUtils;
+import org.apache.uima.util.TypeSystemUtil;
+import org.hucompute.services.uima.eval.database.abstraction.BatchOptions;
 import org.hucompute.services.uima.eval.database.abstraction.QueryHandlerInterface;
+import org.hucompute.services.uima.eval.database.abstraction.exceptions.QHException;
 import org.hucompute.services.uima.eval.database.abstraction.implementation.BenchmarkQueryHandler;
+import org.hucompute.services.uima.eval.database.abstraction.implementation.MySQLQueryHandler;
 import org.hucompute.services.uima.eval.database.connection.*;
 import org.hucompute.services.uima.eval.utility.Formatting;
 import org.json.JSONArray;
@@ -18,8 +25,12 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.LongSummaryStatistics;
-import java.util.concurrent.ExecutionException;
+import java.util.Map;
+import java.util.concurrent.*;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -37,9 +48,78 @@ public class EvaluatingCollectionWriter extends JCasConsumer_ImplBase
 	@ConfigurationParameter(name = PARAM_DBNAME)
 	protected String dbName;
 
+	/**
+	 * Name of a MySQLQueryHandler.IngestMode. Ignored for other databases.
+	 */
+	public static final String PARAM_MYSQL_INGEST_MODE = "mysqlIngestMode";
+	@ConfigurationParameter(name = PARAM_MYSQL_INGEST_MODE, mandatory = false)
+	protected String mysqlIngestMode;
+
+	/**
+	 * Amount of IngestWorkers that store the Documents concurrently, each with
+	 * its own Connection. With one, Documents are stored synchronously in
+	 * #process.
+	 */
+	public static final String PARAM_WRITER_THREADS = "writerThreads";
+	@ConfigurationParameter(name = PARAM_WRITER_THREADS, mandatory = false, defaultValue = "1")
+	protected int writerThreads;
+
+	/**
+	 * Amount of Documents that may wait for a worker before #process blocks.
+	 */
+	public static final String PARAM_QUEUE_SIZE = "queueSize";
+	@ConfigurationParameter(name = PARAM_QUEUE_SIZE, mandatory = false, defaultValue = "16")
+	protected int queueSize;
+
+	/**
+	 * Amount of Documents that are collected and stored together via
+	 * QueryHandlerInterface#storeDocumentHierarchies.
+	 */
+	public static final String PARAM_DOCUMENTS_PER_BATCH = "documentsPerBatch";
+	@ConfigurationParameter(name = PARAM_DOCUMENTS_PER_BATCH, mandatory = false, defaultValue = "1")
+	protected int documentsPerBatch;
+
+	/**
+	 * Maximum amount of elements the query handler sends to the database in
+	 * one round trip.
+	 */
+	public static final String PARAM_BATCH_SIZE = "batchSize";
+	@ConfigurationParameter(name = PARAM_BATCH_SIZE, mandatory = false, defaultValue = "1000")
+	protected int batchSize;
+
 	protected BenchmarkQueryHandler queryHandler;
+	protected BatchOptions batchOptions;
 	protected JSONArray specificDocumentStatistics;
 	protected int currentIndex;
+	/**
+	 * Amount of Documents in batches, that could not be stored, summed over
+	 * the writer and its workers.
+	 */
+	protected int failedDocuments;
+	protected long ingestStart;
+	/**
+	 * The HTTP metrics when this writer was initialized, since they are
+	 * shared by all evaluations in this JVM.
+	 */
+	protected Map<String, HttpTransport.Metrics> httpMetrics;
+
+	protected ExecutorService workerExecutor;
+	protected List<IngestWorker> workers;
+	protected List<Future<Void>> workerResults;
+	/**
+	 * Copies of the Documents passed to #process, since UIMA reuses the
+	 * original JCas as soon as #process returns.
+	 */
+	protected BlockingQueue<JCas> documents;
+	protected BlockingQueue<JCas> freeDocuments;
+	protected int createdDocuments;
+
+	/**
+	 * Copies of the Documents collected for the next batch, if Documents are
+	 * stored synchronously in batches of more than one.
+	 */
+	protected List<JCas> batch;
+	protected List<JCas> freeBatchDocuments;
 
 	@Override
 	public void initialize(UimaContext context)
@@ -53,6 +133,13 @@ public class EvaluatingCollectionWriter extends JCasConsumer_ImplBase
 
 		this.specificDocumentStatistics = new JSONArray();
 		this.currentIndex = 0;
+		this.failedDocuments = 0;
+		this.httpMetrics = HttpTransport.getInstance().snapshotMetrics();
+		this.batchOptions = new BatchOptions(
+				this.batchSize, this.documentsPerBatch
+		);
+		this.batch = new ArrayList<>();
+		this.freeBatchDocuments = new ArrayList<>();
 
 		Class<? extends Connection> connectionClass =
 				Connections.getConnectionClassForName(this.dbName);
@@ -67,13 +154,22 @@ public class EvaluatingCollectionWriter extends JCasConsumer_ImplBase
 
 			// Set up Database before writing, since writing is always the first
 			// step when evaluating.
-			this.queryHandler = new BenchmarkQueryHandler(QueryHandlerInterface
+			this.queryHandler = this.configureQueryHandler(QueryHandlerInterface
 					.createQueryHandlerForConnection(connection));
 			this.queryHandler.setUpDatabase();
 			this.queryHandler.openDatabase();
 
 			logger.info("Clearing database for " + this.dbName + ".");
 			this.queryHandler.clearDatabase();
+
+			// Indexes are created on the empty database, since clearing may
+			// drop them.
+			this.queryHandler.createIndexes();
+
+			if (this.writerThreads > 1)
+			{
+				this.startWorkers(connectionClass);
+			}
 		} catch (InterruptedException | ExecutionException e)
 		{
 			logger.severe("Initialization for CollectionWriter failed. " +
@@ -94,6 +190,290 @@ public class EvaluatingCollectionWriter extends JCasConsumer_ImplBase
 				+ ".");
 	}
 
+	/**
+	 * @param subjectQueryHandler A new query handler.
+	 * @return The query handler configured for this writer and wrapped in a
+	 * BenchmarkQueryHandler.
+	 */
+	protected BenchmarkQueryHandler configureQueryHandler(
+			QueryHandlerInterface subjectQueryHandler
+	)
+	{
+		if (this.mysqlIngestMode != null
+				&& subjectQueryHandler instanceof MySQLQueryHandler)
+		{
+			((MySQLQueryHandler) subjectQueryHandler).setIngestMode(
+					MySQLQueryHandler.IngestMode.valueOf(
+							this.mysqlIngestMode
+					)
+			);
+		}
+		return new BenchmarkQueryHandler(subjectQueryHandler);
+	}
+
+	/**
+	 * Starts the IngestWorkers. Each one leases its own Connection from the
+	 * ConnectionManager's pool, since the shared Connection must not be used
+	 * by multiple threads at once.
+	 *
+	 * @param connectionClass The class of the Connection to the database.
+	 */
+	protected void startWorkers(Class<? extends Connection> connectionClass)
+			throws IOException, InterruptedException, ExecutionException
+	{
+		logger.info("Starting " + this.writerThreads + " writer threads for "
+				+ this.dbName + ".");
+
+		this.documents = new ArrayBlockingQueue<>(this.queueSize);
+		this.freeDocuments = new ArrayBlockingQueue<>(
+				this.getMaxQueuedDocuments()
+		);
+		this.createdDocuments = 0;
+		this.workers = new ArrayList<>();
+		this.workerResults = new ArrayList<>();
+		this.workerExecutor = Executors.newFixedThreadPool(
+				this.writerThreads,
+				new ThreadFactory()
+				{
+					protected int count = 0;
+
+					@Override
+					public Thread newThread(Runnable runnable)
+					{
+						return new Thread(
+								runnable,
+								"CollectionWriter-" + dbName + "-" + count++
+						);
+					}
+				}
+		);
+
+		ConnectionRequest request = new ConnectionRequest();
+		request.addRequestedConnection(connectionClass, this.writerThreads);
+		ConnectionResponse response = ConnectionManager.getInstance()
+				.submitRequest(request).get();
+
+		for (Connection connection : response
+				.getPooledConnections(connectionClass))
+		{
+			BenchmarkQueryHandler workerQueryHandler =
+					this.configureQueryHandler(QueryHandlerInterface
+							.createQueryHandlerForConnection(connection));
+			workerQueryHandler.openDatabase();
+
+			IngestWorker worker = new IngestWorker(
+					connection,
+					workerQueryHandler,
+					this.batchOptions,
+					this.documents,
+					this.freeDocuments
+			);
+			this.workers.add(worker);
+			this.workerResults.add(this.workerExecutor.submit(worker));
+		}
+	}
+
+	/**
+	 * Every worker may hold a full batch while the queue is full, so there
+	 * have to be enough copies for both. Otherwise the workers would wait for
+	 * Documents to complete their batches, while #process waits for a free
+	 * copy.
+	 *
+	 * @return The amount of Document copies used with workers.
+	 */
+	protected int getMaxQueuedDocuments()
+	{
+		return this.queueSize + this.writerThreads * this.documentsPerBatch;
+	}
+
+	/**
+	 * @param jCas The Document whose type system is used.
+	 * @return A new empty JCas, that Documents can be copied into.
+	 */
+	protected JCas createDocumentCopy(JCas jCas)
+			throws ResourceInitializationException, CASException
+	{
+		return CasCreationUtils.createCas(
+				TypeSystemUtil.typeSystem2TypeSystemDescription(
+						jCas.getTypeSystem()
+				), null, null
+		).getJCas();
+	}
+
+	/**
+	 * Copies the Document into a free JCas from the pool and enqueues it for
+	 * the workers. Blocks while the queue is full.
+	 *
+	 * @param jCas The document to be processed.
+	 */
+	protected void enqueue(JCas jCas) throws AnalysisEngineProcessException
+	{
+		try
+		{
+			JCas copy = this.freeDocuments.poll();
+			if (copy == null
+					&& this.createdDocuments < this.getMaxQueuedDocuments())
+			{
+				copy = this.createDocumentCopy(jCas);
+				this.createdDocuments++;
+			}
+			while (copy == null)
+			{
+				this.checkWorkers();
+				copy = this.freeDocuments.poll(
+						IngestWorker.POLL_TIMEOUT, TimeUnit.MILLISECONDS
+				);
+			}
+
+			CasCopier.copyCas(jCas.getCas(), copy.getCas(), true);
+			while (!this.documents.offer(
+					copy, IngestWorker.POLL_TIMEOUT, TimeUnit.MILLISECONDS
+			))
+			{
+				this.checkWorkers();
+			}
+		} catch (ResourceInitializationException | CASException
+				| InterruptedException e)
+		{
+			throw new AnalysisEngineProcessException(e);
+		}
+	}
+
+	/**
+	 * Copies the Document into the current batch and stores the batch once
+	 * it is full. Documents are stored right away without copying, if every
+	 * batch holds only one.
+	 *
+	 * @param jCas The document to be processed.
+	 */
+	protected void addToBatch(JCas jCas) throws AnalysisEngineProcessException
+	{
+		if (this.documentsPerBatch <= 1)
+		{
+			this.store(Collections.singletonList(jCas));
+			return;
+		}
+
+		try
+		{
+			JCas copy = this.freeBatchDocuments.isEmpty()
+					? this.createDocumentCopy(jCas)
+					: this.freeBatchDocuments
+					.remove(this.freeBatchDocuments.size() - 1);
+			CasCopier.copyCas(jCas.getCas(), copy.getCas(), true);
+			this.batch.add(copy);
+		} catch (ResourceInitializationException | CASException e)
+		{
+			throw new AnalysisEngineProcessException(e);
+		}
+
+		if (this.batch.size() >= this.documentsPerBatch)
+		{
+			this.storeBatch();
+		}
+	}
+
+	/**
+	 * Stores the collected Documents and returns their copies for reuse.
+	 */
+	protected void storeBatch()
+	{
+		if (this.batch.isEmpty())
+		{
+			return;
+		}
+		try
+		{
+			this.store(this.batch);
+		} finally
+		{
+			for (JCas document : this.batch)
+			{
+				document.reset();
+				this.freeBatchDocuments.add(document);
+			}
+			this.batch.clear();
+		}
+	}
+
+	/**
+	 * Stores the Documents. Like in the IngestWorker, a failed batch is
+	 * logged and counted, but does not stop the pipeline.
+	 *
+	 * @param documents The Documents to store.
+	 */
+	protected void store(List<JCas> documents)
+	{
+		try
+		{
+			this.queryHandler.storeDocumentHierarchies(
+					documents, this.batchOptions
+			);
+		} catch (QHException e)
+		{
+			IngestWorker.logFailedBatch(documents, e);
+			this.failedDocuments += documents.size();
+		}
+	}
+
+	/**
+	 * Fails, if a worker stopped before the collection was complete, since
+	 * #process would otherwise wait forever for a free Document.
+	 */
+	protected void checkWorkers() throws AnalysisEngineProcessException
+	{
+		for (Future<Void> result : this.workerResults)
+		{
+			if (result.isDone())
+			{
+				try
+				{
+					result.get();
+				} catch (InterruptedException | ExecutionException e)
+				{
+					throw new AnalysisEngineProcessException(e);
+				}
+				throw new AnalysisEngineProcessException(
+						new IllegalStateException("A writer thread stopped.")
+				);
+			}
+		}
+	}
+
+	/**
+	 * Waits until the workers stored all Documents and finished their in-
+	 * gest and adds their benchmarks to the ones of this writer.
+	 */
+	protected void stopWorkers()
+	{
+		for (IngestWorker worker : this.workers)
+		{
+			worker.finish();
+		}
+		for (Future<Void> result : this.workerResults)
+		{
+			try
+			{
+				result.get();
+			} catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e)
+			{
+				logger.severe("A writer thread for " + this.dbName
+						+ " failed.");
+				e.getCause().printStackTrace();
+			}
+		}
+		this.workerExecutor.shutdown();
+
+		for (IngestWorker worker : this.workers)
+		{
+			this.queryHandler.mergeMethodBenchmarks(worker.getQueryHandler());
+			this.failedDocuments += worker.getFailedDocuments();
+		}
+	}
+
 	/**
 	 * Iterates over the jCas' structure and inserts all relevant elements into
 	 * the database.
@@ -107,17 +487,29 @@ public class EvaluatingCollectionWriter extends JCasConsumer_ImplBase
 		this.currentIndex++;
 		final String documentId = DocumentMetaData.get(jCas)
 				.getDocumentId();
+		if (this.currentIndex == 1)
+		{
+			this.ingestStart = System.currentTimeMillis();
+		}
+
+		if (this.workers != null)
+		{
+			logger.info(this.currentIndex + " Queueing jCas \"" + documentId
+					+ "\" for " + this.dbName + "...");
+			this.enqueue(jCas);
+			return;
+		}
 
 		logger.info(this.currentIndex + " Storing jCas \"" + documentId
 				+ "\" into " + this.dbName + "...");
 		long start = System.currentTimeMillis();
 
-		this.queryHandler.storeDocumentHierarchy(jCas);
+		this.addToBatch(jCas);
 
 		long end = System.currentTimeMillis();
 		long fullInsertTime = end - start;
 
-		logger.info("JCas \"" + documentId + "\" processed and stored.");
+		logger.info("JCas \"" + documentId + "\" processed.");
 		logger.info("Took " + fullInsertTime + "ms.");
 	}
 
@@ -128,10 +520,42 @@ public class EvaluatingCollectionWriter extends JCasConsumer_ImplBase
 	@Override
 	public void collectionProcessComplete()
 	{
+		if (this.workers != null)
+		{
+			this.stopWorkers();
+		} else
+		{
+			this.storeBatch();
+		}
+
+		// Some ingest modes buffer Documents, which have to be written before
+		// the collection is complete.
+		try
+		{
+			this.queryHandler.finishIngest();
+		} catch (QHException e)
+		{
+			logger.severe("Finishing the ingest for " + this.dbName
+					+ " failed.");
+			e.getException().printStackTrace();
+		}
+		try
+		{
+			this.queryHandler.commitIngest();
+		} catch (QHException e)
+		{
+			logger.severe("Committing the ingest for " + this.dbName
+					+ " failed.");
+			e.getException().printStackTrace();
+		}
+
+		long ingestTime = (this.currentIndex > 0)
+				? System.currentTimeMillis() - this.ingestStart : 0;
+
 		logger.info("Collection process complete. Statistics:");
 
-		LongSummaryStatistics documentInsertStatistic = this.queryHandler
-				.getMethodBenchmarks().get("storeDocumentHierarchy")
+		LongSummaryStatistics batchInsertStatistic = this.queryHandler
+				.getMethodBenchmarks().get("storeDocumentHierarchies")
 				.getCallTimes()
 				.stream()
 				.collect(
@@ -139,22 +563,51 @@ public class EvaluatingCollectionWriter extends JCasConsumer_ImplBase
 				);
 
 		// Format statistics as strings for logging and user readable output.
-		String statistics = "Inserted " + documentInsertStatistic.getCount() + " documents.\n" +
-				"  Inserting a complete document structure took " + Math.floor(documentInsertStatistic.getAverage()) + "ms on average.\n" +
-				"  Inserting a document took at most " + documentInsertStatistic.getMax() + "ms.\n" +
-				"  Spent " + documentInsertStatistic.getSum() + "ms overall on inserting documents.\n";
+		String statistics = "Inserted " + (this.currentIndex - this.failedDocuments) + " of " + this.currentIndex + " documents in " + batchInsertStatistic.getCount() + " batches of up to " + this.documentsPerBatch + " documents.\n" +
+				"  Inserting a batch of complete document structures took " + Math.floor(batchInsertStatistic.getAverage()) + "ms on average.\n" +
+				"  Inserting a batch took at most " + batchInsertStatistic.getMax() + "ms.\n" +
+				"  Inserting all documents with " + this.writerThreads + " writer threads took " + ingestTime + "ms.\n" +
+				"  Spent " + batchInsertStatistic.getSum() + "ms overall on inserting documents.\n" +
+				"  Finishing the ingest took " + this.queryHandler.getMethodBenchmarks().get("finishIngest").getCallTimes().stream().mapToLong(Long::longValue).sum() + "ms.\n" +
+				"  Committing the ingest took " + this.queryHandler.getMethodBenchmarks().get("commitIngest").getCallTimes().stream().mapToLong(Long::longValue).sum() + "ms.\n" +
+				"  Creating indexes took " + this.queryHandler.getMethodBenchmarks().get("createIndexes").getCallTimes().stream().mapToLong(Long::longValue).sum() + "ms.\n";
 
 		logger.info(statistics);
 
 		// Format statistics as JSON for output files for easier processing
 		// later on.
 		JSONObject statisticsJSON = new JSONObject();
+		statisticsJSON.put("writerThreads", this.writerThreads);
+		statisticsJSON.put("documents", this.currentIndex);
+		statisticsJSON.put("failedDocuments", this.failedDocuments);
+		statisticsJSON.put("documentsPerBatch", this.documentsPerBatch);
+		statisticsJSON.put("batchSize", this.batchSize);
+		statisticsJSON.put("ingestTime", ingestTime);
 		statisticsJSON.put(
 				"hierarchy",
 				Formatting.createOutputForMethod(
-						"storeDocumentHierarchy", queryHandler
+						"storeDocumentHierarchies", queryHandler
+				)
+		);
+		statisticsJSON.put(
+				"finishIngest",
+				Formatting.createOutputForMethod(
+						"finishIngest", queryHandler
+				)
+		);
+		statisticsJSON.put(
+				"commitIngest",
+				Formatting.createOutputForMethod(
+						"commitIngest", queryHandler
+				)
+		);
+		statisticsJSON.put(
+				"createIndexes",
+				Formatting.createOutputForMethod(
+						"createIndexes", queryHandler
 				)
 		);
+		Formatting.putHttpMetrics(statisticsJSON, this.httpMetrics);
 
 		try (BufferedWriter output =
 				     new BufferedWriter(new FileWriter(this.outputFile))
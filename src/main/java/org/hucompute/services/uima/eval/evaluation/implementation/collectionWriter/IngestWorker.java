@@ -0,0 +1,179 @@
+package org.hucompute.services.uima.eval.evaluation.implementation.collectionWriter;
+
+import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+import org.apache.uima.jcas.JCas;
+import org.hucompute.services.uima.eval.database.abstraction.BatchOptions;
+import org.hucompute.services.uima.eval.database.abstraction.exceptions.QHException;
+import org.hucompute.services.uima.eval.database.abstraction.implementation.BenchmarkQueryHandler;
+import org.hucompute.services.uima.eval.database.connection.Connection;
+import org.hucompute.services.uima.eval.database.connection.ConnectionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Stores Documents taken from a queue with its own Connection and query
+ * handler, so that multiple workers can write into the same database con-
+ * currently.
+ * Documents are collected and stored in batches of up to
+ * BatchOptions#getDocumentsPerBatch. Each Document is handed back to the pool
+ * of free Documents after it was stored, so that the
+ * EvaluatingCollectionWriter can reuse it.
+ */
+public class IngestWorker implements Callable<Void>
+{
+	protected static final Logger logger =
+			Logger.getLogger(IngestWorker.class.getName());
+
+	protected static final long POLL_TIMEOUT = 100;
+
+	protected final Connection connection;
+	protected final BenchmarkQueryHandler queryHandler;
+	protected final BatchOptions batchOptions;
+	protected final BlockingQueue<JCas> documents;
+	protected final BlockingQueue<JCas> freeDocuments;
+	protected volatile boolean finished;
+	/**
+	 * Amount of Documents in batches, that could not be stored.
+	 */
+	protected int failedDocuments;
+
+	/**
+	 * @param connection    The worker's own Connection, leased from the
+	 *                      ConnectionManager. Returned by the worker when it
+	 *                      is done.
+	 * @param queryHandler  A query handler using the connection, on which
+	 *                      the database is already opened.
+	 * @param batchOptions  Determines how many Documents are stored together.
+	 * @param documents     The Documents to store.
+	 * @param freeDocuments The pool, that stored Documents are returned to.
+	 */
+	public IngestWorker(
+			Connection connection,
+			BenchmarkQueryHandler queryHandler,
+			BatchOptions batchOptions,
+			BlockingQueue<JCas> documents,
+			BlockingQueue<JCas> freeDocuments
+	)
+	{
+		this.connection = connection;
+		this.queryHandler = queryHandler;
+		this.batchOptions = batchOptions;
+		this.documents = documents;
+		this.freeDocuments = freeDocuments;
+		this.finished = false;
+		this.failedDocuments = 0;
+	}
+
+	/**
+	 * Stores Documents until #finish was called and the queue is empty.
+	 * Finishes the ingest on its own query handler afterwards.
+	 */
+	@Override
+	public Void call() throws InterruptedException
+	{
+		List<JCas> batch = new ArrayList<>();
+		try
+		{
+			while (!this.finished || !this.documents.isEmpty())
+			{
+				JCas document = this.documents.poll(
+						POLL_TIMEOUT, TimeUnit.MILLISECONDS
+				);
+				if (document != null)
+				{
+					batch.add(document);
+				}
+				if (batch.size() >= this.batchOptions.getDocumentsPerBatch())
+				{
+					this.storeBatch(batch);
+				}
+			}
+			this.storeBatch(batch);
+
+			this.queryHandler.finishIngest();
+		} finally
+		{
+			ConnectionManager.getInstance().release(this.connection);
+		}
+		return null;
+	}
+
+	/**
+	 * Stores the Documents and hands them back to the pool of free Documents
+	 * afterwards, even if storing failed. A failed batch is logged and
+	 * counted, but does not stop the worker.
+	 *
+	 * @param batch The Documents to store. Is empty afterwards.
+	 */
+	protected void storeBatch(List<JCas> batch) throws InterruptedException
+	{
+		if (batch.isEmpty())
+		{
+			return;
+		}
+		try
+		{
+			this.queryHandler.storeDocumentHierarchies(
+					batch, this.batchOptions
+			);
+		} catch (QHException e)
+		{
+			logFailedBatch(batch, e);
+			this.failedDocuments += batch.size();
+		} finally
+		{
+			for (JCas document : batch)
+			{
+				document.reset();
+				this.freeDocuments.put(document);
+			}
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Logs the ids of a batch of Documents, that could not be stored. Query
+	 * handlers store a batch atomically, as far as the database allows it.
+	 *
+	 * @param batch The Documents, that were not stored.
+	 * @param e     The reason.
+	 */
+	static void logFailedBatch(List<JCas> batch, QHException e)
+	{
+		List<String> documentIds = new ArrayList<>();
+		for (JCas document : batch)
+		{
+			documentIds.add(DocumentMetaData.get(document).getDocumentId());
+		}
+		logger.severe("Storing " + documentIds + " failed in "
+				+ Thread.currentThread().getName() + ".");
+		e.getException().printStackTrace();
+	}
+
+	/**
+	 * @return Amount of Documents, that could not be stored. Only complete
+	 * once the worker is done.
+	 */
+	public int getFailedDocuments()
+	{
+		return this.failedDocuments;
+	}
+
+	/**
+	 * Lets the worker stop as soon as the queue is empty.
+	 */
+	public void finish()
+	{
+		this.finished = true;
+	}
+
+	public BenchmarkQueryHandler getQueryHandler()
+	{
+		return this.queryHandler;
+	}
+}
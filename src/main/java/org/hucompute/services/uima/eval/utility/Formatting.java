@@ -1,9 +1,11 @@
 package org.hucompute.services.uima.eval.utility;
 
 import org.hucompute.services.uima.eval.database.abstraction.implementation.BenchmarkQueryHandler;
+import org.hucompute.services.uima.eval.database.connection.HttpTransport;
 import org.json.JSONObject;
 
 import java.util.LongSummaryStatistics;
+import java.util.Map;
 
 public class Formatting
 {
@@ -35,6 +37,28 @@ public class Formatting
 		return statsJSONObject;
 	}
 
+	/**
+	 * Adds the metrics of all HTTP requests sent since the snapshot as
+	 * "http". Only the databases connected via HTTP have metrics for their
+	 * route, so nothing is added for the others.
+	 *
+	 * @param stats    The statistics of an evaluation.
+	 * @param snapshot Taken with HttpTransport#snapshotMetrics when the
+	 *                 evaluation started.
+	 */
+	public static void putHttpMetrics(
+			JSONObject stats,
+			Map<String, HttpTransport.Metrics> snapshot
+	)
+	{
+		JSONObject http = HttpTransport.getInstance()
+				.getMetricsAsJSON(snapshot);
+		if (http.length() > 0)
+		{
+			stats.put("http", http);
+		}
+	}
+
 	public static JSONObject createUnsupportedOperationError(String methodName)
 	{
 		JSONObject error = new JSONObject();
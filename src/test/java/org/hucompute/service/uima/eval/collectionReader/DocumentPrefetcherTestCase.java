@@ -0,0 +1,240 @@
+package org.hucompute.service.uima.eval.collectionReader;
+
+import org.apache.uima.cas.CAS;
+import org.hucompute.services.uima.eval.database.abstraction.QueryHandlerInterface;
+import org.hucompute.services.uima.eval.database.abstraction.exceptions.DocumentNotFoundException;
+import org.hucompute.services.uima.eval.database.abstraction.exceptions.QHException;
+import org.hucompute.services.uima.eval.database.abstraction.implementation.BenchmarkQueryHandler;
+import org.hucompute.services.uima.eval.evaluation.implementation.collectionReader.DocumentPrefetcher;
+import org.hucompute.services.uima.eval.evaluation.implementation.collectionReader.DocumentPrefetcher.PrefetchedDocument;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DocumentPrefetcherTestCase
+{
+	/**
+	 * Ids starting with "missing" are not found, ids starting with "broken"
+	 * fail with a QHException. Every other Document is fetched successfully.
+	 */
+	protected static class StubDatabase
+	{
+		protected final List<String> fetchedIds = new CopyOnWriteArrayList<>();
+
+		protected BenchmarkQueryHandler queryHandler()
+		{
+			QueryHandlerInterface subject = (QueryHandlerInterface) Proxy
+					.newProxyInstance(
+							QueryHandlerInterface.class.getClassLoader(),
+							new Class<?>[]{QueryHandlerInterface.class},
+							(proxy, method, args) -> {
+								if (!method.getName()
+										.equals("populateCasWithDocument"))
+								{
+									throw new UnsupportedOperationException();
+								}
+								this.populate((String) args[1]);
+								return null;
+							}
+					);
+			return new BenchmarkQueryHandler(subject);
+		}
+
+		protected void populate(String documentId)
+				throws DocumentNotFoundException
+		{
+			this.fetchedIds.add(documentId);
+			if (documentId.startsWith("missing"))
+			{
+				throw new DocumentNotFoundException();
+			}
+			if (documentId.startsWith("broken"))
+			{
+				throw new QHException(new Exception(documentId));
+			}
+		}
+	}
+
+	/**
+	 * @return A staging CAS, of which only CAS#reset is supported.
+	 */
+	protected static CAS stagingCas()
+	{
+		return (CAS) Proxy.newProxyInstance(
+				CAS.class.getClassLoader(),
+				new Class<?>[]{CAS.class},
+				(proxy, method, args) -> {
+					switch (method.getName())
+					{
+						case "reset":
+							return null;
+						case "equals":
+							return proxy == args[0];
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						default:
+							throw new UnsupportedOperationException();
+					}
+				}
+		);
+	}
+
+	protected static BlockingQueue<CAS> stagingCases(int amount)
+	{
+		BlockingQueue<CAS> cases = new LinkedBlockingQueue<>();
+		for (int i = 0; i < amount; i++)
+		{
+			cases.add(stagingCas());
+		}
+		return cases;
+	}
+
+	@Test
+	void Given_EnoughStagingCases_When_Prefetching_Then_AllDocumentsAreReadyInOrderFollowedByEnd() throws Exception
+	{
+		StubDatabase database = new StubDatabase();
+		BlockingQueue<PrefetchedDocument> ready = new LinkedBlockingQueue<>();
+		DocumentPrefetcher prefetcher = new DocumentPrefetcher(
+				database.queryHandler(),
+				Arrays.asList("a", "missing", "broken").iterator(),
+				stagingCases(3),
+				ready
+		);
+
+		assertNull(prefetcher.call());
+
+		PrefetchedDocument found = ready.poll();
+		assertEquals("a", found.getDocumentId());
+		assertTrue(found.wasFound());
+		assertNull(found.getException());
+		assertNotNull(found.getCas());
+
+		PrefetchedDocument missing = ready.poll();
+		assertEquals("missing", missing.getDocumentId());
+		assertFalse(missing.wasFound());
+
+		PrefetchedDocument broken = ready.poll();
+		assertEquals("broken", broken.getDocumentId());
+		assertNotNull(broken.getException());
+
+		PrefetchedDocument end = ready.poll();
+		assertTrue(end.isEnd());
+		assertSame(PrefetchedDocument.END, end);
+		assertTrue(ready.isEmpty());
+	}
+
+	@Test
+	void Given_NoDocumentIds_When_Prefetching_Then_OnlyEndIsReady() throws Exception
+	{
+		BlockingQueue<PrefetchedDocument> ready = new LinkedBlockingQueue<>();
+		new DocumentPrefetcher(
+				new StubDatabase().queryHandler(),
+				Arrays.<String>asList().iterator(),
+				stagingCases(1),
+				ready
+		).call();
+
+		assertEquals(1, ready.size());
+		assertTrue(ready.poll().isEnd());
+	}
+
+	@Test
+	void Given_KStagingCases_When_Prefetching_Then_AtMostKDocumentsAreFetchedUntilACasIsReturned() throws Exception
+	{
+		StubDatabase database = new StubDatabase();
+		BlockingQueue<CAS> free = stagingCases(2);
+		BlockingQueue<PrefetchedDocument> ready = new LinkedBlockingQueue<>();
+		DocumentPrefetcher prefetcher = new DocumentPrefetcher(
+				database.queryHandler(),
+				Arrays.asList("a", "b", "c", "d").iterator(),
+				free,
+				ready
+		);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Future<Void> prefetching = executor.submit(prefetcher);
+		try
+		{
+			PrefetchedDocument first = ready.poll(1, TimeUnit.SECONDS);
+			assertNotNull(ready.poll(1, TimeUnit.SECONDS));
+			assertNull(
+					ready.poll(300, TimeUnit.MILLISECONDS),
+					"Both staging CASes are in use."
+			);
+			assertEquals(Arrays.asList("a", "b"), database.fetchedIds);
+
+			free.add(first.getCas());
+			PrefetchedDocument third = ready.poll(1, TimeUnit.SECONDS);
+			assertEquals("c", third.getDocumentId());
+			assertSame(first.getCas(), third.getCas());
+			assertEquals(Arrays.asList("a", "b", "c"), database.fetchedIds);
+		} finally
+		{
+			prefetcher.stop();
+			prefetching.get(1, TimeUnit.SECONDS);
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void Given_PrefetcherBlockedOnStagingCases_When_Stopping_Then_PrefetcherReturnsWithoutEnd() throws Exception
+	{
+		StubDatabase database = new StubDatabase();
+		BlockingQueue<PrefetchedDocument> ready = new LinkedBlockingQueue<>();
+		DocumentPrefetcher prefetcher = new DocumentPrefetcher(
+				database.queryHandler(),
+				Arrays.asList("a", "b").iterator(),
+				stagingCases(0),
+				ready
+		);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Future<Void> prefetching = executor.submit(prefetcher);
+		assertThrows(
+				TimeoutException.class,
+				() -> prefetching.get(300, TimeUnit.MILLISECONDS),
+				"There is no staging CAS to fetch into."
+		);
+
+		prefetcher.stop();
+		prefetching.get(1, TimeUnit.SECONDS);
+		executor.shutdownNow();
+
+		assertTrue(ready.isEmpty());
+		assertTrue(database.fetchedIds.isEmpty());
+	}
+
+	@Test
+	void Given_PrefetcherBlockedOnFullReadyQueue_When_Stopping_Then_PrefetcherReturnsWithoutEnd() throws Exception
+	{
+		StubDatabase database = new StubDatabase();
+		BlockingQueue<PrefetchedDocument> ready = new ArrayBlockingQueue<>(1);
+		DocumentPrefetcher prefetcher = new DocumentPrefetcher(
+				database.queryHandler(),
+				Arrays.asList("a", "b").iterator(),
+				stagingCases(2),
+				ready
+		);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Future<Void> prefetching = executor.submit(prefetcher);
+		assertThrows(
+				TimeoutException.class,
+				() -> prefetching.get(300, TimeUnit.MILLISECONDS),
+				"The ready queue only holds the first Document."
+		);
+
+		prefetcher.stop();
+		prefetching.get(1, TimeUnit.SECONDS);
+		executor.shutdownNow();
+
+		assertEquals(1, ready.size());
+		assertEquals("a", ready.poll().getDocumentId());
+		assertEquals(Arrays.asList("a", "b"), database.fetchedIds);
+	}
+}
@@ -9,6 +9,7 @@ import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
@@ -122,4 +123,43 @@ public class ConnectionManagerTestCase
 		connectionManager.close();
 		assertTrue(mockedConnection.wasClosed);
 	}
+
+	@Test
+	void Given_ConnectionManagerAndMockedConnection_When_RequestingMultipleConnections_Then_DistinctPooledConnectionsAreReturned() throws ExecutionException, InterruptedException
+	{
+		ConnectionManager connectionManager = ConnectionManager.getInstance();
+		ConnectionRequest connectionRequest = new ConnectionRequest();
+		connectionRequest.addRequestedConnection(MockConnection.class, 2);
+
+		ConnectionResponse connectionResponse = connectionManager.submitRequest(connectionRequest).get();
+		List<Connection> connections = connectionResponse.getPooledConnections(MockConnection.class);
+
+		assertEquals(2, connections.size(), "Two Connections were requested, two should be returned.");
+		assertNotSame(connections.get(0), connections.get(1));
+		assertEquals(2, connectionManager.getPool(MockConnection.class).getLeasedCount());
+		connectionManager.close();
+	}
+
+	@Test
+	void Given_ConnectionManagerAndMockedConnection_When_ReleasingAndLeasingAgain_Then_ConnectionIsReused() throws InterruptedException
+	{
+		ConnectionManager connectionManager = ConnectionManager.getInstance();
+		Connection connection = connectionManager.lease(MockConnection.class);
+		connectionManager.release(connection);
+
+		assertSame(connection, connectionManager.lease(MockConnection.class));
+		assertEquals(1, ((MockConnection) connection).establishCounter, "Establish should've been called exactly once.");
+		connectionManager.close();
+	}
+
+	@Test
+	void Given_ConnectionManagerAndReleasedConnection_When_ClosingConnectionManager_Then_PooledConnectionWillBeClosed() throws InterruptedException
+	{
+		ConnectionManager connectionManager = ConnectionManager.getInstance();
+		MockConnection connection = (MockConnection) connectionManager.lease(MockConnection.class);
+		connectionManager.release(connection);
+
+		connectionManager.close();
+		assertTrue(connection.wasClosed);
+	}
 }
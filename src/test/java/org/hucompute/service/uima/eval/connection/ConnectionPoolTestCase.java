@@ -0,0 +1,68 @@
+package org.hucompute.service.uima.eval.connection;
+
+import org.hucompute.service.uima.eval.connection.ConnectionManagerTestCase.MockConnection;
+import org.hucompute.services.uima.eval.database.connection.Connection;
+import org.hucompute.services.uima.eval.database.connection.ConnectionPool;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionPoolTestCase
+{
+	@Test
+	void Given_FullPool_When_Leasing_Then_BlocksUntilAConnectionIsReleased() throws InterruptedException, ExecutionException, TimeoutException
+	{
+		ConnectionPool pool = new ConnectionPool(MockConnection.class, 1, 60000);
+		Connection connection = pool.lease();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Future<Connection> secondLease = executor.submit(pool::lease);
+		assertThrows(
+				TimeoutException.class,
+				() -> secondLease.get(100, TimeUnit.MILLISECONDS),
+				"The pool holds only one Connection, which is leased."
+		);
+
+		pool.release(connection);
+		assertSame(connection, secondLease.get(1, TimeUnit.SECONDS));
+		executor.shutdownNow();
+	}
+
+	@Test
+	void Given_PoolWithoutIdleTimeout_When_ReleasingConnection_Then_ConnectionIsEvicted() throws InterruptedException
+	{
+		ConnectionPool pool = new ConnectionPool(MockConnection.class, 2, 0);
+		MockConnection connection = (MockConnection) pool.lease();
+		pool.release(connection);
+
+		assertTrue(connection.wasClosed);
+		assertEquals(0, pool.getIdleCount());
+		assertNotSame(connection, pool.lease());
+	}
+
+	@Test
+	void Given_IdleUnhealthyConnection_When_Leasing_Then_NewConnectionIsEstablished() throws InterruptedException
+	{
+		ConnectionPool pool = new ConnectionPool(MockConnection.class, 2, 60000);
+		MockConnection connection = (MockConnection) pool.lease();
+		pool.release(connection);
+		connection.establishCounter = 0;
+
+		assertNotSame(connection, pool.lease());
+		assertTrue(connection.wasClosed);
+	}
+
+	@Test
+	void Given_ClosedPool_When_ReleasingLeasedConnection_Then_ConnectionIsClosed() throws InterruptedException
+	{
+		ConnectionPool pool = new ConnectionPool(MockConnection.class, 2, 60000);
+		MockConnection connection = (MockConnection) pool.lease();
+
+		pool.close();
+		assertThrows(IllegalStateException.class, pool::lease);
+		pool.release(connection);
+		assertTrue(connection.wasClosed);
+	}
+}
@@ -8,6 +8,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ConnectionRequestTestCase
@@ -111,4 +112,25 @@ public class ConnectionRequestTestCase
 		assertEquals(set.size(), request.getRequestedConnections().size());
 		assertTrue(set.containsAll(request.getRequestedConnections()));
 	}
+
+	@Test
+	void Given_RequestObjectWithAmounts_When_RetrievingRequestedAmounts_Then_AmountOrOneIsReturned()
+	{
+		ConnectionRequest request = new ConnectionRequest(TestConnectionA.class);
+		request.addRequestedConnection(TestConnectionB.class, 3);
+
+		assertEquals(1, request.getRequestedAmount(TestConnectionA.class));
+		assertEquals(3, request.getRequestedAmount(TestConnectionB.class));
+		assertTrue(request.getRequestedConnections().contains(TestConnectionB.class));
+	}
+
+	@Test
+	void Given_RequestObject_When_RequestingZeroConnections_Then_ThrowsIllegalArgumentException()
+	{
+		ConnectionRequest request = new ConnectionRequest();
+		assertThrows(
+				IllegalArgumentException.class,
+				() -> request.addRequestedConnection(TestConnectionA.class, 0)
+		);
+	}
 }
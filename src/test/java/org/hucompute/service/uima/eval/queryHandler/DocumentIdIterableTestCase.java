@@ -0,0 +1,132 @@
+package org.hucompute.service.uima.eval.queryHandler;
+
+import org.hucompute.services.uima.eval.database.abstraction.DocumentIdIterable;
+import org.hucompute.services.uima.eval.database.abstraction.QueryHandlerInterface;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DocumentIdIterableTestCase
+{
+	/**
+	 * Pages over a sorted list of ids and records the afterId of every page
+	 * request. All other methods of the query handler are not supported.
+	 */
+	protected static class PagedIds
+	{
+		protected final List<String> ids;
+		protected final List<String> requestedAfterIds = new ArrayList<>();
+
+		protected PagedIds(String... ids)
+		{
+			this.ids = Arrays.asList(ids);
+		}
+
+		protected QueryHandlerInterface queryHandler()
+		{
+			return (QueryHandlerInterface) Proxy.newProxyInstance(
+					QueryHandlerInterface.class.getClassLoader(),
+					new Class<?>[]{QueryHandlerInterface.class},
+					(proxy, method, args) -> {
+						if (!method.getName().equals("getDocumentIds")
+								|| args == null || args.length != 2)
+						{
+							throw new UnsupportedOperationException();
+						}
+						return this.page((String) args[0], (Integer) args[1]);
+					}
+			);
+		}
+
+		protected List<String> page(String afterId, int limit)
+		{
+			this.requestedAfterIds.add(afterId);
+			int start = afterId == null ? 0 : this.ids.indexOf(afterId) + 1;
+			return new ArrayList<>(this.ids.subList(
+					start, Math.min(start + limit, this.ids.size())
+			));
+		}
+	}
+
+	protected static List<String> collect(Iterable<String> iterable)
+	{
+		List<String> ids = new ArrayList<>();
+		for (String id : iterable)
+		{
+			ids.add(id);
+		}
+		return ids;
+	}
+
+	@Test
+	void Given_IdsFillingWholePages_When_Iterating_Then_AllIdsAreReturnedAndAnEmptyLastPageEndsTheIteration()
+	{
+		PagedIds pagedIds = new PagedIds("a", "b", "c", "d", "e", "f");
+		DocumentIdIterable iterable =
+				new DocumentIdIterable(pagedIds.queryHandler(), 3);
+
+		assertEquals(pagedIds.ids, collect(iterable));
+		assertEquals(
+				Arrays.asList(null, "c", "f"),
+				pagedIds.requestedAfterIds,
+				"Each page starts after the last id of the previous one."
+		);
+	}
+
+	@Test
+	void Given_ShortLastPage_When_Iterating_Then_NoFurtherPageIsRequested()
+	{
+		PagedIds pagedIds = new PagedIds("a", "b", "c", "d", "e");
+		DocumentIdIterable iterable =
+				new DocumentIdIterable(pagedIds.queryHandler(), 3);
+
+		assertEquals(pagedIds.ids, collect(iterable));
+		assertEquals(Arrays.asList(null, "c"), pagedIds.requestedAfterIds);
+	}
+
+	@Test
+	void Given_NoIds_When_Iterating_Then_IteratorIsEmpty()
+	{
+		PagedIds pagedIds = new PagedIds();
+		Iterator<String> iterator =
+				new DocumentIdIterable(pagedIds.queryHandler(), 3).iterator();
+
+		assertFalse(iterator.hasNext());
+		assertThrows(NoSuchElementException.class, iterator::next);
+		assertEquals(1, pagedIds.requestedAfterIds.size());
+	}
+
+	@Test
+	void Given_Iterable_When_CreatingIterators_Then_PagesAreFetchedLazilyAndEachIteratorStartsFromTheFirstId()
+	{
+		PagedIds pagedIds = new PagedIds("a", "b", "c", "d");
+		DocumentIdIterable iterable =
+				new DocumentIdIterable(pagedIds.queryHandler(), 2);
+
+		Iterator<String> first = iterable.iterator();
+		assertTrue(pagedIds.requestedAfterIds.isEmpty());
+		assertEquals("a", first.next());
+		assertEquals("b", first.next());
+		assertEquals(1, pagedIds.requestedAfterIds.size());
+
+		assertEquals(pagedIds.ids, collect(iterable));
+		assertEquals("c", first.next());
+	}
+
+	@Test
+	void Given_NonPositivePageSize_When_CreatingIterable_Then_ExceptionIsThrown()
+	{
+		PagedIds pagedIds = new PagedIds("a");
+		assertThrows(
+				IllegalArgumentException.class,
+				() -> new DocumentIdIterable(pagedIds.queryHandler(), 0)
+		);
+	}
+}